@@ -0,0 +1,62 @@
+package FourCombinatorImplementation;
+
+import java.lang.management.ManagementFactory;
+
+/*
+ * Prints the bytes allocated per rewrite by reduce() on the calling thread, using the allocation counter of
+ * com.sun.management.ThreadMXBean. A rewrite is an interaction, a forceDup or a removePrime.
+ *
+ * A church exponent ends as a much bigger net than it starts as, so what it allocates is mostly the Cells, Ports and
+ * Wires of its normal form. The terms that never stop do not grow, and are reduced for a fixed number of
+ * interactions, so they only allocate what the rewrites fail to recycle.
+ */
+public class AllocationRate {
+    private final static int RUNS = 5;
+    private final static int STEADY_INTERACTIONS = 1000000;
+
+    public static void main(String[] args) {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long thread = Thread.currentThread().getId();
+
+        int[][] workloads = {{2, 10}, {3, 7}, {4, 5}};
+        for (int[] workload : workloads) {
+            Term term = new Term(TestUtil.expString(workload[0], workload[1]));
+
+            long best = Long.MAX_VALUE;
+            long rewrites = 0;
+            for (int i = 0; i <= RUNS; i++) { // The first run is a warm up
+                LambdaNet net = new LambdaNet(term);
+                long start = threads.getThreadAllocatedBytes(thread);
+                net.reduce();
+                long allocated = threads.getThreadAllocatedBytes(thread) - start;
+                if (i > 0)
+                    best = Math.min(best, allocated);
+                ReductionMetrics metrics = net.context.metrics;
+                rewrites = metrics.getInteractions() + metrics.getForceDups() + metrics.getRemovePrimes();
+            }
+            System.out.printf("%d^%d: %d rewrites, %.1f MB, %.1f bytes per rewrite%n", workload[0], workload[1],
+                    rewrites, best / 1e6, (double) best / rewrites);
+        }
+
+        String[] steady = {"(L x . x x) (L x . x x)", "(L f . (L x . f (x x)) (L x . f (x x))) (L g . g)"};
+        ReductionBudget budget = ReductionBudget.UNLIMITED.withInteractions(STEADY_INTERACTIONS);
+        for (String workload : steady) {
+            Term term = new Term(workload);
+
+            long best = Long.MAX_VALUE;
+            long rewrites = 0;
+            for (int i = 0; i <= RUNS; i++) {
+                LambdaNet net = new LambdaNet(term);
+                long start = threads.getThreadAllocatedBytes(thread);
+                net.reduce(budget);
+                long allocated = threads.getThreadAllocatedBytes(thread) - start;
+                if (i > 0)
+                    best = Math.min(best, allocated);
+                ReductionMetrics metrics = net.context.metrics;
+                rewrites = metrics.getInteractions() + metrics.getForceDups() + metrics.getRemovePrimes();
+            }
+            System.out.printf("%s: %d rewrites, %d bytes, %.3f bytes per rewrite%n", workload, rewrites, best,
+                    (double) best / rewrites);
+        }
+    }
+}
@@ -3,14 +3,15 @@ package FourCombinatorImplementation;
 public class Cell {
     enum Symbol {GAM, EPS, DEL, DEL_PRIME}
 
-    final Symbol symbol;
+    Symbol symbol; // Only changed between DEL and DEL_PRIME, see InteractionNet.changeSymbol
 
     Port principal;
     Port left;
     Port right;
 
-    // For use by DEL and DEL_PRIME to avoid duplicating work
-    Term term = null;
+    boolean inDeltaPrimes = false; // See ReductionContext.addDeltaPrime
+
+    int epoch = 0; // The CellPool.epoch when the pool made the Cell, 0 if it was not made by a pool
 
     private Cell(Symbol symbol, boolean eps) { // Constructor is private, used by factory methods
         this.symbol = symbol;
@@ -30,6 +31,14 @@ public class Cell {
         }
     }
 
+    private Cell(Symbol symbol) { // A Cell without Ports, for CellPool to give it some
+        this.symbol = symbol;
+    }
+
+    static Cell makeEmpty(Symbol symbol) {
+        return new Cell(symbol);
+    }
+
     public static Cell makeDelta() {
         return new Cell(Symbol.DEL, false);
     }
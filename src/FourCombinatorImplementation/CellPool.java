@@ -0,0 +1,192 @@
+package FourCombinatorImplementation;
+
+import java.util.Arrays;
+
+/*
+ * Recycles the Cells, Ports and Wires consumed by interactions, so that a long normalize() reuses them instead of
+ * allocating four new Cells for every commutation.
+ *
+ * A consumed Cell is only retired here, and it is recycled once the step that consumed it has bypassed its extra
+ * Ports (see InteractionNet.normalize). Only Cells and Ports made in the current normalize() call are recycled,
+ * since InteractionNet.reduce holds on to Cells and Ports from before the call, and so are never recycled.
+ *
+ * A Wire is only retired once nothing can reach it: the cut that was reduced, the Wires that fixExtra bypasses and
+ * those of the Delta that forceDup replaces. Wires are held by Ports rather than Cells, so they are recycled whatever
+ * their age, and a dead Port that still holds one is unlinked from it.
+ */
+class CellPool {
+    private final static int CAPACITY = 1 << 12; // The most Cells of one symbol, Ports or Wires that are kept
+
+    int epoch = 0; // Incremented by each normalize() call
+
+    private final Cell[][] cells = new Cell[Cell.Symbol.values().length][];
+    private final int[] cellCounts = new int[Cell.Symbol.values().length];
+    private Port[] ports = null;
+    private int portCount = 0;
+
+    private Wire[] wires = null;
+    private int wireCount = 0;
+
+    private Cell[] retired = new Cell[16];
+    private int retiredCount = 0;
+    private Wire[] retiredWires = new Wire[16];
+    private int retiredWireCount = 0;
+
+    // Returns a pool with nothing to reuse but the same epoch, for a worker that must not touch this one
+    CellPool fresh() {
+        CellPool pool = new CellPool();
+        pool.epoch = epoch;
+        return pool;
+    }
+
+    Cell make(Cell.Symbol symbol) {
+        return make(symbol, null);
+    }
+
+    // Makes a Cell whose principal Port is principal, stolen from the Cell it belonged to, or a new one if null
+    Cell make(Cell.Symbol symbol, Port principal) {
+        int index = symbol.ordinal();
+        Cell cell;
+        if (cellCounts[index] > 0) {
+            cell = cells[index][--cellCounts[index]];
+            cells[index][cellCounts[index]] = null;
+        } else {
+            cell = Cell.makeEmpty(symbol);
+        }
+        cell.epoch = epoch;
+
+        cell.principal = attach(cell, principal, Port.PRINCIPAL);
+        if (symbol != Cell.Symbol.EPS) {
+            cell.left = attach(cell, null, Port.LEFT);
+            cell.right = attach(cell, null, Port.RIGHT);
+        }
+        return cell;
+    }
+
+    private Port attach(Cell cell, Port port, int position) {
+        if (port == null) {
+            if (portCount > 0) {
+                port = ports[--portCount];
+                ports[portCount] = null;
+            } else {
+                port = new Port();
+            }
+            port.epoch = epoch;
+        }
+        port.cell = cell;
+        port.port = position;
+        return port;
+    }
+
+    // Links port1 and port2 with a recycled Wire, or a new one
+    Wire link(Port port1, Port port2) {
+        Wire wire = wire();
+        Wire.link(port1, port2, wire);
+        return wire;
+    }
+
+    // A recycled Wire that links nothing, or a new one
+    Wire wire() {
+        if (wireCount == 0)
+            return new Wire();
+        Wire wire = wires[--wireCount];
+        wires[wireCount] = null;
+        return wire;
+    }
+
+    // Marks cell as consumed, it is recycled by the next call to recycle()
+    void retire(Cell cell) {
+        if (retiredCount == retired.length)
+            retired = Arrays.copyOf(retired, 2 * retired.length);
+        retired[retiredCount++] = cell;
+    }
+
+    // Marks wire as no longer used, it is recycled by the next call to recycle()
+    void retire(Wire wire) {
+        if (retiredWireCount == retiredWires.length)
+            retiredWires = Arrays.copyOf(retiredWires, 2 * retiredWires.length);
+        retiredWires[retiredWireCount++] = wire;
+    }
+
+    // To be called once no Wire that is still used goes through an extra Port of a retired Cell
+    void recycle() {
+        for (int i = 0; i < retiredCount; i++) {
+            release(retired[i]);
+            retired[i] = null;
+        }
+        retiredCount = 0;
+        for (int i = 0; i < retiredWireCount; i++) {
+            release(retiredWires[i]);
+            retiredWires[i] = null;
+        }
+        retiredWireCount = 0;
+    }
+
+    // Recycles wire right away, for a caller that knows nothing reaches it
+    void release(Wire wire) {
+        if (wire.port1 == null) // Released already
+            return;
+        unlink(wire.port1, wire);
+        unlink(wire.port2, wire);
+        wire.port1 = null;
+        wire.port2 = null;
+        wire.depth = 0;
+
+        if (wires == null)
+            wires = new Wire[16];
+        if (wireCount == CAPACITY)
+            return;
+        if (wireCount == wires.length)
+            wires = Arrays.copyOf(wires, 2 * wires.length);
+        wires[wireCount++] = wire;
+    }
+
+    private static void unlink(Port port, Wire wire) {
+        if (port.link == wire)
+            port.link = null;
+        if (port.temp == wire)
+            port.temp = null;
+    }
+
+    private void release(Cell cell) {
+        if (cell.epoch != epoch)
+            return;
+        cell.epoch = 0; // So that a Cell retired twice is only released once
+
+        release(cell, cell.principal);
+        release(cell, cell.left);
+        release(cell, cell.right);
+        cell.principal = null;
+        cell.left = null;
+        cell.right = null;
+
+        int index = cell.symbol.ordinal();
+        if (cells[index] == null)
+            cells[index] = new Cell[16];
+        if (cellCounts[index] == CAPACITY)
+            return;
+        if (cellCounts[index] == cells[index].length)
+            cells[index] = Arrays.copyOf(cells[index], 2 * cells[index].length);
+        cells[index][cellCounts[index]++] = cell;
+    }
+
+    // Ports that were stolen by another Cell still belong to it, while wiped Ports belong to nothing
+    private void release(Cell cell, Port port) {
+        if (port == null || port.epoch != epoch || (port.cell != cell && port.cell != null))
+            return;
+        port.epoch = 0;
+        port.link = null;
+        port.temp = null;
+        port.cell = null;
+        port.port = Port.ERROR;
+        port.name = null;
+
+        if (ports == null)
+            ports = new Port[16];
+        if (portCount == CAPACITY)
+            return;
+        if (portCount == ports.length)
+            ports = Arrays.copyOf(ports, 2 * ports.length);
+        ports[portCount++] = port;
+    }
+}
@@ -0,0 +1,98 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CellPoolTest {
+    @Test
+    public void makeTest() {
+        CellPool pool = new CellPool();
+        Cell gam = pool.make(Cell.Symbol.GAM);
+        assertEquals(Cell.Symbol.GAM, gam.symbol);
+        assertSame(gam, gam.principal.cell);
+        assertSame(gam, gam.left.cell);
+        assertEquals(Port.RIGHT, gam.right.port);
+
+        Cell eps = pool.make(Cell.Symbol.EPS, gam.left);
+        assertSame(gam.left, eps.principal);
+        assertSame(eps, gam.left.cell);
+        assertEquals(Port.PRINCIPAL, eps.principal.port);
+        assertNull(eps.left);
+    }
+
+    @Test
+    public void recycleTest() {
+        CellPool pool = new CellPool();
+        pool.epoch++;
+        Cell del = pool.make(Cell.Symbol.DEL);
+        Port left = del.left;
+        Wire.link(del.principal, left);
+        left.name = TestUtil.TEST_NAME;
+
+        // Nothing is reused until recycle() is called
+        pool.retire(del);
+        assertNotSame(del, pool.make(Cell.Symbol.DEL));
+        pool.recycle();
+
+        Cell reused = pool.make(Cell.Symbol.DEL);
+        assertSame(del, reused);
+        assertSame(reused, reused.left.cell);
+        assertNull(reused.principal.link);
+        assertNull(reused.right.name);
+        assertNotSame(reused, pool.make(Cell.Symbol.DEL));
+    }
+
+    @Test
+    public void oldCellsTest() {
+        // Cells made before the current epoch may still be held by InteractionNet.reduce, so they are not reused
+        CellPool pool = new CellPool();
+        pool.epoch++;
+        Cell old = pool.make(Cell.Symbol.GAM);
+        Cell made = Cell.makeGamma();
+        pool.epoch++;
+
+        pool.retire(old);
+        pool.retire(made);
+        pool.recycle();
+        assertNotSame(old, pool.make(Cell.Symbol.GAM));
+        assertNotSame(made, pool.make(Cell.Symbol.GAM));
+    }
+
+    @Test
+    public void stolenPortTest() {
+        CellPool pool = new CellPool();
+        pool.epoch++;
+        Cell gam = pool.make(Cell.Symbol.GAM);
+        Port left = gam.left;
+        Cell del = pool.make(Cell.Symbol.DEL, left);
+
+        // The Port now belongs to del, so recycling gam must not hand it out again
+        pool.retire(gam);
+        pool.recycle();
+        Cell reused = pool.make(Cell.Symbol.GAM);
+        assertSame(gam, reused);
+        assertNotSame(left, reused.principal);
+        assertNotSame(left, reused.left);
+        assertNotSame(left, reused.right);
+        assertSame(del, left.cell);
+    }
+
+    @Test
+    public void wireTest() {
+        CellPool pool = new CellPool();
+        Cell del = pool.make(Cell.Symbol.DEL);
+        Wire wire = pool.link(del.principal, del.left);
+        assertSame(wire, del.left.link);
+
+        // The Wire is only reused after recycle(), and the Ports that held it let it go
+        pool.retire(wire);
+        assertNotSame(wire, pool.wire());
+        pool.recycle();
+        assertNull(del.principal.link);
+        assertNull(del.left.link);
+        assertSame(wire, pool.link(del.right, del.left));
+        assertSame(del.right, wire.port1);
+        assertNotSame(wire, pool.wire());
+    }
+}
@@ -0,0 +1,45 @@
+package FourCombinatorImplementation;
+
+import java.util.concurrent.RecursiveTask;
+
+// Reduces a slice of a batch of cuts, splitting it so that idle workers of the ForkJoinPool can steal halves
+class CutReduceTask extends RecursiveTask<WireBuffer> {
+    private final static long serialVersionUID = 1L;
+    final static int THRESHOLD = 64;
+
+    private final WireBuffer cuts;
+    private final int start;
+    private final int end;
+    private final ReductionContext context;
+
+    CutReduceTask(WireBuffer cuts, int start, int end, ReductionContext context) {
+        this.cuts = cuts;
+        this.start = start;
+        this.end = end;
+        this.context = context;
+    }
+
+    @Override
+    protected WireBuffer compute() {
+        if (end - start <= THRESHOLD) {
+            // The pool of the context is only used by the thread running normalize(), so each slice has its own
+            WireBuffer possibleCuts = new WireBuffer(4 * (end - start));
+            reduceAll(cuts, start, end, context, context.cells.fresh(), possibleCuts);
+            return possibleCuts;
+        }
+
+        int middle = (start + end) >>> 1;
+        CutReduceTask right = new CutReduceTask(cuts, middle, end, context);
+        right.fork();
+        WireBuffer possibleCuts = new CutReduceTask(cuts, start, middle, context).compute();
+        possibleCuts.addAll(right.join());
+        return possibleCuts;
+    }
+
+    static void reduceAll(WireBuffer cuts, int start, int end, ReductionContext context, CellPool cells,
+                          WireBuffer possibleCuts) {
+        for (int i = start; i < end; i++) {
+            cuts.get(i).reduce(context, cells, possibleCuts);
+        }
+    }
+}
@@ -0,0 +1,249 @@
+package FourCombinatorImplementation;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The order in which normalize() reduces the queued cuts of a ReductionContext. It decides how many cuts wait at once,
+ * how many Cells are live, how close together in memory the Cells of one cut after another are, and how much of an
+ * argument is reduced before an Epsilon erases it. "java FourCombinatorImplementation.SchedulerComparison"
+ * prints these for each scheduler on a few kinds of workload.
+ *
+ * A cut that was erased or relinked while it waited is stale (see Wire.isStale), and normalize() skips it when it is
+ * polled. Only dropStale() looks for stale cuts before that.
+ *
+ * Every scheduler gives the normal form fifo() gives. What can differ is whether reduce() gets there: an argument
+ * that is erased can be reduced for a while first, and if it has no normal form, the Epsilon has to reach it before
+ * it grows for good. An Epsilon stops at a DEL_PRIME, which reduce() still has to force, so what it cuts off there is
+ * reduced on. On 5000 random terms, lifo() finishes wherever fifo() does, and outermost() misses one.
+ */
+public abstract class CutScheduler {
+    abstract void add(Wire cut);
+
+    // Assumes isEmpty() == false
+    abstract Wire poll();
+
+    abstract int size();
+
+    boolean isEmpty() {
+        return size() == 0;
+    }
+
+    abstract void clear();
+
+    // The queued cuts, in an order that add() puts back as they are (see NetSnapshot)
+    abstract List<Wire> toList();
+
+    // First in, first out, which is the order the cuts are found in
+    public static CutScheduler fifo() {
+        return new Ring(false, false);
+    }
+
+    // Every so many polls lifo() takes the oldest cut, see lifo()
+    private final static int OLDEST_INTERVAL = 64;
+
+    /*
+     * Last in, first out, so the cuts made by an interaction are reduced next, while their Cells are still in cache.
+     * Every OLDEST_INTERVAL-th poll takes the oldest cut instead, since a subterm without a normal form makes a new cut
+     * with each interaction and would otherwise keep the cut that erases it waiting forever.
+     */
+    public static CutScheduler lifo() {
+        return new Ring(true, false);
+    }
+
+    /*
+     * The cut closest to handle first, by its depth: that in the Term where it was encoded, or one more than that of
+     * the cut whose interaction made it. Among cuts of the same depth the oldest goes first, and a subterm without a
+     * normal form only makes deeper and deeper cuts, so every other cut is reached.
+     */
+    public static CutScheduler outermost() {
+        return new Outermost();
+    }
+
+    // Like fifo(), but stale cuts are dropped when they reach the front and whenever the buffer would have to grow
+    public static CutScheduler dropStale() {
+        return new Ring(false, true);
+    }
+
+    // A growable ring buffer of Wires, in the manner of IntQueue
+    private static class Ring extends CutScheduler {
+        private final boolean lastFirst;
+        private final boolean dropStale;
+        private int untilOldest = OLDEST_INTERVAL; // The polls of lastFirst until the oldest cut is taken instead
+        private Wire[] elements = new Wire[16];
+        private int head = 0;
+        private int size = 0;
+
+        Ring(boolean lastFirst, boolean dropStale) {
+            this.lastFirst = lastFirst;
+            this.dropStale = dropStale;
+        }
+
+        @Override
+        void add(Wire cut) {
+            if (size == elements.length) {
+                if (dropStale)
+                    compact();
+                if (size > elements.length / 2)
+                    grow();
+            }
+            elements[(head + size) % elements.length] = cut;
+            size++;
+        }
+
+        @Override
+        Wire poll() {
+            Wire cut;
+            if (lastFirst && --untilOldest > 0) {
+                size--;
+                cut = elements[(head + size) % elements.length];
+                elements[(head + size) % elements.length] = null;
+            } else {
+                untilOldest = OLDEST_INTERVAL;
+                cut = elements[head];
+                elements[head] = null;
+                head = (head + 1) % elements.length;
+                size--;
+            }
+            return cut;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        boolean isEmpty() {
+            if (dropStale) {
+                while (size > 0 && elements[head].isStale()) {
+                    poll();
+                }
+            }
+            return size == 0;
+        }
+
+        @Override
+        void clear() {
+            while (size > 0) {
+                poll();
+            }
+            head = 0;
+        }
+
+        @Override
+        List<Wire> toList() {
+            List<Wire> cuts = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                cuts.add(elements[(head + i) % elements.length]);
+            }
+            return cuts;
+        }
+
+        // Moves the cuts that are not stale to the front of the buffer, keeping their order
+        private void compact() {
+            int kept = 0;
+            for (int i = 0; i < size; i++) {
+                Wire cut = elements[(head + i) % elements.length];
+                elements[(head + i) % elements.length] = null;
+                if (!cut.isStale())
+                    elements[(head + kept++) % elements.length] = cut;
+            }
+            size = kept;
+        }
+
+        // Takes by off the depth of every queued cut, see Outermost.rebase
+        void lowerDepths(int by) {
+            for (int i = 0; i < size; i++) {
+                elements[(head + i) % elements.length].depth -= by;
+            }
+        }
+
+        // Unrolls the ring into a buffer twice the size
+        private void grow() {
+            Wire[] grown = new Wire[2 * elements.length];
+            for (int i = 0; i < size; i++) {
+                grown[i] = elements[(head + i) % elements.length];
+            }
+            elements = grown;
+            head = 0;
+        }
+    }
+
+    // A FIFO for each depth, polled from the lowest depth that has a cut
+    private static class Outermost extends CutScheduler {
+        private Ring[] depths = new Ring[16];
+        private int lowest = 0; // No depth below this has a cut
+        private int size = 0;
+
+        @Override
+        void add(Wire cut) {
+            int depth = cut.depth;
+            if (depth >= depths.length) {
+                Ring[] grown = new Ring[Math.max(2 * depths.length, depth + 1)];
+                System.arraycopy(depths, 0, grown, 0, depths.length);
+                depths = grown;
+            }
+            if (depths[depth] == null)
+                depths[depth] = new Ring(false, false);
+            depths[depth].add(cut);
+            if (depth < lowest)
+                lowest = depth;
+            size++;
+        }
+
+        @Override
+        Wire poll() {
+            while (depths[lowest] == null || depths[lowest].isEmpty()) {
+                lowest++;
+            }
+            size--;
+            Wire cut = depths[lowest].poll();
+            if (lowest >= Math.max(depths.length / 2, size))
+                rebase(cut);
+            return cut;
+        }
+
+        /*
+         * Takes lowest off the depth of every queued cut and of cut, which is being polled, so that the depths the
+         * cuts it makes get go on from there. Each interaction makes cuts one deeper than its own, so without this
+         * the depths would grow as long as reduce() runs. This costs a pass over the queue once lowest has gone up by
+         * at least as many depths as there are cuts.
+         */
+        private void rebase(Wire cut) {
+            for (int i = lowest; i < depths.length; i++) {
+                if (depths[i] != null)
+                    depths[i].lowerDepths(lowest);
+                depths[i - lowest] = depths[i];
+                depths[i] = null;
+            }
+            cut.depth -= lowest;
+            lowest = 0;
+        }
+
+        @Override
+        int size() {
+            return size;
+        }
+
+        @Override
+        void clear() {
+            for (Ring ring : depths) {
+                if (ring != null)
+                    ring.clear();
+            }
+            lowest = 0;
+            size = 0;
+        }
+
+        @Override
+        List<Wire> toList() {
+            List<Wire> cuts = new ArrayList<>(size);
+            for (Ring ring : depths) {
+                if (ring != null)
+                    cuts.addAll(ring.toList());
+            }
+            return cuts;
+        }
+    }
+}
@@ -0,0 +1,141 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class CutSchedulerTest {
+    private static Wire cut() {
+        return cut(0);
+    }
+
+    private static Wire cut(int depth) {
+        Wire wire = Wire.link(new Port(), new Port());
+        wire.depth = depth;
+        return wire;
+    }
+
+    @Test
+    public void orderTest() {
+        Wire[] cuts = {cut(2), cut(0), cut(1), cut(0)};
+        CutScheduler fifo = CutScheduler.fifo();
+        CutScheduler lifo = CutScheduler.lifo();
+        CutScheduler outermost = CutScheduler.outermost();
+        CutScheduler dropStale = CutScheduler.dropStale();
+        for (Wire cut : cuts) {
+            fifo.add(cut);
+            lifo.add(cut);
+            outermost.add(cut);
+            dropStale.add(cut);
+        }
+
+        Wire[] byDepth = {cuts[1], cuts[3], cuts[2], cuts[0]};
+        for (int i = 0; i < cuts.length; i++) {
+            assertSame(cuts[i], fifo.poll());
+            assertSame(cuts[cuts.length - 1 - i], lifo.poll());
+            assertSame(byDepth[i], outermost.poll());
+            assertSame(cuts[i], dropStale.poll());
+        }
+        assertTrue(fifo.isEmpty());
+        assertTrue(lifo.isEmpty());
+        assertTrue(outermost.isEmpty());
+        assertTrue(dropStale.isEmpty());
+    }
+
+    @Test
+    public void lifoOldestTest() {
+        // Every 64th poll takes the oldest cut, however many cuts came after it
+        CutScheduler lifo = CutScheduler.lifo();
+        Wire oldest = cut();
+        lifo.add(oldest);
+        for (int i = 0; i < 63; i++) {
+            Wire cut = cut();
+            lifo.add(cut);
+            lifo.add(cut());
+            assertNotSame(oldest, lifo.poll());
+        }
+        assertSame(oldest, lifo.poll());
+    }
+
+    @Test
+    public void outermostDepthTest() {
+        // Each cut makes two one deeper, as interactions do, and the depths are kept from growing past the queue
+        CutScheduler outermost = CutScheduler.outermost();
+        outermost.add(cut(0));
+        for (int i = 0; i < 10000; i++) {
+            Wire cut = outermost.poll();
+            assertTrue(cut.depth <= 2 * outermost.size() + 16, "depth " + cut.depth);
+            if (outermost.size() < 10) {
+                outermost.add(cut(cut.depth + 1));
+                outermost.add(cut(cut.depth + 1));
+            }
+            outermost.add(cut(cut.depth + 1));
+        }
+        int depth = outermost.poll().depth;
+        while (!outermost.isEmpty()) {
+            Wire cut = outermost.poll();
+            assertTrue(cut.depth >= depth);
+            depth = cut.depth;
+        }
+    }
+
+    @Test
+    public void growTest() {
+        CutScheduler fifo = CutScheduler.fifo();
+        Wire[] cuts = new Wire[100];
+        for (int i = 0; i < cuts.length; i++) {
+            cuts[i] = cut();
+            fifo.add(cuts[i]);
+            if (i % 3 == 0) // Wraps the ring around before it grows
+                assertSame(cuts[i / 3], fifo.poll());
+        }
+        for (int i = cuts.length / 3 + 1; i < cuts.length; i++) {
+            assertSame(cuts[i], fifo.poll());
+        }
+        assertTrue(fifo.isEmpty());
+    }
+
+    @Test
+    public void dropStaleTest() {
+        CutScheduler scheduler = CutScheduler.dropStale();
+        Wire live = cut();
+        Wire stale = cut();
+        scheduler.add(stale);
+        scheduler.add(live);
+        stale.port1.link = null;
+        assertFalse(scheduler.isEmpty());
+        assertSame(live, scheduler.poll());
+
+        // Once the buffer is full, the stale cuts make room instead of it growing
+        for (int i = 0; i < 1000; i++) {
+            Wire cut = cut();
+            scheduler.add(cut);
+            cut.port1.link = null;
+        }
+        assertTrue(scheduler.size() <= 16);
+        assertTrue(scheduler.isEmpty());
+    }
+
+    @Test
+    public void normalFormTest() {
+        // The last two have an argument without a normal form that is erased, which lifo() used to reduce forever
+        String[] terms = {"(L x . x x) (L f . L a . a f f)", "L y . (L a . L b . a b) (L x . x) (L x . y)",
+                "(L b . b (b b)) ((L a . L a . z a) z)", TestUtil.expString(3, 3),
+                "(L c . (L b . c) c) (L b . b (L a . z a))",
+                "(L x . L y . y) (" + TestUtil.expString(3, 3) + ")",
+                "(L c . L b . c c (L b . c) ((L a . a) (c c)) (c (L a . a))) z (L b . L c . (L b . b b) (L a . (L b . a a) a))",
+                "(L x . (L a . L x . w) (L a . a a) (x x (L x . x) (L a . x))) (L x . (L b . (L b . b) (x x)) x)"};
+        CutScheduler[] schedulers = {CutScheduler.fifo(), CutScheduler.lifo(), CutScheduler.outermost(),
+                CutScheduler.dropStale()};
+        for (String term : terms) {
+            LambdaNet reference = new LambdaNet(new Term(term));
+            reference.reduce();
+            for (CutScheduler scheduler : schedulers) {
+                scheduler.clear();
+                LambdaNet net = new LambdaNet(new Term(term), new ReductionContext(scheduler));
+                net.reduce();
+                assertTrue(reference.toTerm().alphaEquals(net.toTerm()), term);
+            }
+        }
+    }
+}
@@ -0,0 +1,324 @@
+package FourCombinatorImplementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * A Term whose variables are ints instead of names. A bound variable is its de Bruijn index, the number of Lambdas
+ * between it and the Lambda that binds it, and a free variable is the id its name was interned with, stored as
+ * -1 - id. Two Terms are alpha-equivalent exactly when their DeBruijnTerms are equal, so equals and hashCode only
+ * compare ints, and LambdaNet can encode and read back a DeBruijnTerm without looking names up.
+ *
+ * A Lambda keeps the name it had as a hint. The hints are not compared, and toTerm uses them to choose the names
+ * again, renaming where one would capture another.
+ */
+public class DeBruijnTerm {
+    final int type; // Term.VAR, Term.LAM or Term.APP
+    final DeBruijnTerm left; // The function of an application
+    final DeBruijnTerm right; // The body of a Lambda or the argument of an application
+    final int index; // Of a variable, as above
+    final String hint; // Of a Lambda
+
+    private int hash = 0; // Computed by hashCode, 0 until then
+
+    // The names of free variables, interned so that the same name has the same id in every DeBruijnTerm
+    private final static Map<String, Integer> ids = new HashMap<>();
+    private final static List<String> names = new ArrayList<>();
+
+    private DeBruijnTerm(int type, DeBruijnTerm left, DeBruijnTerm right, int index, String hint) {
+        this.type = type;
+        this.left = left;
+        this.right = right;
+        this.index = index;
+        this.hint = hint;
+    }
+
+    public static DeBruijnTerm bound(int index) {
+        if (index < 0)
+            throw new RuntimeException("Negative de Bruijn index " + index);
+        return new DeBruijnTerm(Term.VAR, null, null, index, null);
+    }
+
+    public static DeBruijnTerm free(String name) {
+        return new DeBruijnTerm(Term.VAR, null, null, -1 - intern(name), null);
+    }
+
+    public static DeBruijnTerm lam(String hint, DeBruijnTerm body) {
+        return new DeBruijnTerm(Term.LAM, null, body, 0, (hint != null)? hint : "x");
+    }
+
+    public static DeBruijnTerm app(DeBruijnTerm function, DeBruijnTerm argument) {
+        return new DeBruijnTerm(Term.APP, function, argument, 0, null);
+    }
+
+    static synchronized int intern(String name) {
+        Integer id = ids.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            ids.put(name, id);
+        }
+        return id;
+    }
+
+    static synchronized String nameOf(int id) {
+        return names.get(id);
+    }
+
+    boolean isFree() {
+        return type == Term.VAR && index < 0;
+    }
+
+    // The name of a free variable
+    String name() {
+        return nameOf(-1 - index);
+    }
+
+    // Stands on the stack of of for a Lambda whose body is being converted, with what its name was bound to outside
+    private static class Binder {
+        final String name;
+        final Integer shadowed;
+
+        Binder(String name, Integer shadowed) {
+            this.name = name;
+            this.shadowed = shadowed;
+        }
+    }
+
+    private final static Object APPLY = new Object();
+
+    /*
+     * Converts term, with each let replaced by the application of a Lambda as LambdaNet encodes it. A Term that is
+     * shared is converted once for each place it is used, since its indices depend on how deep that place is.
+     * As in LambdaNet.encode, the Terms still to convert are kept on a stack, and below them what is built from them.
+     */
+    public static DeBruijnTerm of(Term term) {
+        Map<String, Integer> levels = new HashMap<>(); // The number of Lambdas around the Lambda binding each name
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<DeBruijnTerm> results = new ArrayDeque<>();
+        int depth = 0;
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                DeBruijnTerm argument = results.pop();
+                results.push(app(results.pop(), argument));
+                continue;
+            }
+            if (next instanceof Binder) {
+                Binder binder = (Binder) next;
+                if (binder.shadowed != null)
+                    levels.put(binder.name, binder.shadowed);
+                else
+                    levels.remove(binder.name);
+                depth--;
+                results.push(lam(binder.name, results.pop()));
+                continue;
+            }
+
+            term = (Term) next;
+            switch (term.type) {
+                case Term.VAR:
+                    Integer level = levels.get(term.name);
+                    results.push((level != null)? bound(depth - 1 - level) : free(term.name));
+                    break;
+                case Term.LAM:
+                    work.push(new Binder(term.left.name, levels.put(term.left.name, depth)));
+                    depth++;
+                    work.push(term.right);
+                    break;
+                case Term.APP:
+                    work.push(APPLY);
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+                case Term.LET:
+                    work.push(term.redex());
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return results.pop();
+    }
+
+    /*
+     * Names the variables again. Each Lambda gets its hint unless that is already in scope, either as a free variable
+     * of this Term or as the name of a Lambda around it, in which case it gets a fresh name made from its hint.
+     */
+    public Term toTerm() {
+        NameScope scope = new NameScope(freeNames());
+        List<String> binders = new ArrayList<>(); // The names of the Lambdas around the next Term, innermost last
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Term> results = new ArrayDeque<>();
+        work.push(this);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                Term argument = results.pop();
+                results.push(new Term(Term.APP, results.pop(), argument, null));
+                continue;
+            }
+            if (next instanceof String) { // The name of a Lambda whose body is on results
+                String name = (String) next;
+                binders.remove(binders.size() - 1);
+                scope.remove(name);
+                results.push(new Term(Term.LAM, Term.var(name), results.pop(), null));
+                continue;
+            }
+
+            DeBruijnTerm term = (DeBruijnTerm) next;
+            switch (term.type) {
+                case Term.VAR:
+                    if (term.isFree()) {
+                        results.push(Term.var(term.name()));
+                    } else if (term.index < binders.size()) {
+                        results.push(Term.var(binders.get(binders.size() - 1 - term.index)));
+                    } else {
+                        throw new RuntimeException("Index " + term.index + " is not bound");
+                    }
+                    break;
+                case Term.LAM:
+                    String name = scope.fresh(term.hint);
+                    scope.add(name);
+                    binders.add(name);
+                    work.push(name);
+                    work.push(term.right);
+                    break;
+                case Term.APP:
+                    work.push(APPLY);
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+            }
+        }
+        return results.pop();
+    }
+
+    // The names of the free variables, going through a Term that is shared only once
+    private List<String> freeNames() {
+        List<String> free = new ArrayList<>();
+        Set<DeBruijnTerm> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DeBruijnTerm> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            DeBruijnTerm term = pending.pop();
+            if (!seen.add(term))
+                continue;
+            if (term.isFree())
+                free.add(term.name());
+            if (term.left != null)
+                pending.push(term.left);
+            if (term.right != null)
+                pending.push(term.right);
+        }
+        return free;
+    }
+
+    public String prettyPrint() {
+        return toTerm().prettyPrint();
+    }
+
+    // Prints the indices, as in L . L . 1 (0 y)
+    public String toString() {
+        StringBuilder builder = new StringBuilder();
+        Deque<Object> pending = new ArrayDeque<>(); // As in Term.prettyPrint
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof String) {
+                builder.append((String) next);
+                continue;
+            }
+            DeBruijnTerm term = (DeBruijnTerm) next;
+            switch (term.type) {
+                case Term.VAR:
+                    builder.append(term.isFree()? term.name() : Integer.toString(term.index));
+                    break;
+                case Term.LAM:
+                    builder.append("L . ");
+                    pending.push(term.right);
+                    break;
+                case Term.APP:
+                    if (term.right.type != Term.VAR)
+                        pending.push(")");
+                    pending.push(term.right);
+                    pending.push((term.right.type != Term.VAR)? " (" : " ");
+                    if (term.left.type != Term.VAR) {
+                        pending.push(")");
+                        builder.append("(");
+                    }
+                    pending.push(term.left);
+                    break;
+            }
+        }
+        return builder.toString();
+    }
+
+    /*
+     * Computed for the Terms this one contains first, so that each is only computed once even when it is shared.
+     * A Term is pushed a second time to be combined once its subterms have their hashes.
+     */
+    public int hashCode() {
+        if (hash != 0)
+            return hash;
+        Deque<DeBruijnTerm> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            DeBruijnTerm term = pending.peek();
+            if (term.hash != 0) {
+                pending.pop();
+                continue;
+            }
+            if (term.type == Term.VAR) {
+                term.hash = nonZero(31 * Term.VAR + term.index);
+                pending.pop();
+            } else if (term.right.hash == 0) {
+                pending.push(term.right);
+            } else if (term.type == Term.APP && term.left.hash == 0) {
+                pending.push(term.left);
+            } else {
+                int left = (term.type == Term.APP)? term.left.hash : 0;
+                term.hash = nonZero((31 * term.type + left) * 31 + term.right.hash);
+                pending.pop();
+            }
+        }
+        return hash;
+    }
+
+    private static int nonZero(int hash) {
+        return (hash != 0)? hash : 1;
+    }
+
+    public boolean equals(Object other) {
+        if (!(other instanceof DeBruijnTerm))
+            return false;
+        Deque<DeBruijnTerm> pending = new ArrayDeque<>(); // Pairs of Terms to compare
+        pending.push((DeBruijnTerm) other);
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            DeBruijnTerm term = pending.pop();
+            DeBruijnTerm match = pending.pop();
+            if (term == match)
+                continue;
+            if (term.type != match.type || term.index != match.index || term.hashCode() != match.hashCode())
+                return false;
+            if (term.right != null) {
+                pending.push(match.right);
+                pending.push(term.right);
+            }
+            if (term.left != null) {
+                pending.push(match.left);
+                pending.push(term.left);
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,74 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeBruijnTermTest {
+    private static DeBruijnTerm of(String term) {
+        return DeBruijnTerm.of(new Term(term));
+    }
+
+    @Test
+    public void indexTest() {
+        assertEquals("L . L . 1 (1 0)", of(TestUtil.churchNumString(2, "f", "a")).toString());
+        assertEquals("L . (y (L . 1 0)) 0", of("L x . y (L y . x y) x").toString());
+        assertEquals("(L . 0) (L . L . 0)", of("(L x . x) (L x . L x . x)").toString());
+    }
+
+    @Test
+    public void equalsTest() {
+        for (int i = 0; i < TestUtil.TEST_SIZE; i++) {
+            DeBruijnTerm term = of(TestUtil.churchNumString(i, "f", "a"));
+            DeBruijnTerm renamed = of(TestUtil.churchNumString(i, "g", "b"));
+            assertEquals(term, renamed);
+            assertEquals(term.hashCode(), renamed.hashCode());
+        }
+        assertNotEquals(of("L x . L y . x"), of("L x . L y . y"));
+        assertNotEquals(of("L x . y"), of("L x . z"));
+        assertNotEquals(of("L x . x"), of("L x . y"));
+        assertEquals(of("L x . y"), of("L z . y"));
+    }
+
+    @Test
+    public void toTermTest() {
+        String[] terms = {"L f . L a . f (f a)", "L x . y (L y . x y) x", "(L x . x x) (L f . L a . a f f)",
+                "let a = y y in L z . z a a"};
+        for (String term : terms) {
+            assertEquals(new Term(term), of(term).toTerm());
+        }
+
+        // A Lambda whose name would capture a free variable, or one of the Lambdas around it, is renamed
+        DeBruijnTerm capture = DeBruijnTerm.lam("y", DeBruijnTerm.app(DeBruijnTerm.free("y"), DeBruijnTerm.bound(0)));
+        assertEquals("L y' . y y'", capture.prettyPrint());
+        DeBruijnTerm nested = DeBruijnTerm.lam("x", DeBruijnTerm.lam("x", DeBruijnTerm.bound(1)));
+        assertEquals("L x . L x' . x", nested.prettyPrint());
+    }
+
+    @Test
+    public void netTest() {
+        // Encoding a DeBruijnTerm and reading it back give the same normal form as with names. In the fifth, q w is
+        // shared by a use under one Lambda and a use under two, where the index of q differs. In the last, the
+        // Lambdas of a shared Term are read at more than one depth, and a Term inside it that uses one of them is too
+        String[] terms = {"(L x . x x) (L f . L a . a f f)", "L y . (L a . L b . a b) (L x . x) (L x . y)",
+                "(L y . L x . L x' . y x) x", "L x . (L y . x y y) (L y . (L z . z z) (x x))",
+                "L q . (L s . s (L z . s z)) (q w)", "(L b . b (b b)) ((L a . L a . z a) z)", "x",
+                "(" + TestUtil.churchNumString(4, "f", "a") + ") (" + TestUtil.churchNumString(3, "f", "a") + ")",
+                "((L a . (((a za) a) ((a (a (a a))) a))) (L d . (L b . (((L c . b) b) (d b)))))"};
+        for (String term : terms) {
+            LambdaNet named = new LambdaNet(new Term(term));
+            named.reduce();
+            LambdaNet net = new LambdaNet(of(term));
+            net.reduce();
+            DeBruijnTerm result = net.toDeBruijnTerm();
+            assertEquals(DeBruijnTerm.of(named.toTerm()), result, term);
+            assertTrue(named.toTerm().alphaEquals(result.toTerm()), term);
+        }
+    }
+
+    @Test
+    public void unboundTest() {
+        assertThrows(RuntimeException.class, () -> new LambdaNet(DeBruijnTerm.lam("x", DeBruijnTerm.bound(1))));
+        assertThrows(RuntimeException.class, () -> DeBruijnTerm.bound(0).toTerm());
+    }
+}
@@ -2,6 +2,10 @@ package FourCombinatorImplementation;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class FunctionalTest {
@@ -10,8 +14,6 @@ public class FunctionalTest {
     }
 
     private static Term reduceTerm(String term) {
-        InteractionNet.deltaPrimes.clear();
-        LambdaNet.free.clear();
         LambdaNet net = new LambdaNet(new Term(term));
         net.reduce();
         return net.toTerm();
@@ -81,6 +83,21 @@ public class FunctionalTest {
         assertReduces("y", "(L x . x x) (L x . y)");
     }
 
+    @Test
+    public void erasedDivergingArgumentTest() {
+        // The erased arguments never stop growing, so their cuts have to be dropped as soon as they are erased
+        assertReduces("y", "(L x . y) ((L x . x x x) (L x . x x x))");
+        assertReduces("L z . z", "L z . (L x . z) ((L x . x x x) (L x . x x x))");
+        assertReduces("L z . z z", "L z . (L x . z z) (z ((L x . x x x) (L x . x x x)))");
+    }
+
+    @Test
+    public void copiedArgumentTest() {
+        // The copies are read in the arguments of w, so the DEL_PRIMEs there have to be forced too
+        assertReduces("w (L b . w b) (L b . w b)", "(L y . w y y) (L b . w b)");
+        assertReduces("w (L d . z (L x . d)) (L d . z (L x . d))", "(L c . w c c) (L d . z (L x . d))");
+    }
+
     @Test
     public void doubleDelPrime() {
         assertReduces("L a . L b . a (a (a (a (a (a (a (a b)))))))",
@@ -95,4 +112,89 @@ public class FunctionalTest {
             }
         }
     }
+
+    @Test
+    public void deepReductionTest() throws InterruptedException {
+        // A recursive reduce() overflows a 128 KB stack well before 2^10
+        LambdaNet net = new LambdaNet(new Term(exp(2, 10)));
+        TestUtil.runWithStack(1 << 17, net::reduce);
+        assertEquals(new Term(churchNum(1024)), net.toTerm());
+    }
+
+    @Test
+    public void deepEncodingTest() {
+        // Encoding does not recurse, so an argument nested this deep can be encoded and erased
+        assertReduces("L y . y", "(L x . L y . y) (" + churchNum(100000) + ")");
+    }
+
+    @Test
+    public void concurrentExpTest() {
+        for (int i = 1; i <= 4; i++) {
+            for (int j = 1; j <= 5; j++) {
+                ReductionContext context = new ReductionContext();
+                context.setThreads(4);
+                try {
+                    LambdaNet net = new LambdaNet(new Term(exp(i, j)), context);
+                    net.reduce();
+                    assertEquals(new Term(churchNum((int)Math.pow(i, j))), net.toTerm());
+                } finally {
+                    context.setThreads(1);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void independentReductionsTest() throws Exception {
+        // Each reduction has its own ReductionContext, so they can run on separate threads at once
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Term>> results = new ArrayList<>();
+            for (int i = 1; i <= 4; i++) {
+                String term = exp(i, 4);
+                results.add(executor.submit(() -> reduceTerm(term)));
+            }
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(new Term(churchNum((int)Math.pow(i, 4))), results.get(i - 1).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void deepReadbackTest() {
+        // Reading back does not recurse either, so a normal form nested this deep can be decoded
+        assertReduces(churchNum(100000), "(L x . x) (" + churchNum(100000) + ")");
+    }
+
+    @Test
+    public void captureTest() {
+        // A Lambda whose variable would capture a free variable (or another Lambda's variable) is renamed
+        assertEquals("L x' . x", reduceTerm("(L y . L x . y) x").prettyPrint());
+        assertEquals("L x' . L x'' . x x'", reduceTerm("(L y . L x . L x' . y x) x").prettyPrint());
+    }
+
+    @Test
+    public void sharedReadbackTest() {
+        // Each use of d doubles the normal form, but the net shares the two halves and so does letBind
+        StringBuilder term = new StringBuilder("(L d . ");
+        for (int i = 0; i < 30; i++) {
+            term.append("d (");
+        }
+        term.append("w");
+        for (int i = 0; i < 30; i++) {
+            term.append(")");
+        }
+        term.append(") (L x . p x x)");
+
+        Term shared = reduceTerm(term.toString()).letBind();
+        assertTrue(shared.prettyPrint().length() < 1000);
+        assertEquals(reduceTerm(term.toString()).letBind(), shared);
+
+        assertEquals("let b = (let a = ((p w) w) in (p a) a) in (p b) b",
+                reduceTerm("(L d . d (d (d w))) (L x . p x x)").letBind().prettyPrint());
+        assertEquals(new Term("p (p (p w w) (p w w)) (p (p w w) (p w w))"),
+                reduceTerm("(L d . d (d (d w))) (L x . p x x)").letBind());
+    }
 }
@@ -0,0 +1,225 @@
+package FourCombinatorImplementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * The head normal form L x1 . ... L xn . h a1 ... am of a LambdaNet, read one level at a time. Only the cuts on the way
+ * to the head h are reduced (see InteractionNet.reduceHead), and each argument is reduced and read as a HeadForm of
+ * its own when argument(i) is first called, so a consumer that only looks at the first few levels of the result
+ * does not pay for the rest of it. Once the way to a head goes through a DEL_PRIME the whole net is reduced, and from
+ * then on only the reading is lazy, which is still most of the work for a normal form much bigger than its net.
+ *
+ * The names of the Lambdas are the ones they have in the net, and toTerm() chooses names that avoid capture without
+ * changing them. They are not renamed as they are read, since the reduction of an argument read later can
+ * duplicate a Lambda, and the copies, which keep the name of the original, read right only while they share a name.
+ * So binders() and head() give the names in the net, which can repeat from one level to the next.
+ * A subterm shared by a Delta is read once, and its HeadForm is the same object for every use.
+ */
+public class HeadForm {
+    private final Reader reader;
+    private final List<Cell> binders = new ArrayList<>(); // The Lambdas around the head
+    private String head; // The name of a free head, or null
+    private Port bound; // The Port of the Lambda that binds the head, or null
+    private final List<Port> roots = new ArrayList<>(); // The Ports the arguments are linked to, first argument first
+    private HeadForm[] arguments;
+
+    private HeadForm(Reader reader) {
+        this.reader = reader;
+    }
+
+    // Reduces net to head normal form and reads it
+    static HeadForm read(LambdaNet net) {
+        if (!net.context.stack.isEmpty())
+            throw new RuntimeException("Net is partly reduced by reduceSlice");
+        return new Reader(net).read(net.handle);
+    }
+
+    // The names bound by the Lambdas around the head, outermost first
+    public List<String> binders() {
+        List<String> names = new ArrayList<>(binders.size());
+        for (Cell cell : binders) {
+            names.add(cell.left.name);
+        }
+        return Collections.unmodifiableList(names);
+    }
+
+    // The name of the head variable, which is either one of binders(), one bound further out or free
+    public String head() {
+        return (bound != null)? bound.name : head;
+    }
+
+    public int arguments() {
+        return roots.size();
+    }
+
+    public HeadForm argument(int i) {
+        if (arguments[i] == null)
+            arguments[i] = reader.read(roots.get(i));
+        return arguments[i];
+    }
+
+    // Marks the place on the work stack of toTerm where the Term of the HeadForm on top of building is built
+    private final static Object BUILD = new Object();
+
+    /*
+     * Reads every argument, and their arguments, into a Term. Instead of recursing, the HeadForms still to read are
+     * kept on a stack, above a BUILD for each HeadForm whose Term is built once the Terms of its arguments are on
+     * results. The Lambdas of a HeadForm are named to avoid capture when it is reached, in names of their own rather
+     * than in the net, and a bound head takes the name of its binder where it is read.
+     *
+     * Along with each result goes its reach, how many Lambdas around it its head variables are bound by, as in
+     * LambdaNet.toDeBruijnTerm. A HeadForm that is an argument of many others is read once and its Term shared if its
+     * reach is 0, so the result is a DAG as in LambdaNet.toTerm(). Otherwise the names it refers to depend on where it
+     * is used, and it is read again for every use.
+     */
+    public Term toTerm() {
+        Map<HeadForm, Term> terms = new IdentityHashMap<>(); // The shared Terms
+        Map<Cell, String> names = new IdentityHashMap<>(); // The name of each Lambda in scope
+        Map<Cell, Integer> levels = new IdentityHashMap<>(); // The number of Lambdas around each Lambda in scope
+        Deque<Cell> scope = new ArrayDeque<>(); // The Lambdas in scope, innermost first
+        NameScope taken = new NameScope(reader.free.values());
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<HeadForm> building = new ArrayDeque<>();
+        Deque<Term> results = new ArrayDeque<>();
+        Deque<Integer> reaches = new ArrayDeque<>(); // The reach of each Term on results
+        work.push(this);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next != BUILD) {
+                HeadForm form = (HeadForm) next;
+                Term term = terms.get(form);
+                if (term != null) {
+                    results.push(term);
+                    reaches.push(0);
+                    continue;
+                }
+                for (Cell cell : form.binders) {
+                    String name = taken.fresh(cell.left.name);
+                    taken.add(name);
+                    names.put(cell, name);
+                    levels.put(cell, scope.size());
+                    scope.push(cell);
+                }
+                building.push(form);
+                work.push(BUILD);
+                for (int i = form.arguments() - 1; i >= 0; i--) { // So that the first argument is read first
+                    work.push(form.argument(i));
+                }
+                continue;
+            }
+
+            HeadForm form = building.pop();
+            Term[] arguments = new Term[form.arguments()];
+            int reach = 0;
+            for (int i = arguments.length - 1; i >= 0; i--) {
+                arguments[i] = results.pop();
+                reach = Math.max(reach, reaches.pop());
+            }
+            Term term;
+            if (form.bound == null) {
+                term = Term.var(form.head);
+            } else {
+                Cell binder = binder(form.bound, scope, levels);
+                if (binder == null) { // Not bound by a Lambda read in this Term, so the name in the net is kept
+                    term = Term.var(form.bound.name);
+                } else {
+                    term = Term.var(names.get(binder));
+                    reach = Math.max(reach, scope.size() - levels.get(binder));
+                }
+            }
+            for (Term argument : arguments) {
+                term = new Term(Term.APP, term, argument, null);
+            }
+            for (int i = form.binders.size() - 1; i >= 0; i--) {
+                Cell cell = scope.pop();
+                String name = names.remove(cell);
+                levels.remove(cell);
+                taken.remove(name);
+                term = new Term(Term.LAM, Term.var(name), term, null);
+                reach = Math.max(reach - 1, 0);
+            }
+            if (reach == 0)
+                terms.put(form, term);
+            results.push(term);
+            reaches.push(reach);
+        }
+        return results.pop();
+    }
+
+    /*
+     * The Lambda in scope that binds the variable at bound, the left Port of a Lambda. That is the Lambda itself if it
+     * is in scope, and otherwise one of its copies: a variable of a Lambda that a DEL_PRIME is still duplicating can
+     * be reached at the other copy (see InteractionNet.forceDup), and the copies keep the name of the original, so it
+     * is the innermost Lambda in scope with that name.
+     */
+    private static Cell binder(Port bound, Deque<Cell> scope, Map<Cell, Integer> levels) {
+        if (levels.containsKey(bound.cell))
+            return bound.cell;
+        for (Cell cell : scope) {
+            if (cell.left.name.equals(bound.name))
+                return cell;
+        }
+        return null;
+    }
+
+    // What the HeadForms read from one net share
+    private static class Reader {
+        final InteractionNet net;
+        final Map<Port, String> free = new IdentityHashMap<>();
+        final Map<Cell, HeadForm> shared = new IdentityHashMap<>(); // By the Delta that shares it
+
+        Reader(InteractionNet net) {
+            this.net = net;
+            for (Map.Entry<String, Port> entry : net.context.free.entrySet()) {
+                free.put(entry.getValue(), entry.getKey());
+            }
+        }
+
+        // Reduces the subnet linked to root to head normal form and reads it, going past Deltas as toTerm() does
+        HeadForm read(Port root) {
+            net.reduceHead(root);
+            Port linked = root.getLinkedPort();
+            Cell sharing = null;
+            if (linked.cell != null && linked.cell.symbol != Cell.Symbol.GAM) {
+                sharing = linked.cell;
+                HeadForm form = shared.get(sharing);
+                if (form != null)
+                    return form;
+            }
+
+            HeadForm form = new HeadForm(this);
+            Port port = root;
+            while (form.head == null && form.bound == null) {
+                linked = port.getLinkedPort();
+                Cell cell = linked.cell;
+                if (cell == null) { // A free variable
+                    form.head = free.get(linked);
+                } else if (cell.symbol != Cell.Symbol.GAM) { // A Delta
+                    if (linked.port == Port.PRINCIPAL)
+                        throw new RuntimeException("Delta is linked the wrong way");
+                    port = cell.principal;
+                } else if (linked.port == Port.PRINCIPAL) { // A Lambda
+                    form.binders.add(cell);
+                    port = cell.right;
+                } else if (linked.port == Port.RIGHT) { // An application, whose function is read next
+                    form.roots.add(cell.left);
+                    port = cell.principal;
+                } else { // A bound variable
+                    form.bound = linked;
+                }
+            }
+            Collections.reverse(form.roots); // The outermost application, read first, has the last argument
+            form.arguments = new HeadForm[form.roots.size()];
+
+            if (sharing != null)
+                shared.put(sharing, form);
+            return form;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeadFormTest {
+    private static Term reduceTerm(String term) {
+        LambdaNet net = new LambdaNet(new Term(term));
+        net.reduce();
+        return net.toTerm();
+    }
+
+    @Test
+    public void headTest() {
+        HeadForm form = new LambdaNet(new Term("(L x . L y . L z . y (x z) z) w")).toHeadForm();
+        assertEquals(Arrays.asList("y", "z"), form.binders());
+        assertEquals("y", form.head());
+        assertEquals(2, form.arguments());
+        assertEquals(new Term("w z"), form.argument(0).toTerm());
+        assertEquals("z", form.argument(1).head());
+
+        assertEquals("x", new LambdaNet(new Term("x")).toHeadForm().head());
+    }
+
+    @Test
+    public void toTermTest() {
+        String[] terms = {"(L x . x x) (L f . L a . a f f)", "L y . (L a . L b . a b) (L x . x) (L x . y)",
+                "(L f . L a . f (f (f a))) (L g . L b . g (g b))", "(L y . L x . L x' . y x) x",
+                "(L b . b (b b)) ((L a . L a . z a) z)", TestUtil.expString(3, 4),
+                "((L a . ((zb a) a)) (L d . ((((L b . d) d) d) ((L d . (d ((d d) d))) (L c . d)))))",
+                "(L b . b (L x . (b b) (L c . b))) (w (L c . c c))"};
+        for (String term : terms) {
+            assertTrue(reduceTerm(term).alphaEquals(new LambdaNet(new Term(term)).toHeadForm().toTerm()), term);
+        }
+    }
+
+    @Test
+    public void unreadArgumentTest() {
+        // The argument that has no normal form is never reduced, since it is never read
+        HeadForm form = new LambdaNet(new Term("L f . f (L y . y) ((L x . x x) (L x . x x))")).toHeadForm();
+        assertEquals("f", form.head());
+        assertEquals(2, form.arguments());
+        assertEquals(new Term("L y . y"), form.argument(0).toTerm());
+    }
+
+    @Test
+    public void bigOutputTest() {
+        // The normal form is 2^20 applications deep, of which only the outermost few are read
+        HeadForm form = new LambdaNet(new Term(TestUtil.expString(2, 20))).toHeadForm();
+        String f = form.binders().get(0);
+        for (int i = 0; i < 10; i++) {
+            assertEquals(1, form.arguments());
+            assertEquals(f, form.head());
+            form = form.argument(0);
+        }
+    }
+
+    @Test
+    public void sharedArgumentTest() {
+        // A Lambda that is shared is duplicated when it is read, but an application is read once for both uses
+        HeadForm form = new LambdaNet(new Term("(L s . x s s) (y z)")).toHeadForm();
+        assertSame(form.argument(0), form.argument(1));
+        assertEquals(new Term("x (y z) (y z)"), form.toTerm());
+    }
+
+    @Test
+    public void reduceAfterTest() {
+        // The cuts reduced for the head are only some of those reduce() would, so it can finish the net from there
+        String term = "(L x . L y . y (x x)) (L z . z)";
+        LambdaNet net = new LambdaNet(new Term(term));
+        assertEquals("y", net.toHeadForm().head());
+        net.reduce();
+        assertEquals(reduceTerm(term), net.toTerm());
+    }
+}
@@ -0,0 +1,673 @@
+package FourCombinatorImplementation;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static FourCombinatorImplementation.NetHeap.*;
+
+/*
+ * A LambdaNet stored in a NetHeap. Encoding, the interaction rules of Wire, the reduction strategy of
+ * InteractionNet and the decoding of LambdaNet all work the same way here, but on int addresses instead of objects.
+ *
+ * Where CellPool.make moves a Port into a new Cell, here the slot of the consumed cell is left
+ * holding the address of the port that took its place, so that addresses held by reduce() can follow it (see resolve).
+ */
+public class HeapLambdaNet {
+    final NetHeap heap;
+    final int handle;
+
+    private final IntQueue cuts = new IntQueue();
+    private int deltaPrimes = 0; // The number of cells flagged as being in the set InteractionNet.deltaPrimes
+    private final Set<String> free = new HashSet<>(); // The names of the free variables
+
+    private final IntQueue epsilons = new IntQueue(); // Epsilons that were linked since the last sweep
+
+    // Cells killed by normalize() that it made itself, and so can be released once the cut is reduced
+    // reduce() holds addresses from before normalize() was called, so older cells are left DEAD for resolve
+    private final IntQueue dead = new IntQueue();
+    private int mark = Integer.MAX_VALUE; // The size of the heap when normalize() was called
+
+    // The unfinished steps of reduce(), as in ReduceStack: the handle below which each one reduces, the cell it found
+    // there and how far it got
+    private int[] handles = new int[16];
+    private int[] tops = new int[16];
+    private int[] states = new int[16];
+    private int steps = 0;
+
+    private final IntQueue unpriming = new IntQueue(); // Used as a stack by removePrime
+
+    // Encodes Terms into NetHeaps
+    public HeapLambdaNet(Term term) {
+        this(term, new NetHeap());
+    }
+
+    public HeapLambdaNet(Term term, NetHeap heap) {
+        this.heap = heap;
+        handle = address(heap.allocate(ROOT), Port.PRINCIPAL);
+        link(handle, encode(term, new HashMap<>()));
+    }
+
+    /*
+     * Returns the address of the port that the parent of term should be linked to. As in LambdaNet.encode, the Terms
+     * still to encode are kept on a stack, and below them the cells (as Integers) that their ports are linked to once
+     * those are on roots.
+     */
+    private int encode(Term term, Map<String, Integer> bound) {
+        Deque<Object> work = new ArrayDeque<>();
+        IntQueue roots = new IntQueue(); // Used as a stack
+        List<Integer> shadowed = new ArrayList<>(); // What the name of each open Lambda was bound to, or null
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Integer) {
+                int cell = (Integer) next;
+                if (isLambda(cell)) {
+                    link(address(cell, Port.RIGHT), roots.pollLast());
+                    String name = heap.nameOf(heap.name(cell));
+                    Integer outer = shadowed.remove(shadowed.size() - 1);
+                    if (outer != null)
+                        bound.put(name, outer);
+                    else
+                        bound.remove(name);
+                    fixEnd(address(cell, Port.LEFT));
+                    roots.add(address(cell, Port.PRINCIPAL));
+                } else {
+                    int arg = roots.pollLast();
+                    int fun = roots.pollLast();
+                    // Linking after both sides are encoded queues cuts in the same order as LambdaNet
+                    link(address(cell, Port.PRINCIPAL), fun);
+                    link(address(cell, Port.LEFT), arg);
+                    roots.add(address(cell, Port.RIGHT));
+                }
+                continue;
+            }
+
+            term = (Term) next;
+            switch (term.type) {
+                case Term.VAR:
+                    roots.add(encodeVariable(term.name, bound));
+                    break;
+                case Term.LAM:
+                    int lam = heap.allocate(GAM);
+                    heap.setName(lam, heap.intern(term.left.name));
+                    shadowed.add(bound.get(term.left.name));
+                    bound.put(term.left.name, address(lam, Port.LEFT));
+                    work.push(lam);
+                    work.push(term.right);
+                    break;
+                case Term.APP:
+                    int app = heap.allocate(GAM);
+                    work.push(app);
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+                case Term.LET: // A let is encoded as the application of a Lambda, which shares the Term it binds
+                    work.push(term.redex());
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return roots.pollLast();
+    }
+
+    private int encodeVariable(String name, Map<String, Integer> bound) {
+        if (bound.containsKey(name)) {
+            // As in LambdaNet, this leaves an extra Delta that is removed in fixEnd
+            int delta = heap.allocate(DEL);
+            link(address(delta, Port.PRINCIPAL), bound.get(name));
+            bound.put(name, address(delta, Port.RIGHT));
+            return address(delta, Port.LEFT);
+        } else {
+            int var = heap.allocate(FREE);
+            heap.setName(var, heap.intern(name));
+            free.add(name);
+            return address(var, Port.PRINCIPAL);
+        }
+    }
+
+    // To be called with the address of a port that binds a variable
+    private void fixEnd(int port) {
+        while (true) {
+            int linked = heap.get(port);
+            if (linked == NONE) { // If unused, place Epsilon
+                link(port, address(heap.allocate(EPS), Port.PRINCIPAL));
+                return;
+            }
+
+            int delta = cellOf(linked);
+            if (heap.get(address(delta, Port.RIGHT)) == NONE) { // If this is the extra Delta, bypass it
+                link(port, heap.get(address(delta, Port.LEFT)));
+                kill(delta);
+                return;
+            }
+            port = address(delta, Port.RIGHT);
+        }
+    }
+
+    private void link(int address1, int address2) {
+        heap.link(address1, address2);
+        if (isEpsilon(address1))
+            epsilons.add(address1);
+        else if (isEpsilon(address2))
+            epsilons.add(address2);
+        else if (isCut(address1))
+            cuts.add(address1);
+    }
+
+    private boolean isEpsilon(int address) {
+        return portOf(address) == Port.PRINCIPAL && heap.symbol(cellOf(address)) == EPS;
+    }
+
+    private boolean isCut(int address) {
+        if (address == NONE || portOf(address) != Port.PRINCIPAL || !interacts(heap.symbol(cellOf(address))))
+            return false;
+        int other = heap.get(address);
+        return other != NONE && portOf(other) == Port.PRINCIPAL && interacts(heap.symbol(cellOf(other)));
+    }
+
+    // Follows the addresses left behind by consumed cells to where their ports are now
+    int resolve(int address) {
+        while (address != NONE && heap.symbol(cellOf(address)) == DEAD) {
+            int next = heap.get(address);
+            if (next == NONE)
+                return address;
+            address = next;
+        }
+        return address;
+    }
+
+    // Returns the address linked to the port at address (the equivalent of Port.getLinkedPort)
+    private int linked(int address) {
+        return heap.get(resolve(address));
+    }
+
+    // Returns the cell at address, or NONE if there is none (the equivalent of Port.cell == null)
+    private int cellAt(int address) {
+        if (address == NONE || !interacts(heap.symbol(cellOf(address))))
+            return NONE;
+        return cellOf(address);
+    }
+
+    private boolean isLambda(int cell) {
+        return heap.symbol(cell) == GAM && heap.name(cell) != NONE;
+    }
+
+    private boolean isApplication(int cell) {
+        return heap.symbol(cell) == GAM && heap.name(cell) == NONE;
+    }
+
+    private void register(int cell) {
+        heap.setFlag(cell, true);
+        deltaPrimes++;
+    }
+
+    private void unregister(int cell) {
+        if (heap.flag(cell)) {
+            heap.setFlag(cell, false);
+            deltaPrimes--;
+        }
+    }
+
+    private void kill(int cell) {
+        kill(cell, NONE, NONE);
+    }
+
+    // Marks cell as consumed, recording where its left and right ports were moved to
+    private void kill(int cell, int left, int right) {
+        if (cell >= mark && heap.symbol(cell) != DEAD)
+            dead.add(cell);
+        heap.setSymbol(cell, DEAD);
+        heap.set(address(cell, Port.PRINCIPAL), NONE);
+        heap.set(address(cell, Port.LEFT), left);
+        heap.set(address(cell, Port.RIGHT), right);
+    }
+
+    void normalize() {
+        mark = heap.size();
+        while (!cuts.isEmpty()) {
+            int cut = cuts.poll();
+            // Cuts are found on every link, so some may have been consumed or relinked since
+            if (isCut(cut))
+                interact(cellOf(cut), cellOf(heap.get(cut)));
+            sweep();
+            release();
+        }
+        sweep();
+        release();
+        mark = Integer.MAX_VALUE;
+    }
+
+    // Every link to a cell killed by the last interaction has been replaced, so its slots can be reused
+    // A stale cut may still hold the address of a released cell, but isCut is checked again when it is polled
+    private void release() {
+        while (!dead.isEmpty()) {
+            heap.release(dead.poll());
+        }
+    }
+
+    // See InteractionNet.erase, each queued Epsilon erases everything it disconnects
+    private void sweep() {
+        while (!epsilons.isEmpty()) {
+            int eps = epsilons.poll();
+            if (heap.symbol(cellOf(eps)) != EPS)
+                continue;
+            int target = heap.get(eps);
+            if (target == NONE)
+                continue;
+            int cell = cellOf(target);
+            int symbol = heap.symbol(cell);
+            if (!interacts(symbol)) // A free variable or the handle
+                continue;
+
+            if (portOf(target) == Port.PRINCIPAL) {
+                kill(cellOf(eps));
+                if (symbol == EPS) {
+                    kill(cell);
+                    continue;
+                }
+                unregister(cell);
+                int left = heap.get(address(cell, Port.LEFT));
+                int right = heap.get(address(cell, Port.RIGHT));
+                kill(cell);
+                link(address(heap.allocate(EPS), Port.PRINCIPAL), left);
+                link(address(heap.allocate(EPS), Port.PRINCIPAL), right);
+            } else if (symbol == DEL) {
+                int other = address(cell, (portOf(target) == Port.LEFT)? Port.RIGHT : Port.LEFT);
+                int up = heap.get(address(cell, Port.PRINCIPAL));
+                int down = heap.get(other);
+                if (portOf(up) == Port.PRINCIPAL || !interacts(heap.symbol(cellOf(up))) ||
+                        !interacts(heap.symbol(cellOf(down))))
+                    continue; // The Delta is about to interact, or it is linked to a free variable
+
+                kill(cellOf(eps));
+                kill(cell);
+                link(up, down);
+            } else if (isApplication(cell) && portOf(target) == Port.RIGHT) {
+                int function = heap.get(address(cell, Port.PRINCIPAL));
+                int argument = heap.get(address(cell, Port.LEFT));
+                kill(cellOf(eps));
+                kill(cell);
+                link(address(heap.allocate(EPS), Port.PRINCIPAL), function);
+                link(address(heap.allocate(EPS), Port.PRINCIPAL), argument);
+            }
+        }
+    }
+
+    // The equivalent of Wire.reduce
+    private void interact(int cell1, int cell2) {
+        int symbol1 = heap.symbol(cell1);
+        int symbol2 = heap.symbol(cell2);
+
+        if (symbol1 == symbol2) {
+            if (symbol1 == EPS) {
+                kill(cell1);
+                kill(cell2);
+            } else {
+                unregister(cell1);
+                unregister(cell2);
+                annihilate(cell1, cell2);
+            }
+        } else if (symbol1 == EPS) {
+            erase(cell2, cell1);
+        } else if (symbol2 == EPS) {
+            erase(cell1, cell2);
+        } else if (symbol1 == DEL && symbol2 == GAM) {
+            commute(cell2, cell1, DEL_PRIME);
+        } else if (symbol1 == GAM && symbol2 == DEL) {
+            commute(cell1, cell2, DEL_PRIME);
+        } else {
+            commute(cell1, cell2, symbol2);
+        }
+    }
+
+    private void annihilate(int cell1, int cell2) {
+        // Each target is read after the previous link so that ports linked to each other are handled
+        link(heap.get(address(cell1, Port.LEFT)), heap.get(address(cell2, Port.LEFT)));
+        link(heap.get(address(cell1, Port.RIGHT)), heap.get(address(cell2, Port.RIGHT)));
+        kill(cell1);
+        kill(cell2);
+    }
+
+    private void erase(int other, int eps) {
+        unregister(other);
+
+        int left = heap.get(address(other, Port.LEFT));
+        int right = heap.get(address(other, Port.RIGHT));
+        int epsL = address(heap.allocate(EPS), Port.PRINCIPAL);
+        int epsR = address(heap.allocate(EPS), Port.PRINCIPAL);
+
+        kill(eps);
+        kill(other, epsL, epsR);
+
+        link(epsL, resolve(left));
+        link(epsR, resolve(right));
+    }
+
+    // Places copies of bottom (with symbol topCopy) on the aux ports of top, and copies of top on those of bottom
+    private void commute(int top, int bottom, int topCopy) {
+        int bottomCopy = heap.symbol(top);
+        unregister(top);
+        unregister(bottom);
+
+        int topLeft = heap.get(address(top, Port.LEFT));
+        int topRight = heap.get(address(top, Port.RIGHT));
+        int bottomLeft = heap.get(address(bottom, Port.LEFT));
+        int bottomRight = heap.get(address(bottom, Port.RIGHT));
+
+        int topL = heap.allocate(topCopy);
+        int topR = heap.allocate(topCopy);
+        int bottomL = heap.allocate(bottomCopy);
+        int bottomR = heap.allocate(bottomCopy);
+
+        if (heap.name(bottom) != NONE) {
+            heap.setName(topL, heap.name(bottom));
+            heap.setName(topR, heap.name(bottom));
+        }
+        if (heap.name(top) != NONE) {
+            heap.setName(bottomL, heap.name(top));
+            heap.setName(bottomR, heap.name(top));
+        }
+
+        if (topCopy == DEL_PRIME) {
+            register(topL);
+            register(topR);
+        }
+        if (bottomCopy == DEL_PRIME) {
+            register(bottomL);
+            register(bottomR);
+        }
+
+        kill(top, address(topR, Port.PRINCIPAL), address(topL, Port.PRINCIPAL));
+        kill(bottom, address(bottomL, Port.PRINCIPAL), address(bottomR, Port.PRINCIPAL));
+
+        link(address(topL, Port.LEFT), address(bottomL, Port.RIGHT));
+        link(address(topL, Port.RIGHT), address(bottomR, Port.RIGHT));
+        link(address(topR, Port.LEFT), address(bottomL, Port.LEFT));
+        link(address(topR, Port.RIGHT), address(bottomR, Port.LEFT));
+
+        link(address(topL, Port.PRINCIPAL), resolve(topRight));
+        link(address(topR, Port.PRINCIPAL), resolve(topLeft));
+        link(address(bottomL, Port.PRINCIPAL), resolve(bottomLeft));
+        link(address(bottomR, Port.PRINCIPAL), resolve(bottomRight));
+    }
+
+    // How far the step on top of the stack has got, as in InteractionNet
+    private final static int START = 0;
+    private final static int FUNCTION_REDUCED = 1;
+    private final static int SHARED_REDUCED = 2;
+    private final static int COPY_REDUCED = 3;
+    private final static int HEAD = 4;
+
+    // See InteractionNet.reduce, each step reduces the subnet below the address of a port (its handle)
+    public void reduce() {
+        steps = 0;
+        push(handle, START);
+        while (steps > 0) {
+            int state = states[steps - 1];
+            if ((state & ~HEAD) == START)
+                start(handles[steps - 1], state & HEAD);
+            else
+                resume(state & ~HEAD, handles[steps - 1], tops[steps - 1], state & HEAD);
+        }
+    }
+
+    private void start(int handle, int head) {
+        if (!cuts.isEmpty() || !epsilons.isEmpty()) // Most steps find nothing left to normalize
+            normalize();
+        if (deltaPrimes == 0) {
+            steps--;
+            return;
+        }
+
+        int top = cellAt(linked(handle));
+        if (top == NONE) {
+            steps--;
+            return;
+        }
+
+        int symbol = heap.symbol(top);
+        if (symbol == GAM && portOf(linked(handle)) == Port.PRINCIPAL) {
+            replace(address(top, Port.RIGHT), head);
+        } else if (isApplication(top) && portOf(linked(handle)) == Port.RIGHT) {
+            set(FUNCTION_REDUCED + head, top);
+            push(address(top, Port.PRINCIPAL), head);
+        } else if (portOf(linked(handle)) == Port.PRINCIPAL) {
+            steps--; // A Delta that copies a variable, seen from where the variable is used
+        } else if (symbol == DEL) {
+            replace(address(top, Port.PRINCIPAL), head);
+        } else if (symbol == DEL_PRIME) {
+            set(SHARED_REDUCED + head, top);
+            push(address(top, Port.PRINCIPAL), HEAD);
+        } else {
+            steps--;
+        }
+    }
+
+    // Carries on with a step once the subnet it pushed is reduced
+    private void resume(int state, int handle, int top, int head) {
+        if (state == FUNCTION_REDUCED) {
+            if (head == HEAD)
+                steps--;
+            else
+                replace(address(top, Port.LEFT), START);
+        } else if (state == SHARED_REDUCED) {
+            if (heap.symbol(top) != DEL_PRIME) { // This means the cell has been consumed or changed to a DEL
+                if (head == HEAD)
+                    steps--;
+                else
+                    set(START, NONE);
+                return;
+            }
+            int next = cellAt(linked(address(top, Port.PRINCIPAL)));
+            if (next == NONE || isLambda(next)) {
+                removePrime(top);
+                if (head == HEAD)
+                    steps--;
+                else
+                    replace(address(top, Port.PRINCIPAL), START);
+            } else if (isApplication(next) && portOf(linked(address(top, Port.PRINCIPAL))) == Port.RIGHT) {
+                forceDup(top);
+                int below = cellAt(linked(handle));
+                if (below == NONE) {
+                    steps--;
+                } else {
+                    set(COPY_REDUCED + head, top);
+                    push(address(below, Port.PRINCIPAL), head);
+                }
+            } else if (heap.symbol(next) == DEL) {
+                changeSymbol(next, DEL_PRIME);
+                set(START + head, NONE);
+            } else {
+                steps--;
+            }
+        } else { // COPY_REDUCED
+            int below = cellAt(linked(handle));
+            if (below == NONE || head == HEAD)
+                steps--;
+            else
+                replace(address(below, Port.LEFT), START);
+        }
+    }
+
+    // Adds a step that starts reducing below handle
+    private void push(int handle, int state) {
+        if (steps == handles.length) {
+            handles = Arrays.copyOf(handles, 2 * steps);
+            tops = Arrays.copyOf(tops, 2 * steps);
+            states = Arrays.copyOf(states, 2 * steps);
+        }
+        steps++;
+        replace(handle, state);
+    }
+
+    // Makes the top step start over below handle, for a step whose last action is to reduce there
+    private void replace(int handle, int state) {
+        handles[steps - 1] = handle;
+        set(state, NONE);
+    }
+
+    private void set(int state, int top) {
+        states[steps - 1] = state;
+        tops[steps - 1] = top;
+    }
+
+    private void forceDup(int del) {
+        int gam = cellOf(heap.get(address(del, Port.PRINCIPAL)));
+
+        int gamL = heap.allocate(GAM);
+        int gamR = heap.allocate(GAM);
+        int delL = heap.allocate(DEL_PRIME);
+        int delR = heap.allocate(DEL_PRIME);
+
+        // Each target is read just before it is linked, as in InteractionNet.forceDup
+        link(address(gamL, Port.RIGHT), heap.get(address(del, Port.RIGHT)));
+        link(address(gamL, Port.LEFT), address(delR, Port.RIGHT));
+        link(address(gamL, Port.PRINCIPAL), address(delL, Port.RIGHT));
+        link(address(gamR, Port.RIGHT), heap.get(address(del, Port.LEFT)));
+        link(address(gamR, Port.LEFT), address(delR, Port.LEFT));
+        link(address(gamR, Port.PRINCIPAL), address(delL, Port.LEFT));
+        link(address(delL, Port.PRINCIPAL), heap.get(address(gam, Port.PRINCIPAL)));
+        link(address(delR, Port.PRINCIPAL), heap.get(address(gam, Port.LEFT)));
+
+        unregister(del);
+        register(delL);
+        register(delR);
+
+        kill(del);
+        kill(gam);
+    }
+
+    // Replaces cell with a new one so that addresses of the old cell's ports follow to the new one
+    private void changeSymbol(int cell, int symbol) {
+        int newCell = heap.allocate(symbol);
+        if (heap.name(cell) != NONE)
+            heap.setName(newCell, heap.name(cell));
+
+        int principal = heap.get(address(cell, Port.PRINCIPAL));
+        int left = heap.get(address(cell, Port.LEFT));
+        int right = heap.get(address(cell, Port.RIGHT));
+
+        unregister(cell);
+        if (symbol == DEL_PRIME)
+            register(newCell);
+
+        kill(cell, address(newCell, Port.LEFT), address(newCell, Port.RIGHT));
+        heap.set(address(cell, Port.PRINCIPAL), address(newCell, Port.PRINCIPAL));
+
+        link(address(newCell, Port.PRINCIPAL), resolve(principal));
+        link(address(newCell, Port.LEFT), resolve(left));
+        link(address(newCell, Port.RIGHT), resolve(right));
+    }
+
+    // See InteractionNet.removePrime. The addresses pushed are those of the old cell's ports, which resolve to the
+    // ports of the DEL that replaced it
+    private void removePrime(int delPrime) {
+        unprime(delPrime);
+        while (!unpriming.isEmpty()) {
+            int cell = cellAt(linked(unpriming.pollLast()));
+            if (cell != NONE && heap.symbol(cell) == DEL_PRIME)
+                unprime(cell);
+        }
+    }
+
+    private void unprime(int delPrime) {
+        changeSymbol(delPrime, DEL);
+        unpriming.add(address(delPrime, Port.RIGHT));
+        unpriming.add(address(delPrime, Port.LEFT));
+    }
+
+    // Decodes NetHeaps into Terms
+    public Term toTerm() {
+        return toTerm(handle, new NameScope(free), new HashMap<>());
+    }
+
+    /*
+     * The Map shared holds the Term of each Delta decoded, which every use of it shares (see Term.letBind).
+     * Instead of recursing, the addresses of the ports still to decode are kept on a stack, and below them the
+     * complement (~) of the address a Lambda, application or Delta was reached at, whose Term is built once the Terms
+     * of its ports are on results.
+     */
+    private Term toTerm(int root, NameScope names, Map<Integer, Term> shared) {
+        IntQueue work = new IntQueue();
+        Deque<Term> results = new ArrayDeque<>();
+        work.add(root);
+        while (!work.isEmpty()) {
+            int next = work.pollLast();
+            if (next < 0) {
+                build(~next, names, shared, results);
+                continue;
+            }
+
+            int linked = heap.get(next);
+            int cell = cellOf(linked);
+            int symbol = heap.symbol(cell);
+
+            if (symbol == FREE) {
+                results.push(Term.var(heap.nameOf(heap.name(cell))));
+            } else if (symbol == DEL || symbol == DEL_PRIME) {
+                Term term = shared.get(cell);
+                if (term != null) {
+                    results.push(term);
+                } else {
+                    work.add(~linked);
+                    work.add(address(cell, Port.PRINCIPAL));
+                }
+            } else if (portOf(linked) == Port.PRINCIPAL) { // Lambda
+                String name = names.fresh(heap.nameOf(heap.name(cell)));
+                heap.setName(cell, heap.intern(name));
+                names.add(name);
+                work.add(~linked);
+                work.add(address(cell, Port.RIGHT));
+            } else if (portOf(linked) == Port.RIGHT) { // Application
+                work.add(~linked);
+                work.add(address(cell, Port.LEFT));
+                work.add(address(cell, Port.PRINCIPAL)); // The function is decoded first
+            } else { // Variable
+                results.push(Term.var(heap.nameOf(heap.name(cell))));
+            }
+        }
+        return results.pop();
+    }
+
+    // Replaces the Terms on top of results with the Term of the cell reached at linked
+    private void build(int linked, NameScope names, Map<Integer, Term> shared, Deque<Term> results) {
+        int cell = cellOf(linked);
+        int symbol = heap.symbol(cell);
+        if (symbol == DEL || symbol == DEL_PRIME) { // The Term stays on results for this use, and is kept for the other
+            shared.put(cell, results.peek());
+        } else if (portOf(linked) == Port.PRINCIPAL) {
+            String name = heap.nameOf(heap.name(cell));
+            results.push(new Term(Term.LAM, Term.var(name), results.pop(), null));
+            names.remove(name);
+        } else {
+            Term argument = results.pop();
+            results.push(new Term(Term.APP, results.pop(), argument, null));
+        }
+    }
+
+    public static void test(Term term) {
+        System.out.println(term.prettyPrint());
+        HeapLambdaNet net = new HeapLambdaNet(term);
+        long start = System.currentTimeMillis();
+        net.reduce();
+        long stop = System.currentTimeMillis();
+        System.out.println(stop-start);
+        System.out.println(net.heap.size() + " cells in " + net.heap.bytes() + " bytes");
+        System.out.println(net.toTerm().prettyPrint());
+        System.out.println();
+    }
+
+    public static void main(String[] args) {
+        test(new Term("(L x . x x) (L f . L a . f (f a))"));
+        test(new Term("(L f . L a . f (f (f a))) (L g . L b . g (g b))"));
+        test(new Term("(L f . L a . f (f (f (f (f a))))) (L g . L b . g (g (g (g (g b))))))"));
+    }
+}
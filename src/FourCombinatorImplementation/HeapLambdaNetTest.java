@@ -0,0 +1,114 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// The same reductions as FunctionalTest, run on a NetHeap
+public class HeapLambdaNetTest {
+    private static void assertReduces(String expected, String term) {
+        assertEquals(new Term(expected), reduceTerm(term));
+    }
+
+    private static Term reduceTerm(String term) {
+        HeapLambdaNet net = new HeapLambdaNet(new Term(term));
+        net.reduce();
+        return net.toTerm();
+    }
+
+    @Test
+    public void nothingTest() {
+        assertReduces("L x . x", "L x . x");
+        assertReduces("x", "x");
+    }
+
+    @Test
+    public void sanityBetaTest() {
+        assertReduces("L x . x", "(L x . x) (L x . x)");
+        assertReduces("y", "(L x . x) y");
+        assertReduces("L x . x", "L x . (L y . y) x");
+        assertReduces("L z . L x . z", "L z . L x . (L y . y) z");
+        assertReduces("L y . L x . y", "L y . (L a . L b . a b) (L x . x) (L x . y)");
+        assertReduces("L x . x", "(L a . L b . a b) (L x . x)");
+        assertReduces("L a . L b . a b", "(L f . L a . f (f a)) (L g . L b . g b)");
+    }
+
+    @Test
+    public void duplicatingDuplicationTest() {
+        assertReduces("L a . a (L f . L a' . a' f f) (L f . L a' . a' f f)",
+                "(L x . x x) (L f . L a . a f f");
+        assertReduces("L a . L a' . a (a (a (a a')))", "(L x . x x) (L f . L a . f (f a))");
+        assertReduces("L x . (x x) (x x)", "L x . (L y . y y) (x x)");
+        assertReduces("L a . L b . a (a (a (a b)))", "(L f . L a . f (f a)) (L g . L b . g (g b))");
+    }
+
+    @Test
+    public void duplicatingLazyDel() {
+        assertReduces("L x . x (L y . (x x) (x x)) (L y . (x x) (x x))", "L x . (L y . x y y) (L y . (L z . z z) (x x))");
+    }
+
+    @Test
+    public void copiedArgumentTest() {
+        // The copies are read in the arguments of w, so the DEL_PRIMEs there have to be forced too
+        assertReduces("w (L b . w b) (L b . w b)", "(L y . w y y) (L b . w b)");
+        assertReduces("w (L d . z (L x . d)) (L d . z (L x . d))", "(L c . w c c) (L d . z (L x . d))");
+    }
+
+    @Test
+    public void deletionTest() {
+        assertReduces("y", "(L x . y) z");
+        assertReduces("y", "(L x . y) ((L x . x x) (L x . x))");
+        assertReduces("y", "(L x . y) ((L x . x x) (L x . x x))");
+        assertReduces("L b . b", "((L a . L b . ((L c . b) (a a b))) (L a . (a a)))");
+        assertReduces("y", "(L x . x x) (L x . y)");
+    }
+
+    @Test
+    public void erasedDivergingArgumentTest() {
+        // The erased arguments never stop growing, so their cuts have to be dropped as soon as they are erased
+        assertReduces("y", "(L x . y) ((L x . x x x) (L x . x x x))");
+        assertReduces("L z . z", "L z . (L x . z) ((L x . x x x) (L x . x x x))");
+        assertReduces("L z . z z", "L z . (L x . z z) (z ((L x . x x x) (L x . x x x)))");
+    }
+
+    @Test
+    public void expTest() {
+        for (int i = 1; i <= 4; i++) {
+            for (int j = 1; j <= 5; j++) {
+                assertReduces(TestUtil.churchNumString((int)Math.pow(i, j), "f", "a"), TestUtil.expString(i, j));
+            }
+        }
+    }
+
+    @Test
+    public void deepReductionTest() throws InterruptedException {
+        HeapLambdaNet net = new HeapLambdaNet(new Term(TestUtil.expString(2, 10)));
+        TestUtil.runWithStack(1 << 17, net::reduce);
+        assertEquals(new Term(TestUtil.churchNumString(1024, "f", "a")), net.toTerm());
+    }
+
+    @Test
+    public void deepReadbackTest() {
+        String num = TestUtil.churchNumString(100000, "f", "a");
+        assertReduces(num, "(L x . x) (" + num + ")");
+    }
+
+    @Test
+    public void captureTest() {
+        assertEquals("L x' . x", reduceTerm("(L y . L x . y) x").prettyPrint());
+        assertEquals("L x' . L x'' . x x'", reduceTerm("(L y . L x . L x' . y x) x").prettyPrint());
+    }
+
+    @Test
+    public void mappedTest() throws IOException {
+        String term = TestUtil.expString(3, 3);
+        try (NetHeap heap = NetHeap.mapped(Files.createTempFile("net", ".heap"))) {
+            HeapLambdaNet net = new HeapLambdaNet(new Term(term), heap);
+            net.reduce();
+            assertEquals(reduceTerm(term), net.toTerm());
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package FourCombinatorImplementation;
+
+// A growable FIFO ring buffer of ints, used in place of a Queue<Integer> to avoid boxing
+// pollLast also lets it be used as a stack
+public class IntQueue {
+    private int[] elements;
+    private int head = 0;
+    private int size = 0;
+
+    public IntQueue() {
+        this(16);
+    }
+
+    public IntQueue(int capacity) {
+        elements = new int[Math.max(capacity, 1)];
+    }
+
+    void add(int element) {
+        if (size == elements.length) {
+            // Unroll the ring into a buffer twice the size
+            int[] grown = new int[2 * elements.length];
+            int tail = elements.length - head;
+            System.arraycopy(elements, head, grown, 0, tail);
+            System.arraycopy(elements, 0, grown, tail, head);
+            elements = grown;
+            head = 0;
+        }
+        elements[(head + size) % elements.length] = element;
+        size++;
+    }
+
+    // Assumes isEmpty() == false
+    int poll() {
+        int element = elements[head];
+        head = (head + 1) % elements.length;
+        size--;
+        return element;
+    }
+
+    // Removes the element added last. Assumes isEmpty() == false
+    int pollLast() {
+        size--;
+        return elements[(head + size) % elements.length];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        head = 0;
+        size = 0;
+    }
+
+    int[] toArray() {
+        int[] result = new int[size];
+        for (int i = 0; i < size; i++) {
+            result[i] = elements[(head + i) % elements.length];
+        }
+        return result;
+    }
+}
@@ -4,15 +4,11 @@ import java.util.*;
 
 public class InteractionNet {
     Port handle;
-    static Queue<Wire> cuts = new LinkedList<>();
-    static Set<Cell> deltaPrimes = new HashSet<>();
+    final ReductionContext context;
+    boolean reduced = false; // Set once reduce() has finished, see reduceHead
 
-    private static int num = 0;
-
-    public InteractionNet() {}
-
-    private InteractionNet(Port handle) {
-        this.handle = handle;
+    public InteractionNet(ReductionContext context) {
+        this.context = context;
     }
 
     void linkToNet(Port port, InteractionNet net) {
@@ -20,28 +16,209 @@ public class InteractionNet {
     }
 
     void normalize() {
+        if (context.threads > 1) {
+            normalizeConcurrent();
+            return;
+        }
+
+        CutScheduler cuts = context.cuts;
+        context.cells.epoch++;
         while (!cuts.isEmpty()) {
-            Set<Wire> possibleCuts = cuts.poll().reduce();
+            if (--context.untilCheck <= 0)
+                context.checkBudget();
+            Wire cut = cuts.poll();
+            if (cut.isStale())
+                continue;
+            context.cells.retire(cut); // Polled, so nothing holds it once its Cells are consumed
+            interact(cut);
+        }
+    }
 
-            // Bypass extra Ports and remove duplicate Wires
-            possibleCuts = Wire.fixExtra(possibleCuts);
+    private void interact(Wire cut) {
+        CellPool cells = context.cells;
+        ReductionMetrics metrics = context.metrics;
+        WireBuffer reduced = context.reduced;
+        WireBuffer possibleCuts = context.possibleCuts;
+        cut.reduce(context, cells, reduced);
+        cells.retire(cut.port1.cell);
+        cells.retire(cut.port2.cell);
+        metrics.interaction(cut.port1.cell.symbol, cut.port2.cell.symbol);
 
-            for (Wire wire : possibleCuts) {
-                if (wire.isCut()) {
-                    cuts.add(wire);
-                }
+        // Bypass extra Ports and remove duplicate Wires
+        Wire.fixExtra(reduced, possibleCuts, cells);
+        reduced.clear();
+
+        queueOrErase(possibleCuts, cut.depth + 1);
+        possibleCuts.clear();
+        metrics.observe(context.cuts.size(), context.countDeltaPrimes());
+
+        // Nothing goes through the Ports of the consumed Cells anymore, so the next cut can reuse them
+        cells.recycle();
+    }
+
+    /*
+     * Reduces every queued cut as one batch on the work-stealing pool, then bypasses extra Ports and queues
+     * the new cuts for the next batch.
+     *
+     * A Cell is in at most one cut and Wire.reduce only writes to the Ports of its own two Cells, so the cuts of
+     * a batch never touch the same Port and need no locking or CAS. Only fixExtra follows Wires into neighbouring
+     * Cells, and that runs once the whole batch has joined.
+     */
+    private void normalizeConcurrent() {
+        CutScheduler cuts = context.cuts;
+        CellPool cells = context.cells;
+        ReductionMetrics metrics = context.metrics;
+        WireBuffer batch = context.batch;
+        WireBuffer reduced = context.reduced;
+        WireBuffer possibleCuts = context.possibleCuts;
+        cells.epoch++;
+        while (!cuts.isEmpty()) {
+            context.untilCheck -= cuts.size();
+            if (context.untilCheck <= 0)
+                context.checkBudget();
+
+            // A Wire is only ever queued once, so the batch needs no duplicates removed
+            while (!cuts.isEmpty()) {
+                Wire cut = cuts.poll();
+                if (!cut.isStale())
+                    batch.add(cut);
+            }
+
+            // Workers make their Cells with a pool of their own, see CutReduceTask
+            if (batch.size() <= CutReduceTask.THRESHOLD)
+                CutReduceTask.reduceAll(batch, 0, batch.size(), context, cells, reduced);
+            else
+                reduced.addAll(context.pool().invoke(new CutReduceTask(batch, 0, batch.size(), context)));
+            // The consumed Cells keep their symbols, so the rules are counted here rather than by the workers
+            for (int i = 0; i < batch.size(); i++) {
+                Wire cut = batch.get(i);
+                cells.retire(cut.port1.cell);
+                cells.retire(cut.port2.cell);
+                metrics.interaction(cut.port1.cell.symbol, cut.port2.cell.symbol);
+                cells.retire(cut);
+            }
+            batch.clear();
+
+            Wire.fixExtra(reduced, possibleCuts, cells);
+            reduced.clear();
+
+            // Erasing crosses into Cells of other cuts, so it also waits for the whole batch
+            // Every queued cut is in the next batch, whatever its depth
+            queueOrErase(possibleCuts, 0);
+            possibleCuts.clear();
+            metrics.observe(cuts.size(), context.countDeltaPrimes());
+
+            cells.recycle();
+        }
+    }
+
+    // Queues the Wires that are cuts, at the depth of the cut that made them, except that an Epsilon erases
+    // everything it can reach right away
+    private void queueOrErase(WireBuffer possibleCuts, int depth) {
+        for (int i = 0; i < possibleCuts.size(); i++) {
+            Wire wire = possibleCuts.get(i);
+            wire.depth = depth;
+            if (wire.getEpsilon() != null) {
+                erase(wire);
+            } else if (wire.isCut()) {
+                context.cuts.add(wire);
             }
+        }
+    }
+
+    /*
+     * Erases, in one pass, the subnet that the Epsilon at one end of wire disconnects. An Epsilon interacts as usual
+     * with the Cell it meets at a principal Port, but it also goes on past the output of an application, whose
+     * result is no longer needed, and past a Delta (but not a DEL_PRIME, which reduce still has to force), which is
+     * replaced by a Wire when one of its copies is erased. That holds as well when the Delta is about to copy a Gamma,
+     * since the copy that would be made for the Epsilon is erased as soon as it is made. Otherwise the Delta goes on
+     * copying an argument that is no longer needed, and in an order other than fifo() that can go on forever.
+     * This way an erased argument never leaves cuts behind that cannot be reached from handle.
+     *
+     * Every Port of an erased Cell is unlinked, so a cut of it that is still queued is skipped as stale.
+     */
+    private void erase(Wire wire) {
+        Deque<Wire> pending = context.erasing;
+        int depth = wire.depth;
+        pending.push(wire);
+        while (!pending.isEmpty()) {
+            Wire next = pending.pop();
+            Port eps = next.getEpsilon();
+            if (eps == null || eps.link != next)
+                continue;
 
-            // This is a short-term hack to be replaced
-            num++;
-            if (num >= 100000) { // Every 10000 reduction steps, do garbage collection to remove deleted parts
-                num = 0;
-                purge();
+            Port target = next.getOther(eps);
+            Cell cell = target.cell;
+            if (cell == null || target.link != next) // A free variable or handle
+                continue;
+
+            if (target.port == Port.PRINCIPAL) {
+                eps.link = null;
+                target.link = null;
+                context.cells.retire(eps.cell);
+                context.cells.retire(cell);
+                context.metrics.erasure();
+                context.metrics.cells(-2);
+                if (cell.symbol == Cell.Symbol.EPS)
+                    continue;
+                context.removeDeltaPrime(cell);
+                pending.push(moveEpsilon(cell.left));
+                pending.push(moveEpsilon(cell.right));
+            } else if (cell.symbol == Cell.Symbol.DEL) {
+                Port other = (target == cell.left)? cell.right : cell.left;
+                Port up = cell.principal.getLinkedPort();
+                Port down = other.getLinkedPort();
+                if (up.cell == null || down.cell == null)
+                    continue; // The Delta is linked to a free variable
+                if (up.port == Port.PRINCIPAL && up.cell.symbol != Cell.Symbol.GAM)
+                    continue; // The Delta is about to meet another, which pairs up their copies rather than copying
+
+                eps.link = null;
+                target.link = null;
+                cell.principal.link = null;
+                other.link = null;
+                context.cells.retire(eps.cell);
+                context.cells.retire(cell);
+                context.metrics.erasure();
+                context.metrics.cells(-2);
+
+                Wire bypass = Wire.link(up, down);
+                bypass.depth = depth;
+                if (bypass.getEpsilon() != null)
+                    pending.push(bypass);
+                else if (bypass.isCut())
+                    context.cuts.add(bypass);
+            } else if (cell.isApplication() && target == cell.right) {
+                eps.link = null;
+                target.link = null;
+                context.cells.retire(eps.cell);
+                context.cells.retire(cell);
+                context.metrics.erasure();
+                context.metrics.cells(-2);
+                pending.push(moveEpsilon(cell.principal));
+                pending.push(moveEpsilon(cell.left));
             }
         }
     }
 
-    // TODO: On deletion, traverse the tree to be deleted and remove from cuts and deltaPrimes
+    // Links a new Epsilon to what port is linked to, and unlinks port
+    private Wire moveEpsilon(Port port) {
+        Port target = port.getLinkedPort();
+        Wire wire = Wire.link(context.cells.make(Cell.Symbol.EPS).principal, target);
+        context.metrics.cells(1);
+        if (target.cell == null && target.name != null) // Free variables are shared by many Wires and keep no link
+            target.link = null;
+        port.link = null;
+        return wire;
+    }
+
+    // How far the step on top of context.stack has got, see step()
+    private final static int START = 0;
+    private final static int FUNCTION_REDUCED = 1; // The top Cell is an application and its function is reduced
+    private final static int SHARED_REDUCED = 2; // The top Cell is a DEL_PRIME and what it shares is reduced
+    private final static int COPY_REDUCED = 3; // The top Cell was duplicated and the function of one copy is reduced
+    private final static int HEAD = 4; // Added to the state of a step that leaves the arguments alone, see reduce()
+
     /*
      * To reduce:
      * Reduce each cut and add to the Queue newly created cuts until the queue is empty (normalize)
@@ -49,131 +226,296 @@ public class InteractionNet {
      * Repeat until there are no cuts and no DEL_PRIMEs (except for those pointing at free ports)
      *
      * Actually some more complicated stuff happening now, will update my write-up soon
+     *
+     * The walk goes where toTerm() reads: bodies of Lambdas, functions and then arguments of applications, and past
+     * Deltas from their auxiliary Ports. A Delta met at its principal Port, or an application met anywhere but its
+     * result, is where a variable that a DEL_PRIME copies is used, and is left for the copy to reach.
+     *
+     * What a DEL_PRIME shares only needs its head reduced before the DEL_PRIME is forced, since the arguments are
+     * walked afterwards in each copy. Walking them before as well walks a chain of applications once per Cell of it.
+     *
+     * Each step below a handle used to be a recursive reduce() on a new InteractionNet. The steps are now frames
+     * of context.stack, so deep nets do not overflow the thread stack, and a stopped reduction can be resumed.
      */
     void reduce() {
-        normalize();
-        if (deltaPrimes.isEmpty())
-            return;
+        ReduceStack stack = context.stack;
+        if (stack.isEmpty())
+            stack.push(handle);
+        try {
+            while (!stack.isEmpty()) {
+                step(stack);
+            }
+            reduced = true;
+        } catch (ReductionBudget.Exceeded e) {
+            throw e; // Stopped in normalize(), and the step starts over when resumed
+        } catch (RuntimeException | Error e) {
+            stack.clear();
+            throw e;
+        }
+    }
+
+    private void step(ReduceStack stack) {
+        Port handle = stack.handle();
+        Cell top = stack.top();
+        int head = stack.state() & HEAD;
+        switch (stack.state() & ~HEAD) {
+            case START:
+                normalize();
+                if (!context.hasDeltaPrimes()) {
+                    stack.pop();
+                    break;
+                }
+
+                top = handle.getLinkedPort().cell;
+                if (top == null) {
+                    stack.pop();
+                } else if (top.symbol == Cell.Symbol.GAM && handle.getLinkedPort().port == Port.PRINCIPAL) {
+                    stack.replace(top.right, head);
+                } else if (top.isApplication() && handle.getLinkedPort().port == Port.RIGHT) {
+                    stack.set(FUNCTION_REDUCED + head, top);
+                    stack.push(top.principal, head);
+                } else if (handle.getLinkedPort().port == Port.PRINCIPAL) {
+                    stack.pop(); // A Delta that copies a variable, seen from where the variable is used
+                } else if (top.symbol == Cell.Symbol.DEL) { // This is doing too much work? optimize here
+                    stack.replace(top.principal, head);
+                } else if (top.symbol == Cell.Symbol.DEL_PRIME) { // This is doing too much work? optimize here
+                    stack.set(SHARED_REDUCED + head, top);
+                    stack.push(top.principal, HEAD);
+                } else {
+                    stack.pop();
+                }
+                break;
+            case FUNCTION_REDUCED: // The argument can hold DEL_PRIMEs too, and is only reached from here
+                if (head == HEAD)
+                    stack.pop();
+                else
+                    stack.replace(top.left, START);
+                break;
+            case SHARED_REDUCED:
+                if (top.principal.cell != top || top.symbol != Cell.Symbol.DEL_PRIME) { // Consumed or changed to a DEL
+                    if (head == HEAD)
+                        stack.pop();
+                    else
+                        stack.set(START, null); // What is there now is walked from the start
+                    break;
+                }
+                Cell next = top.principal.getLinkedPort().cell;
+                if (next == null || next.isLambda()) {
+                    removePrime(top); // This could change cells above it
+                    if (head == HEAD)
+                        stack.pop();
+                    else
+                        stack.replace(top.principal, START); // The rest of what it shares, now as a DEL
+                } else if (next.isApplication() && top.principal.getLinkedPort().port == Port.RIGHT) {
+                    forceDup(top);
+                    stack.set(COPY_REDUCED + head, top);
+                    stack.push(handle.getLinkedPort().cell.principal, head);
+                } else if (next.symbol == Cell.Symbol.DEL) {
+                    changeSymbol(next, Cell.Symbol.DEL_PRIME);
+                    stack.set(START + head, null);
+                } else {
+                    stack.pop();
+                }
+                break;
+            case COPY_REDUCED:
+                if (head == HEAD)
+                    stack.pop();
+                else
+                    stack.replace(handle.getLinkedPort().cell.left, START);
+                break;
+        }
+    }
 
-        Cell top = handle.getLinkedPort().cell;
-        if (top == null)
+    /*
+     * Reduces only as far as the head normal form of the subnet linked to root: the cuts on the way from root to its
+     * head, through the bodies of Lambdas, the functions of applications and what Deltas share. The arguments of the
+     * head are left as they are, with their cuts still queued, and each can be reduced the same way when it is needed
+     * (see HeadForm), or never. The Ports walked from are kept on path, and once a cut is reduced the walk goes on
+     * from the Port above it, which the interaction has relinked.
+     *
+     * Interactions can be reduced in any order, but forcing DEL_PRIMEs cannot: forceDup and removePrime are only
+     * right once every cut is reduced. So if the walk meets a DEL_PRIME, the whole net is reduced by reduce() instead,
+     * after which there is nothing left for this to do.
+     *
+     * A cut is reduced here when the walk reaches it, rather than when it is polled from context.cuts, so it is
+     * unlinked from the Cells it consumed to make it stale in the queue. Since the walk holds on to Ports from one cut
+     * to the next, each cut has an epoch of its own and no Cell is recycled.
+     */
+    void reduceHead(Port root) {
+        reduceHead(root, false);
+    }
+
+    /*
+     * Reduces only as far as the weak head normal form, where the net is a Lambda or a variable applied to arguments
+     * that are left as they are: the same walk as reduceHead, but it stops at the first Lambda instead of going into
+     * its body. Reducing a Lambda that may later be erased or passed along then costs nothing for its body.
+     *
+     * The cuts that are not reduced stay queued, so reduce() can still finish the net at any time. But a Lambda that
+     * a Delta copies on the way is left half way through being duplicated, with DEL_PRIMEs that toTerm() cannot read
+     * past, and forcing them needs every cut reduced. So once the walk has made one, the whole net is reduced as by
+     * reduce(), as reduceHead does when it meets one.
+     */
+    public void reduceWeakHead() {
+        if (!context.stack.isEmpty()) { // A reduceSlice was stopped while forcing DEL_PRIMEs, see reduceHead
+            reduce();
             return;
+        }
+        reduceHead(handle, true);
+        if (!reduced && context.hasDeltaPrimes())
+            reduce();
+    }
 
-        if (top.symbol == Cell.Symbol.GAM && handle.getLinkedPort().port == Port.PRINCIPAL) {
-            new InteractionNet(top.right).reduce();
-        } else if (top.isApplication()) { // should only come from right??? I think
-            // This is where multi-threading can happen for fixing?
-            new InteractionNet(top.principal).reduce();
-            if (handle.port == Port.PRINCIPAL && handle.cell.symbol == Cell.Symbol.DEL_PRIME &&
-                    handle.getLinkedPort().port == Port.LEFT)
-                new InteractionNet(top.left).reduce();
-        } else if (top.symbol == Cell.Symbol.DEL) { // This is doing too much work? optimize here
-            new InteractionNet(top.principal).reduce();
-        } else if (top.symbol == Cell.Symbol.DEL_PRIME) { // This is doing too much work? optimize here
-            new InteractionNet(top.principal).reduce();
-            if (top.principal.cell != top) { // This means the cell has been changed to a DEL
-                return;
-            }
-            Cell next = top.principal.getLinkedPort().cell;
-            if (next == null || next.isLambda()) {
-                removePrime(top); // This could change cells above it
-            } else if (next.isApplication() && top.principal.getLinkedPort().port == Port.RIGHT) {
-                forceDup(top);
-                new InteractionNet(handle.getLinkedPort().cell.principal).reduce();
-                new InteractionNet(handle.getLinkedPort().cell.left).reduce();
-            } else if (next.symbol == Cell.Symbol.DEL) {
-                changeSymbol(next, Cell.Symbol.DEL_PRIME);
+    private void reduceHead(Port root, boolean weak) {
+        if (reduced)
+            return;
+        Deque<Port> path = new ArrayDeque<>();
+        Port port = root;
+        while (true) {
+            Port linked = port.getLinkedPort();
+            Cell cell = linked.cell;
+            if (cell == null) // A free variable
+                break;
+            if (port.port == Port.PRINCIPAL && linked.port == Port.PRINCIPAL) {
+                interactHead(port.link);
+                port = path.pop();
+            } else if (cell.symbol == Cell.Symbol.DEL_PRIME) {
                 reduce();
+                break;
+            } else if (cell.symbol == Cell.Symbol.GAM && linked.port == Port.PRINCIPAL) { // A Lambda
+                if (weak)
+                    break;
+                path.push(port);
+                port = cell.right;
+            } else if ((cell.symbol == Cell.Symbol.GAM && linked.port == Port.RIGHT) ||
+                    (cell.symbol == Cell.Symbol.DEL && linked.port != Port.PRINCIPAL)) { // An application or Delta
+                path.push(port);
+                port = cell.principal;
+            } else { // A bound variable
+                break;
             }
         }
     }
 
+    private void interactHead(Wire cut) {
+        context.cells.epoch++;
+        interact(cut);
+        cut.port1.link = null;
+        cut.port2.link = null;
+    }
+
+    /*
+     * Reduces with at most n more interactions, or a few more as in reduce(ReductionBudget), and returns null if
+     * the net is now fully reduced. Otherwise it returns Limit.INTERACTIONS, and the cuts, the DEL_PRIMEs and the
+     * unfinished steps of reduce() stay in the context for the next call to reduceSlice() or reduce() to carry on
+     * from, so that one thread can take turns between many reductions. A context reduces one net at a time.
+     *
+     * If the context is cancelled, the reduction is dropped as in reduce(ReductionBudget) and this returns
+     * Limit.CANCELLED.
+     */
+    public ReductionBudget.Limit reduceSlice(long n) {
+        long interactions = context.metrics.getInteractions();
+        context.startBudget(ReductionBudget.UNLIMITED.withInteractions(
+                (n >= Long.MAX_VALUE - interactions)? Long.MAX_VALUE : interactions + n));
+        try {
+            reduce();
+            return null;
+        } catch (ReductionBudget.Exceeded e) {
+            if (e.limit != ReductionBudget.Limit.INTERACTIONS)
+                context.abandon();
+            return e.limit;
+        } finally {
+            context.endBudget();
+        }
+    }
+
+    /*
+     * Reduces like reduce(), but stops once any limit of budget is reached or the context is cancelled, and returns the
+     * limit that stopped it, or null if the net was fully reduced. The limits are checked at least every 1024 cuts
+     * (and between batches when normalize() runs on many threads), so a reduction can go a little past them.
+     *
+     * A stopped net is left half reduced and should be dropped, along with every other net of its context.
+     * The context is cleared so that new nets can be encoded with it.
+     */
+    public ReductionBudget.Limit reduce(ReductionBudget budget) {
+        context.startBudget(budget);
+        try {
+            reduce();
+            return null;
+        } catch (ReductionBudget.Exceeded e) {
+            context.abandon();
+            return e.limit;
+        } finally {
+            context.endBudget();
+        }
+    }
+
     private void forceDup(Cell del) {
         Cell gam = del.principal.getLinkedPort().cell;
 
-        Cell gamL = Cell.makeGamma();
-        Cell gamR = Cell.makeGamma();
-        Cell delL = Cell.makeDeltaPrime();
-        Cell delR = Cell.makeDeltaPrime();
+        // These are made after normalize() has returned, so the pool never recycles them (see CellPool)
+        Cell gamL = context.cells.make(Cell.Symbol.GAM);
+        Cell gamR = context.cells.make(Cell.Symbol.GAM);
+        Cell delL = context.cells.make(Cell.Symbol.DEL_PRIME);
+        Cell delR = context.cells.make(Cell.Symbol.DEL_PRIME);
+
+        Wire shared = del.principal.link;
+        Wire left = del.left.link;
+        Wire right = del.right.link;
+
+        CellPool cells = context.cells;
+        cells.link(gamL.right, del.right.getLinkedPort());
+        cells.link(gamL.left, delR.right);
+        cells.link(gamL.principal, delL.right);
+        cells.link(gamR.right, del.left.getLinkedPort());
+        cells.link(gamR.left, delR.left);
+        cells.link(gamR.principal, delL.left);
+        cells.link(delL.principal, gam.principal.getLinkedPort());
+        cells.link(delR.principal, gam.left.getLinkedPort());
 
-        Wire.link(gamL.right, del.right.getLinkedPort());
-        Wire.link(gamL.left, delR.right);
-        Wire.link(gamL.principal, delL.right);
-        Wire.link(gamR.right, del.left.getLinkedPort());
-        Wire.link(gamR.left, delR.left);
-        Wire.link(gamR.principal, delL.left);
-        Wire.link(delL.principal, gam.principal.getLinkedPort());
-        Wire.link(delR.principal, gam.left.getLinkedPort());
+        // The cuts are all reduced, so the Wires of del are in no queue and nothing but del holds them. The Wires
+        // of gam are left, since a HeadForm can still read an argument from gam.left
+        cells.release(shared);
+        cells.release(left);
+        cells.release(right);
 
-        deltaPrimes.remove(del);
-        deltaPrimes.add(delL);
-        deltaPrimes.add(delR);
+        context.removeDeltaPrime(del);
+        context.addDeltaPrime(delL);
+        context.addDeltaPrime(delR);
+        context.metrics.forceDup(); // del and gam are replaced by the four new Cells
 
         if (delL.principal.link.isCut())
-            cuts.add(delL.principal.link);
+            context.cuts.add(delL.principal.link);
         if (delR.principal.link.isCut())
-            cuts.add(delR.principal.link);
+            context.cuts.add(delR.principal.link);
     }
 
     private void changeSymbol(Cell cell, Cell.Symbol symbol) {
-        Cell newCell = Cell.makeCell(symbol);
-
-        newCell.principal = cell.principal;
-        cell.principal.cell = newCell;
-
-        newCell.left = cell.left;
-        cell.left.cell = newCell;
-
-        newCell.right = cell.right;
-        cell.right.cell = newCell;
-
         if (cell.symbol == Cell.Symbol.DEL_PRIME)
-            deltaPrimes.remove(cell);
+            context.removeDeltaPrime(cell);
+        cell.symbol = symbol;
         if (symbol == Cell.Symbol.DEL_PRIME)
-            deltaPrimes.add(newCell);
+            context.addDeltaPrime(cell);
     }
 
+    /*
+     * Turns delPrime and every DEL_PRIME reachable from it through auxiliary Ports back into DELs, depth first and
+     * left before right. The Ports still to look past are kept on a stack rather than the Cells linked to them, since
+     * a Cell is only known to be a DEL_PRIME once it is reached.
+     */
     private void removePrime(Cell delPrime) {
-        changeSymbol(delPrime, Cell.Symbol.DEL);
-
-        if (delPrime.left.getLinkedPort().cell != null &&
-                delPrime.left.getLinkedPort().cell.symbol == Cell.Symbol.DEL_PRIME)
-            removePrime(delPrime.left.getLinkedPort().cell);
-        if (delPrime.right.getLinkedPort().cell != null &&
-                delPrime.right.getLinkedPort().cell.symbol == Cell.Symbol.DEL_PRIME)
-            removePrime(delPrime.right.getLinkedPort().cell);
-    }
-
-    // Do garbage collection: remove pointers to all that cannot be reached from handle
-    private void purge() {
-        if (handle.getLinkedPort().cell == null) { // If handle points to a free port, clear everything
-            cuts.clear();
-            deltaPrimes.clear();
-            return;
+        Deque<Port> pending = context.unpriming;
+        unprime(delPrime, pending);
+        while (!pending.isEmpty()) {
+            Cell cell = pending.pop().getLinkedPort().cell;
+            if (cell != null && cell.symbol == Cell.Symbol.DEL_PRIME)
+                unprime(cell, pending);
         }
-
-        // Traverse the net and mark each visited Cell
-        Set<Cell> visited = new HashSet<>();
-        visit(handle.getLinkedPort().cell, visited);
-
-        // Remove from cuts and deltaPrimes the Wires and Cells that were not marked
-        cuts.removeIf(wire -> !(visited.contains(wire.port1.cell) || visited.contains(wire.port2.cell)));
-        deltaPrimes.removeIf(cell -> !visited.contains(cell));
     }
 
-    // Traverse the net from cell and add to visited
-    private void visit(Cell cell, Set<Cell> visited) {
-        if (cell == null || visited.contains(cell))
-            return;
-
-        visited.add(cell);
-
-        visit(cell.principal.getLinkedPort().cell, visited);
-        if (cell.symbol != Cell.Symbol.DEL) { // Don't visit left and right of a Delta
-            if (cell.left != null)
-                visit(cell.left.getLinkedPort().cell, visited);
-            if (cell.right != null)
-                visit(cell.right.getLinkedPort().cell, visited);
-        }
+    private void unprime(Cell delPrime, Deque<Port> pending) {
+        changeSymbol(delPrime, Cell.Symbol.DEL);
+        context.metrics.removePrime();
+        pending.push(delPrime.right);
+        pending.push(delPrime.left);
     }
 }
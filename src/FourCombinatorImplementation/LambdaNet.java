@@ -1,161 +1,451 @@
 package FourCombinatorImplementation;
 
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
-import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Set;
 
 public class LambdaNet extends InteractionNet {
-    // A map from free variables to the ports representing them in the net
-    static Map<String, Port> free = new HashMap<>();
+    // For NetSnapshot, which sets handle
+    LambdaNet(ReductionContext context) {
+        super(context);
+    }
 
     // Encodes Terms into InteractionNets
     public LambdaNet(Term term) {
-        this(term, new HashMap<>());
+        this(term, new ReductionContext());
+    }
+
+    // Nets encoded with the same context share free variables and are reduced together
+    public LambdaNet(Term term, ReductionContext context) {
+        this(term, new HashMap<>(), context);
     }
 
-    public LambdaNet(Term term, Map<String, Port> bound) {
+    public LambdaNet(Term term, Map<String, Port> bound, ReductionContext context) {
+        super(context);
         handle = new Port();
+        link(encode(term, bound));
+    }
+
+    public LambdaNet(DeBruijnTerm term) {
+        this(term, new ReductionContext());
+    }
+
+    public LambdaNet(DeBruijnTerm term, ReductionContext context) {
+        super(context);
+        handle = new Port();
+        link(encode(term));
+    }
 
-        // The queue of InteractionNet.cuts is populated in the Term.APP case
-        switch (term.type) {
-            case Term.VAR: // Variables are encoded as a wire to the place it is bound or to a free port
-                if (bound.containsKey(term.name)) {
-                    // If the variable is bound, link to where it is bound after adding a delta
-                    // This results in an extra delta that is dealt with in the Term.LAM case
-                    Cell delta = Cell.makeDelta();
-                    Wire.link(delta.principal, bound.get(term.name));
-                    bound.put(term.name, delta.right);
-                    Wire.link(handle, delta.left);
-                } else if (free.containsKey(term.name)) {
-                    Wire.link(handle, free.get(term.name));
-                    free.get(term.name).link = null;
+    private void link(Port root) {
+        Wire.link(handle, root);
+        if (root.cell == null) // A free variable, whose Port is left unlinked as in encodeFree
+            root.link = null;
+    }
+
+    /*
+     * Returns the Port that the parent of term should be linked to. Instead of recursing, the Terms still to encode
+     * are kept on a stack, and below them the Cells of the Lambdas and applications whose subterms they are, which are
+     * linked to the Ports of their subterms once those are on roots.
+     */
+    private Port encode(Term term, Map<String, Port> bound) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Port> roots = new ArrayDeque<>();
+        List<Port> shadowed = new ArrayList<>(); // What the name of each open Lambda was bound to outside of it, or null
+        int depth = 0; // The Cells on work, which are the Lambdas and applications around the next Term
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                depth--;
+                if (cell.left.name != null) { // A Lambda
+                    Wire.link(cell.right, roots.pop());
+
+                    // The name is put back in the scope it had outside the Lambda
+                    Port outer = shadowed.remove(shadowed.size() - 1);
+                    if (outer != null)
+                        bound.put(cell.left.name, outer);
+                    else
+                        bound.remove(cell.left.name);
+
+                    // This puts an Epsilon on the left if the variable is never used
+                    // Otherwise, it removes the extra Delta created by encodeVariable
+                    fixEnd(cell.left);
+                    roots.push(cell.principal);
                 } else {
-                    // If this variable is not bound and not in the free map, create a new port for this free variable
-                    Port var = new Port();
-                    var.name = term.name;
-                    Wire.link(handle, var);
-                    var.link = null;
-                    free.put(var.name, var);
+                    linkApplication(cell, roots, depth);
                 }
-                break;
-            case Term.LAM: // Lambda abstractions are encoded as Gammas where the left port is variable
-                Cell lam = Cell.makeGamma();
-                lam.left.name = term.left.name;
-                Wire.link(handle, lam.principal);
-
-                // We retain the Port to be shadowed so that it can be put back in scope on returning
-                Port shadowed = bound.getOrDefault(term.left.name, null);
+                continue;
+            }
 
-                bound.put(term.left.name, lam.left);
-                linkToNet(lam.right, new LambdaNet(term.right, bound));
+            term = (Term) next;
+            switch (term.type) {
+                case Term.VAR:
+                    roots.push(encodeVariable(term.name, bound));
+                    break;
+                case Term.LAM: // Lambda abstractions are encoded as Gammas where the left port is variable
+                    Cell lam = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    lam.left.name = term.left.name;
+                    shadowed.add(bound.get(term.left.name));
+                    bound.put(term.left.name, lam.left);
+                    work.push(lam);
+                    depth++;
+                    work.push(term.right);
+                    break;
+                case Term.APP: // Applications are encoded with Gammas with function at principal and argument at left
+                    Cell app = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    work.push(app);
+                    depth++;
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+                case Term.LET: // A let is encoded as the application of a Lambda, which shares the Term it binds
+                    work.push(term.redex());
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return roots.pop();
+    }
 
-                if (shadowed != null) {
-                    bound.put(term.left.name, shadowed);
+    /*
+     * As encode(Term, bound), but a variable is bound to the Lambda that its index counts out to, kept on binders
+     * while its body is encoded, so no name is looked up but those of free variables.
+     */
+    private Port encode(DeBruijnTerm term) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Port> roots = new ArrayDeque<>();
+        List<Port> binders = new ArrayList<>(); // Where the next use of the variable of each open Lambda is linked
+        int depth = 0;
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                depth--;
+                if (cell.left.name != null) { // A Lambda
+                    Wire.link(cell.right, roots.pop());
+                    binders.remove(binders.size() - 1);
+                    fixEnd(cell.left);
+                    roots.push(cell.principal);
+                } else {
+                    linkApplication(cell, roots, depth);
                 }
+                continue;
+            }
+
+            DeBruijnTerm subterm = (DeBruijnTerm) next;
+            switch (subterm.type) {
+                case Term.VAR:
+                    if (subterm.isFree()) {
+                        roots.push(encodeFree(subterm.name()));
+                    } else if (subterm.index < binders.size()) {
+                        int binder = binders.size() - 1 - subterm.index;
+                        Cell delta = share(binders.get(binder));
+                        binders.set(binder, delta.right);
+                        roots.push(delta.left);
+                    } else {
+                        throw new RuntimeException("Index " + subterm.index + " is not bound");
+                    }
+                    break;
+                case Term.LAM:
+                    Cell lam = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    lam.left.name = subterm.hint;
+                    binders.add(lam.left);
+                    work.push(lam);
+                    depth++;
+                    work.push(subterm.right);
+                    break;
+                case Term.APP:
+                    Cell app = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    work.push(app);
+                    depth++;
+                    work.push(subterm.right);
+                    work.push(subterm.left);
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return roots.pop();
+    }
+
+    // Links an application to the function and argument on top of roots, which it replaces with its result
+    private void linkApplication(Cell cell, Deque<Port> roots, int depth) {
+        Port argument = roots.pop();
+        Wire.link(cell.principal, roots.pop());
+        Wire.link(cell.left, argument);
+        // This is where cuts gets populated
+        if (cell.principal.link.isCut()) {
+            cell.principal.link.depth = depth;
+            context.cuts.add(cell.principal.link);
+        }
+        roots.push(cell.right);
+    }
 
-                // This method puts an Epsilon on the left if the variable is never used
-                // Otherwise, it removes the extra Delta created in the Term.VAR case
-                fixEnd(lam.left);
-                break;
-            case Term.APP: // Applications are encoded with Gammas with function at principal and argument at left
-                Cell app = Cell.makeGamma();
-                Wire.link(handle, app.right);
-                linkToNet(app.principal, new LambdaNet(term.left, bound));
-                linkToNet(app.left, new LambdaNet(term.right, bound));
-
-                // This is where cuts gets populated
-                if (app.principal.link.isCut())
-                    cuts.add(app.principal.link);
-                break;
-            default:
-                throw new RuntimeException("Illegal term type");
+    // Variables are encoded as a wire to the place it is bound or to a free port
+    private Port encodeVariable(String name, Map<String, Port> bound) {
+        if (bound.containsKey(name)) {
+            // If the variable is bound, link to where it is bound after adding a delta
+            // This results in an extra delta that is dealt with in fixEnd
+            Cell delta = share(bound.get(name));
+            bound.put(name, delta.right);
+            return delta.left;
+        }
+        return encodeFree(name);
+    }
+
+    // Returns a Delta linked at principal to end, the binder of a variable or the right of its last Delta
+    private Cell share(Port end) {
+        Cell delta = Cell.makeDelta();
+        context.metrics.cells(1);
+        Wire.link(delta.principal, end);
+        return delta;
+    }
+
+    private Port encodeFree(String name) {
+        Map<String, Port> free = context.free;
+        if (free.containsKey(name)) {
+            Port var = free.get(name);
+            var.link = null;
+            return var;
+        } else {
+            // If this variable is not bound and not in the free map, create a new port for this free variable
+            Port var = new Port();
+            var.name = name;
+            free.put(var.name, var);
+            return var;
         }
     }
 
     // To be called with a Port that binds a variable
     private void fixEnd(Port port) {
+        // Continue to the right until the extra Delta is reached
+        while (port.link != null && port.getLinkedPort().cell.right.link != null) {
+            port = port.getLinkedPort().cell.right;
+        }
+
         if (port.link == null) {
             // If unused, place Epsilon
             Cell eps = Cell.makeEpsilon();
+            context.metrics.cells(1);
             Wire.link(port, eps.principal);
-        } else if (port.getLinkedPort().cell.right.link == null) {
-            // Else if port.getLinkedPort().cell is the extra Delta, bypass it
-            Wire.link(port, port.getLinkedPort().cell.left.getLinkedPort());
         } else {
-            // Otherwise, continue to the right until the extra Delta is reached
-            fixEnd(port.getLinkedPort().cell.right);
+            // Else port.getLinkedPort().cell is the extra Delta, bypass it
+            Wire.link(port, port.getLinkedPort().cell.left.getLinkedPort());
+            context.metrics.cells(-1);
         }
     }
 
     // Decodes InteractionNets into Terms
     public Term toTerm() {
-        return toTerm(handle, new HashSet<>(free.keySet()));
+        // Free variables are found by the identity of their Ports, so a lookup does not depend on how many there are
+        Map<Port, String> free = new IdentityHashMap<>();
+        for (Map.Entry<String, Port> entry : context.free.entrySet()) {
+            free.put(entry.getValue(), entry.getKey());
+        }
+        return toTerm(handle, free, new NameScope(context.free.keySet()));
     }
 
-    // The Set names is used for renaming to avoid capturing free variables
-    private Term toTerm(Port root, Set<String> names) {
-        // If the root is linked to a free Port, return that variable
-        for (Map.Entry<String, Port> entry : free.entrySet()) {
-            if (entry.getValue() == root.getLinkedPort())
-                return Term.var(entry.getKey());
-        }
+    /*
+     * Reduces only as far as the head normal form and returns it, to be read lazily (see HeadForm). The rest of the
+     * net is reduced as the HeadForm is read, and reduce() can still finish it at any time.
+     */
+    public HeadForm toHeadForm() {
+        return HeadForm.read(this);
+    }
+
+    /*
+     * Writes the net, with the cuts and unfinished steps of its reduction, to file (see NetSnapshot). A reduction that
+     * takes a long time can call this between calls to reduceSlice(), and carry on after a restart from resume(file).
+     * This writes the whole net each time, so it costs about as much as the net is big.
+     */
+    public void snapshot(Path file) throws IOException {
+        NetSnapshot.write(this, file);
+    }
+
+    public static LambdaNet resume(Path file) throws IOException {
+        return resume(file, new ReductionContext());
+    }
 
-        // This should never happen and is only for debugging
-        if (root.getLinkedPort().cell == null) {
-            System.out.println(root.cell.symbol);
-            System.out.println(root.port);
+    // The context, which should be new, also gives the scheduler for the cuts that were queued
+    public static LambdaNet resume(Path file, ReductionContext context) throws IOException {
+        return NetSnapshot.read(file, context);
+    }
+
+    // Decodes InteractionNets into DeBruijnTerms, which need no names chosen for their Lambdas
+    public DeBruijnTerm toDeBruijnTerm() {
+        Map<Port, DeBruijnTerm> free = new IdentityHashMap<>();
+        for (Map.Entry<String, Port> entry : context.free.entrySet()) {
+            free.put(entry.getValue(), DeBruijnTerm.free(entry.getKey()));
         }
+        return toDeBruijnTerm(handle, free);
+    }
 
-        // If root is connected to a Delta, bypass that Delta (and store the work done for the other port of the Delta)
-        if (root.getLinkedPort().cell.symbol == Cell.Symbol.DEL ||
-                root.getLinkedPort().cell.symbol == Cell.Symbol.DEL_PRIME) {
-            Cell del = root.getLinkedPort().cell;
-            if (del.term == null) { // If the work has not already been done, do it
-                del.term = toTerm(del.principal, names);
-                return del.term;
-            } else { // If the other side has already done the work, use it and remove term to free memory
-                Term result = del.term;
-                del.term = null;
-                return result;
+    // Marks the place on the stack of toTerm where an application is built from the two Terms on top of results
+    private final static Object APPLY = new Object();
+
+    /*
+     * The NameScope names is used for renaming to avoid capturing free variables. Normal forms can be as deep as the
+     * term, so instead of recursing this keeps a stack of work: the Ports still to decode, and below them the Cells
+     * of the Lambdas and Deltas (or APPLY for an application) whose Terms are built once the Terms of those Ports are
+     * on results.
+     *
+     * The Term shared by a Delta is decoded once and kept in shared, and every use of it is that same Term object.
+     * The result is therefore a DAG as big as the net, even where the tree it stands for is exponentially bigger,
+     * and Term.letBind can print and compare it without expanding it.
+     */
+    private Term toTerm(Port root, Map<Port, String> free, NameScope names) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Term> results = new ArrayDeque<>();
+        Map<Cell, Term> shared = new HashMap<>();
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                Term argument = results.pop();
+                results.push(new Term(Term.APP, results.pop(), argument, null));
+                continue;
+            }
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                if (cell.symbol == Cell.Symbol.GAM) { // A Lambda whose body is on results
+                    results.push(new Term(Term.LAM, Term.var(cell.left.name), results.pop(), null));
+                    // Remove the variable bound from scope (in names)
+                    names.remove(cell.left.name);
+                } else { // A Delta, store the work done for its other uses
+                    shared.put(cell, results.peek());
+                }
+                continue;
             }
-        }
 
-        // If we have not yet returned, then root is connected to a Gamma
-
-        if (root.getLinkedPort().port == Port.PRINCIPAL) { // If root is connected at principal, this is a Lambda
-            // Rename to avoid capture if necessary
-            fixName(root.getLinkedPort().cell.left, names);
-            // Add the variable bound to scope (in names)
-            names.add(root.getLinkedPort().cell.left.name);
-
-            Term term = new Term(
-                    Term.LAM,
-                    Term.var(root.getLinkedPort().cell.left.name),
-                    toTerm(root.getLinkedPort().cell.right, names),
-                    null);
-
-            // Remove the variable bound from scope (in names)
-            names.remove(root.getLinkedPort().cell.left.name);
-
-            return term;
-        } else if (root.getLinkedPort().port == Port.RIGHT) { // If root is connected at right, this is an Application
-            return new Term(
-                    Term.APP,
-                    toTerm(root.getLinkedPort().cell.principal, names),
-                    toTerm(root.getLinkedPort().cell.left, names),
-                    null);
-        } else { // Else, root is connected at left so that this is a variable
-            return Term.var(root.getLinkedPort().name);
+            Port linked = ((Port) next).getLinkedPort();
+
+            // If the root is linked to a free Port, that is the variable
+            String name = free.get(linked);
+            if (name != null) {
+                results.push(Term.var(name));
+                continue;
+            }
+
+            // If root is connected to a Delta, bypass that Delta
+            if (linked.cell.symbol == Cell.Symbol.DEL || linked.cell.symbol == Cell.Symbol.DEL_PRIME) {
+                Cell del = linked.cell;
+                if (linked.port == Port.PRINCIPAL) // Left by a duplication that reduceWeakHead did not finish
+                    throw new RuntimeException("Delta is linked the wrong way, reduce() the net first");
+                Term term = shared.get(del);
+                if (term == null) { // If the work has not already been done, do it
+                    work.push(del);
+                    work.push(del.principal);
+                } else { // If another use has already done the work, share its Term
+                    results.push(term);
+                }
+                continue;
+            }
+
+            // If we have not yet continued, then root is connected to a Gamma
+
+            if (linked.port == Port.PRINCIPAL) { // If root is connected at principal, this is a Lambda
+                // Rename to avoid capture if necessary, and add the variable bound to scope (in names)
+                linked.cell.left.name = names.fresh(linked.cell.left.name);
+                names.add(linked.cell.left.name);
+                work.push(linked.cell);
+                work.push(linked.cell.right);
+            } else if (linked.port == Port.RIGHT) { // If root is connected at right, this is an Application
+                work.push(APPLY);
+                work.push(linked.cell.left);
+                work.push(linked.cell.principal); // The function is decoded first
+            } else { // Else, root is connected at left so that this is a variable
+                results.push(Term.var(linked.name));
+            }
         }
+        return results.pop();
     }
 
-    // Add's ' to the end of the name of the port until the name is not contained in the Set of names
-    private static void fixName(Port port, Set<String> names) {
-        if (names.contains(port.name)) {
-            port.name = port.name + "'";
-            fixName(port, names);
+    /*
+     * As toTerm, but the number of Lambdas around each one is kept in levels while its body is decoded, and a variable
+     * is the number of Lambdas between it and its binder. Along with each result goes its reach, how many Lambdas
+     * around it its variables are bound by. The Term of a Delta is only shared if its reach is 0, since the indices of
+     * variables bound outside of it depend on where each use is, and otherwise it is decoded again for every use.
+     */
+    private DeBruijnTerm toDeBruijnTerm(Port root, Map<Port, DeBruijnTerm> free) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<DeBruijnTerm> results = new ArrayDeque<>();
+        Deque<Integer> reaches = new ArrayDeque<>(); // The reach of each Term on results
+        Map<Cell, Integer> levels = new HashMap<>();
+        Map<Cell, DeBruijnTerm> shared = new HashMap<>();
+        int depth = 0;
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                DeBruijnTerm argument = results.pop();
+                results.push(DeBruijnTerm.app(results.pop(), argument));
+                reaches.push(Math.max(reaches.pop(), reaches.pop()));
+                continue;
+            }
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                if (cell.symbol == Cell.Symbol.GAM) { // A Lambda whose body is on results
+                    depth--;
+                    results.push(DeBruijnTerm.lam(cell.left.name, results.pop()));
+                    reaches.push(Math.max(reaches.pop() - 1, 0));
+                } else if (reaches.peek() == 0) {
+                    shared.put(cell, results.peek());
+                }
+                continue;
+            }
+
+            Port linked = ((Port) next).getLinkedPort();
+            DeBruijnTerm var = free.get(linked);
+            if (var != null) {
+                results.push(var);
+                reaches.push(0);
+                continue;
+            }
+
+            if (linked.cell.symbol == Cell.Symbol.DEL || linked.cell.symbol == Cell.Symbol.DEL_PRIME) {
+                Cell del = linked.cell;
+                if (linked.port == Port.PRINCIPAL)
+                    throw new RuntimeException("Delta is linked the wrong way, reduce() the net first");
+                DeBruijnTerm term = shared.get(del);
+                if (term == null) {
+                    work.push(del);
+                    work.push(del.principal);
+                } else {
+                    results.push(term);
+                    reaches.push(0);
+                }
+                continue;
+            }
+
+            if (linked.port == Port.PRINCIPAL) { // A Lambda
+                levels.put(linked.cell, depth);
+                depth++;
+                work.push(linked.cell);
+                work.push(linked.cell.right);
+            } else if (linked.port == Port.RIGHT) { // An application
+                work.push(APPLY);
+                work.push(linked.cell.left);
+                work.push(linked.cell.principal);
+            } else { // The variable of a Lambda around it
+                int index = depth - 1 - levels.get(linked.cell);
+                results.push(DeBruijnTerm.bound(index));
+                reaches.push(index + 1);
+            }
         }
+        return results.pop();
     }
 
     public static void test(Term term) {
@@ -165,10 +455,9 @@ public class LambdaNet extends InteractionNet {
         net.reduce();
         long stop = System.currentTimeMillis();
         System.out.println(stop-start);
+        System.out.println(net.context.metrics);
         System.out.println(net.toTerm().prettyPrint());
         System.out.println();
-        LambdaNet.free.clear();
-        LambdaNet.deltaPrimes.clear();
     }
 
     public static void main(String[] args) {
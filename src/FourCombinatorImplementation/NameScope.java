@@ -0,0 +1,67 @@
+package FourCombinatorImplementation;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * The names in scope while a net is decoded, used to rename a Lambda whose variable would capture another.
+ * A fresh name is made by adding ' to the name, since the lexer of Term only allows letters and '. Rather than
+ * adding one ' at a time and checking each name, the number of names in scope with the same base (the name without
+ * its ') is kept, and that many are added at once: at most that many of the names base, base', base'', ... are taken,
+ * so this is free unless the names in scope skip some of them.
+ */
+class NameScope {
+    private final Set<String> names = new HashSet<>();
+    private final Map<String, Integer> counts = new HashMap<>(); // The number of names in scope with each base
+
+    NameScope() {
+    }
+
+    NameScope(Collection<String> names) {
+        for (String name : names) {
+            add(name);
+        }
+    }
+
+    boolean contains(String name) {
+        return names.contains(name);
+    }
+
+    void add(String name) {
+        if (names.add(name))
+            counts.merge(base(name), 1, Integer::sum);
+    }
+
+    void remove(String name) {
+        if (names.remove(name))
+            counts.computeIfPresent(base(name), (base, count) -> count == 1 ? null : count - 1);
+    }
+
+    // Returns name if it is not in scope, and otherwise a name made from it that is not
+    String fresh(String name) {
+        if (!names.contains(name))
+            return name;
+
+        String base = base(name);
+        StringBuilder builder = new StringBuilder(base);
+        for (int i = counts.get(base); i > 0; i--) {
+            builder.append('\'');
+        }
+        String fresh = builder.toString();
+        while (names.contains(fresh)) {
+            fresh = fresh + "'";
+        }
+        return fresh;
+    }
+
+    private static String base(String name) {
+        int end = name.length();
+        while (end > 0 && name.charAt(end - 1) == '\'') {
+            end--;
+        }
+        return name.substring(0, end);
+    }
+}
@@ -0,0 +1,129 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NetHeapTest {
+    @Test
+    public void addressTest() {
+        for (int cell = 0; cell < TestUtil.TEST_SIZE; cell++) {
+            for (int port = Port.PRINCIPAL; port <= Port.RIGHT; port++) {
+                int address = NetHeap.address(cell, port);
+                assertEquals(cell, NetHeap.cellOf(address));
+                assertEquals(port, NetHeap.portOf(address));
+            }
+        }
+    }
+
+    @Test
+    public void allocateTest() {
+        NetHeap heap = new NetHeap(1);
+        for (int i = 0; i < TestUtil.TEST_SIZE; i++) {
+            int cell = heap.allocate(NetHeap.GAM);
+            assertEquals(i, cell);
+            assertEquals(NetHeap.GAM, heap.symbol(cell));
+            assertEquals(NetHeap.NONE, heap.name(cell));
+            for (int port = Port.PRINCIPAL; port <= Port.RIGHT; port++) {
+                assertEquals(NetHeap.NONE, heap.get(NetHeap.address(cell, port)));
+            }
+        }
+        assertEquals(TestUtil.TEST_SIZE, heap.size());
+    }
+
+    @Test
+    public void releaseTest() {
+        NetHeap heap = new NetHeap(1);
+        for (int i = 0; i < TestUtil.TEST_SIZE; i++) {
+            heap.allocate(NetHeap.GAM);
+        }
+        int cell = heap.allocate(NetHeap.DEL);
+        heap.link(NetHeap.address(cell, Port.LEFT), NetHeap.address(0, Port.PRINCIPAL));
+        heap.setSymbol(cell, NetHeap.DEAD);
+        heap.release(cell);
+        assertEquals(TestUtil.TEST_SIZE, heap.live());
+
+        // The released cell is reused, with its slots unlinked again
+        assertEquals(cell, heap.allocate(NetHeap.EPS));
+        assertEquals(NetHeap.EPS, heap.symbol(cell));
+        assertEquals(NetHeap.NONE, heap.get(NetHeap.address(cell, Port.LEFT)));
+        assertEquals(TestUtil.TEST_SIZE + 1, heap.size());
+        assertEquals(TestUtil.TEST_SIZE + 1, heap.live());
+    }
+
+    @Test
+    public void nameTest() {
+        NetHeap heap = new NetHeap();
+        int cell = heap.allocate(NetHeap.DEL);
+        heap.setName(cell, heap.intern(TestUtil.TEST_NAME));
+        assertEquals(NetHeap.DEL, heap.symbol(cell));
+        assertEquals(TestUtil.TEST_NAME, heap.nameOf(heap.name(cell)));
+
+        heap.setSymbol(cell, NetHeap.GAM);
+        assertEquals(NetHeap.GAM, heap.symbol(cell));
+        assertEquals(TestUtil.TEST_NAME, heap.nameOf(heap.name(cell)));
+        assertEquals(heap.name(cell), heap.intern(TestUtil.TEST_NAME));
+    }
+
+    @Test
+    public void linkTest() {
+        NetHeap heap = new NetHeap();
+        int gam = heap.allocate(NetHeap.GAM);
+        int eps = heap.allocate(NetHeap.EPS);
+        heap.link(NetHeap.address(gam, Port.LEFT), NetHeap.address(eps, Port.PRINCIPAL));
+        assertEquals(NetHeap.address(eps, Port.PRINCIPAL), heap.get(NetHeap.address(gam, Port.LEFT)));
+        assertEquals(NetHeap.address(gam, Port.LEFT), heap.get(NetHeap.address(eps, Port.PRINCIPAL)));
+        assertEquals(NetHeap.NONE, heap.get(NetHeap.address(gam, Port.RIGHT)));
+    }
+
+    @Test
+    public void flagTest() {
+        NetHeap heap = new NetHeap();
+        int cell = heap.allocate(NetHeap.DEL_PRIME);
+        heap.setName(cell, heap.intern(TestUtil.TEST_NAME));
+        assertFalse(heap.flag(cell));
+        heap.setFlag(cell, true);
+        assertTrue(heap.flag(cell));
+        assertEquals(NetHeap.DEL_PRIME, heap.symbol(cell));
+        assertEquals(TestUtil.TEST_NAME, heap.nameOf(heap.name(cell)));
+        heap.setFlag(cell, false);
+        assertFalse(heap.flag(cell));
+    }
+
+    @Test
+    public void grownLengthTest() {
+        // Doubling stops at the longest int[] there can be, rather than overflowing
+        assertEquals(2048, NetHeap.grownLength(1024));
+        assertEquals(NetHeap.MAX_LENGTH, NetHeap.grownLength(1 << 30));
+        assertThrows(RuntimeException.class, () -> NetHeap.grownLength(NetHeap.MAX_LENGTH));
+    }
+
+    @Test
+    public void mappedTest() throws IOException {
+        // Enough cells for a second page of the file, linked across the pages
+        Path file = Files.createTempFile("net", ".heap");
+        try (NetHeap heap = NetHeap.mapped(file)) {
+            int first = heap.allocate(NetHeap.GAM);
+            heap.setName(first, heap.intern(TestUtil.TEST_NAME));
+            int cells = 1 << 23;
+            for (int i = 1; i < cells; i++) {
+                heap.allocate(NetHeap.EPS);
+            }
+            int last = heap.allocate(NetHeap.DEL);
+            heap.link(NetHeap.address(first, Port.LEFT), NetHeap.address(last, Port.PRINCIPAL));
+
+            assertEquals(cells + 1, heap.size());
+            assertEquals(Files.size(file), heap.bytes());
+            assertEquals(NetHeap.address(last, Port.PRINCIPAL), heap.get(NetHeap.address(first, Port.LEFT)));
+            assertEquals(NetHeap.address(first, Port.LEFT), heap.get(NetHeap.address(last, Port.PRINCIPAL)));
+            assertEquals(NetHeap.GAM, heap.symbol(first));
+            assertEquals(TestUtil.TEST_NAME, heap.nameOf(heap.name(first)));
+            assertEquals(NetHeap.DEL, heap.symbol(last));
+        }
+        assertFalse(Files.exists(file));
+    }
+}
@@ -0,0 +1,378 @@
+package FourCombinatorImplementation;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Writes a LambdaNet that is partly reduced to a binary file, and reads it back as a net that carries on from where
+ * it stopped. That covers the Cells, Ports and Wires, the queued cuts with their depths, the unfinished steps of
+ * reduce() (context.stack), the DEL_PRIME flags and the free variables. Take a snapshot between calls to
+ * reduceSlice(), never while the net is being reduced.
+ *
+ * reduce() holds on to Cells and Ports that interactions have consumed or moved to other Cells (see step), so rather
+ * than the net as it looks from handle, the file is the graph of the objects themselves. Everything that can be
+ * reached from handle, the free variables, the cuts that are not stale and the frames of context.stack gets an index
+ * of its own kind (Cell, Port or Wire), kept in maps of the Writer so that nothing is left in the net.
+ * Objects are written in the order they are found, which for each kind is the order of the indices, and each refers
+ * to others by index, or NONE for null.
+ *
+ * The file is:
+ *   header: MAGIC, VERSION, the number of Cells, Ports and Wires, handle, the number of free variables, cuts and
+ *           frames, whether reduce() has finished (as an int) and the live Cells (as a long)
+ *   free variables: name and Port
+ *   cuts: Wire, in an order that CutScheduler.add puts back as it was
+ *   frames: handle Port, top Cell and state, from the bottom of the stack
+ *   objects: CELL symbol primeFlag principal left right | PORT cell position link temp name | WIRE port1 port2 depth
+ * where names are a short length (NONE for null) and UTF-8.
+ *
+ * The objects are written through a small buffer as they are found, and the counts in the header are filled in at
+ * the end. It goes to a file next to the one given, which then replaces it, so a snapshot that was cut short leaves
+ * the last one as it was. Reading maps the file a window at a time.
+ *
+ * Each snapshot is the whole net again, not what changed since the last one: its time and the size of its file grow
+ * with the net, and the maps of the Writer take an entry for every object, which for a big net is several times the
+ * memory of the file. Nothing in the net records what an interaction changed, so there is no cheaper snapshot to
+ * take; call snapshot() every so many slices rather than after each one.
+ */
+class NetSnapshot {
+    private final static int MAGIC = 0x494e4554; // "INET"
+    private final static int VERSION = 3;
+    private final static int HEADER_SIZE = 10 * 4 + 8;
+    private final static int NONE = -1;
+
+    private final static byte CELL = 0;
+    private final static byte PORT = 1;
+    private final static byte WIRE = 2;
+
+    private final static int BUFFER_SIZE = 1 << 16;
+    private final static int WINDOW_SIZE = 1 << 26;
+
+    private final static Cell.Symbol[] SYMBOLS = Cell.Symbol.values();
+
+    // Writes net to file, replacing what was there
+    static void write(LambdaNet net, Path file) throws IOException {
+        Path partial = file.resolveSibling(file.getFileName() + ".partial");
+        try (FileChannel channel = FileChannel.open(partial, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING)) {
+            new Writer(channel).write(net);
+            channel.force(true);
+        }
+        Files.move(partial, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private static class Writer {
+        private final FileChannel channel;
+        private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        // The index of each object, by identity since Cell, Port and Wire do not override equals
+        private final Map<Cell, Integer> cells = new IdentityHashMap<>();
+        private final Map<Port, Integer> ports = new IdentityHashMap<>();
+        private final Map<Wire, Integer> wires = new IdentityHashMap<>();
+        private final Deque<Object> found = new ArrayDeque<>(); // Given an index but not written yet
+
+        Writer(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        void write(LambdaNet net) throws IOException {
+            ReductionContext context = net.context;
+            buffer.position(HEADER_SIZE); // Filled in once the counts are known
+            int handle = index(net.handle);
+
+            for (Map.Entry<String, Port> entry : context.free.entrySet()) {
+                writeName(entry.getKey());
+                writeInt(index(entry.getValue()));
+            }
+
+            List<Wire> queued = context.cuts.toList();
+            int cuts = 0;
+            for (Wire cut : queued) {
+                if (!cut.isStale()) {
+                    writeInt(index(cut));
+                    cuts++;
+                }
+            }
+
+            ReduceStack stack = context.stack;
+            for (int i = 0; i < stack.size(); i++) {
+                writeInt(index(stack.handle(i)));
+                writeInt(index(stack.top(i)));
+                writeInt(stack.state(i));
+            }
+
+            while (!found.isEmpty()) {
+                Object next = found.poll();
+                if (next instanceof Cell)
+                    writeCell((Cell) next);
+                else if (next instanceof Port)
+                    writePort((Port) next);
+                else
+                    writeWire((Wire) next);
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(cells.size()).putInt(ports.size()).putInt(wires.size());
+            header.putInt(handle).putInt(context.free.size()).putInt(cuts).putInt(stack.size());
+            header.putInt(net.reduced? 1 : 0).putLong(context.metrics.getLiveCells());
+            header.flip();
+            channel.write(header, 0);
+        }
+
+        private void writeCell(Cell cell) throws IOException {
+            ensure(2 + 3 * 4 + 1);
+            buffer.put(CELL);
+            buffer.put((byte) cell.symbol.ordinal());
+            buffer.put((byte) (cell.inDeltaPrimes? 1 : 0));
+            buffer.putInt(index(cell.principal));
+            buffer.putInt(index(cell.left));
+            buffer.putInt(index(cell.right));
+        }
+
+        private void writePort(Port port) throws IOException {
+            ensure(2 + 3 * 4);
+            buffer.put(PORT);
+            buffer.putInt(index(port.cell));
+            buffer.put((byte) port.port);
+            buffer.putInt(index(port.link));
+            buffer.putInt(index(port.temp));
+            writeName(port.name);
+        }
+
+        private void writeWire(Wire wire) throws IOException {
+            ensure(1 + 3 * 4);
+            buffer.put(WIRE);
+            buffer.putInt(index(wire.port1));
+            buffer.putInt(index(wire.port2));
+            buffer.putInt(wire.depth);
+        }
+
+        private int index(Cell cell) {
+            if (cell == null)
+                return NONE;
+            Integer index = cells.get(cell);
+            if (index == null) {
+                index = cells.size();
+                cells.put(cell, index);
+                found.add(cell);
+            }
+            return index;
+        }
+
+        private int index(Port port) {
+            if (port == null)
+                return NONE;
+            Integer index = ports.get(port);
+            if (index == null) {
+                index = ports.size();
+                ports.put(port, index);
+                found.add(port);
+            }
+            return index;
+        }
+
+        private int index(Wire wire) {
+            if (wire == null)
+                return NONE;
+            Integer index = wires.get(wire);
+            if (index == null) {
+                index = wires.size();
+                wires.put(wire, index);
+                found.add(wire);
+            }
+            return index;
+        }
+
+        private void writeInt(int value) throws IOException {
+            ensure(4);
+            buffer.putInt(value);
+        }
+
+        private void writeName(String name) throws IOException {
+            if (name == null) {
+                ensure(2);
+                buffer.putShort((short) NONE);
+                return;
+            }
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            if (bytes.length > Short.MAX_VALUE)
+                throw new RuntimeException("Name is too long to write: " + name.substring(0, 32) + "...");
+            ensure(2 + bytes.length);
+            buffer.putShort((short) bytes.length);
+            buffer.put(bytes);
+        }
+
+        private void ensure(int bytes) throws IOException {
+            if (buffer.remaining() < bytes)
+                flush();
+        }
+
+        private void flush() throws IOException {
+            buffer.flip();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            buffer.clear();
+        }
+    }
+
+    // Reads the net written to file, encoding it with context, which should not have been used yet
+    static LambdaNet read(Path file, ReductionContext context) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return new Reader(channel).read(context);
+        }
+    }
+
+    private static class Reader {
+        private final FileChannel channel;
+        private final long size;
+        private MappedByteBuffer window;
+        private long windowStart = 0;
+
+        Reader(FileChannel channel) throws IOException {
+            this.channel = channel;
+            size = channel.size();
+            window = channel.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(size, WINDOW_SIZE));
+        }
+
+        LambdaNet read(ReductionContext context) throws IOException {
+            ensure(HEADER_SIZE);
+            if (window.getInt() != MAGIC)
+                throw new RuntimeException("Not a snapshot of a net");
+            int version = window.getInt();
+            if (version != VERSION)
+                throw new RuntimeException("Cannot read snapshot version " + version);
+            Cell[] cells = new Cell[window.getInt()];
+            Port[] ports = new Port[window.getInt()];
+            Wire[] wires = new Wire[window.getInt()];
+            int handle = window.getInt();
+            int freeCount = window.getInt();
+            int cutCount = window.getInt();
+            int frameCount = window.getInt();
+            boolean reduced = window.getInt() != 0;
+            long liveCells = window.getLong();
+
+            // Ports and Wires are made first, so that anything can refer to them, while a Cell is made once its
+            // symbol is read and the Ports that belong to it are given their Cell at the end
+            for (int i = 0; i < ports.length; i++) {
+                ports[i] = new Port();
+            }
+            for (int i = 0; i < wires.length; i++) {
+                wires[i] = new Wire();
+            }
+            int[] owners = new int[ports.length];
+
+            String[] freeNames = new String[freeCount];
+            int[] freePorts = new int[freeCount];
+            for (int i = 0; i < freeCount; i++) {
+                freeNames[i] = readName();
+                freePorts[i] = readInt();
+            }
+            int[] cuts = new int[cutCount];
+            for (int i = 0; i < cutCount; i++) {
+                cuts[i] = readInt();
+            }
+            int[] frames = new int[3 * frameCount];
+            for (int i = 0; i < frames.length; i++) {
+                frames[i] = readInt();
+            }
+
+            int cellCount = 0;
+            int portCount = 0;
+            int wireCount = 0;
+            while (cellCount < cells.length || portCount < ports.length || wireCount < wires.length) {
+                ensure(1);
+                byte kind = window.get();
+                if (kind == CELL) {
+                    ensure(2 + 3 * 4);
+                    Cell cell = Cell.makeEmpty(SYMBOLS[window.get()]);
+                    cell.inDeltaPrimes = false; // Set by addDeltaPrime below, which also counts it
+                    boolean prime = window.get() != 0;
+                    cell.principal = get(ports, window.getInt());
+                    cell.left = get(ports, window.getInt());
+                    cell.right = get(ports, window.getInt());
+                    if (prime)
+                        context.addDeltaPrime(cell);
+                    cells[cellCount++] = cell;
+                } else if (kind == PORT) {
+                    ensure(1 + 3 * 4);
+                    Port port = ports[portCount];
+                    owners[portCount++] = window.getInt();
+                    port.port = window.get();
+                    port.link = get(wires, window.getInt());
+                    port.temp = get(wires, window.getInt());
+                    port.name = readName();
+                } else if (kind == WIRE) {
+                    ensure(3 * 4);
+                    Wire wire = wires[wireCount++];
+                    wire.port1 = get(ports, window.getInt());
+                    wire.port2 = get(ports, window.getInt());
+                    wire.depth = window.getInt();
+                } else {
+                    throw new RuntimeException("Snapshot is corrupt");
+                }
+            }
+            for (int i = 0; i < ports.length; i++) {
+                ports[i].cell = get(cells, owners[i]);
+            }
+
+            LambdaNet net = new LambdaNet(context);
+            net.handle = get(ports, handle);
+            net.reduced = reduced;
+            for (int i = 0; i < freeCount; i++) {
+                context.free.put(freeNames[i], get(ports, freePorts[i]));
+            }
+            for (int cut : cuts) {
+                context.cuts.add(get(wires, cut));
+            }
+            for (int i = 0; i < frameCount; i++) {
+                context.stack.push(get(ports, frames[3 * i]));
+                context.stack.set(frames[3 * i + 2], get(cells, frames[3 * i + 1]));
+            }
+            context.metrics.cells((int) liveCells);
+            return net;
+        }
+
+        private static <T> T get(T[] objects, int index) {
+            return (index == NONE)? null : objects[index];
+        }
+
+        private int readInt() throws IOException {
+            ensure(4);
+            return window.getInt();
+        }
+
+        private String readName() throws IOException {
+            ensure(2);
+            int length = window.getShort();
+            if (length == NONE)
+                return null;
+            ensure(length);
+            byte[] bytes = new byte[length];
+            window.get(bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        // Maps the next window of the file if the current one has fewer than bytes left
+        private void ensure(int bytes) throws IOException {
+            if (window.remaining() >= bytes)
+                return;
+            long position = windowStart + window.position();
+            if (size - position < bytes)
+                throw new RuntimeException("Snapshot is cut short");
+            windowStart = position;
+            window = channel.map(FileChannel.MapMode.READ_ONLY, position, Math.min(size - position, WINDOW_SIZE));
+        }
+    }
+}
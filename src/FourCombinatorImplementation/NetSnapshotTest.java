@@ -0,0 +1,109 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NetSnapshotTest {
+    private static Path file() throws IOException {
+        Path file = Files.createTempFile("net", ".snapshot");
+        file.toFile().deleteOnExit();
+        return file;
+    }
+
+    @Test
+    public void unreducedTest() throws IOException {
+        String term = "(L x . x x) (L f . L a . a f f)";
+        Path file = file();
+        new LambdaNet(new Term(term)).snapshot(file);
+        LambdaNet net = LambdaNet.resume(file);
+        net.reduce();
+
+        LambdaNet direct = new LambdaNet(new Term(term));
+        direct.reduce();
+        assertEquals(direct.toTerm(), net.toTerm());
+    }
+
+    @Test
+    public void reducedTest() throws IOException {
+        LambdaNet direct = new LambdaNet(new Term("L y . (L a . L b . a b) (L x . x) (L x . y z)"));
+        direct.reduce();
+        Path file = file();
+        direct.snapshot(file);
+        LambdaNet net = LambdaNet.resume(file);
+        assertEquals(direct.toTerm(), net.toTerm());
+        assertEquals(direct.context.metrics.getLiveCells(), net.context.metrics.getLiveCells());
+        assertEquals("y", net.toHeadForm().head());
+    }
+
+    @Test
+    public void repeatTest() throws IOException {
+        // The indices kept in the objects are cleared after writing, so a second snapshot is the same as the first
+        LambdaNet net = new LambdaNet(new Term(TestUtil.expString(2, 2) + " x"));
+        net.reduceSlice(5);
+        Path first = file();
+        Path second = file();
+        net.snapshot(first);
+        net.snapshot(second);
+        assertTrue(Arrays.equals(Files.readAllBytes(first), Files.readAllBytes(second)));
+    }
+
+    @Test
+    public void resumeSliceTest() throws IOException {
+        // Every slice is taken by a net read back from the snapshot of the one before, which forces DEL_PRIMEs in
+        // between, and it takes as many interactions as reducing in one go
+        String term = TestUtil.expString(3, 3) + " x";
+        LambdaNet direct = new LambdaNet(new Term(term));
+        direct.reduce();
+
+        Path file = file();
+        LambdaNet net = new LambdaNet(new Term(term));
+        long interactions = 0;
+        boolean stoppedInStep = false;
+        while (true) {
+            ReductionBudget.Limit limit = net.reduceSlice(7);
+            interactions += net.context.metrics.getInteractions();
+            if (limit == null)
+                break;
+            assertEquals(ReductionBudget.Limit.INTERACTIONS, limit);
+            stoppedInStep |= !net.context.stack.isEmpty();
+            net.snapshot(file);
+            net = LambdaNet.resume(file);
+        }
+        assertTrue(stoppedInStep);
+        assertEquals(direct.context.metrics.getInteractions(), interactions);
+        assertEquals(direct.toTerm(), net.toTerm());
+    }
+
+    @Test
+    public void schedulerTest() throws IOException {
+        // The cuts are queued again in the same order, here by depth
+        String term = "(L x . L y . y) (" + TestUtil.expString(3, 3) + ")";
+        LambdaNet net = new LambdaNet(new Term(term), new ReductionContext(CutScheduler.outermost()));
+        Path file = file();
+        net.snapshot(file);
+        LambdaNet resumed = LambdaNet.resume(file, new ReductionContext(CutScheduler.outermost()));
+        assertEquals(net.context.cuts.size(), resumed.context.cuts.size());
+        resumed.reduce();
+        net.reduce();
+        assertEquals(net.context.metrics.getInteractions(), resumed.context.metrics.getInteractions());
+        assertEquals(new Term("L y . y"), resumed.toTerm());
+    }
+
+    @Test
+    public void corruptTest() throws IOException {
+        Path file = file();
+        Files.write(file, new byte[100]);
+        assertThrows(RuntimeException.class, () -> LambdaNet.resume(file));
+
+        new LambdaNet(new Term("(L x . x) y")).snapshot(file);
+        byte[] bytes = Files.readAllBytes(file);
+        Files.write(file, Arrays.copyOf(bytes, bytes.length - 3));
+        assertThrows(RuntimeException.class, () -> LambdaNet.resume(file));
+    }
+}
@@ -0,0 +1,396 @@
+package FourCombinatorImplementation;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+
+/*
+ * Normal forms of closed Terms, so that a combinator applied to the same arguments again is not reduced again.
+ * normalize(term) looks up every closed subterm of term that has a redex, from the outside in, and puts the normal
+ * form in its place if it is known. One that is not known is reduced on its own, within budget, once the closed
+ * subterms inside of it have been looked up, and its normal form is kept. Then the whole term is reduced.
+ *
+ * The keys are DeBruijnTerms, so alpha-equivalent Terms find the same entry, and a closed normal form can be put in
+ * any place without renaming. The size of an entry is the number of DeBruijnTerm objects in its key and normal form,
+ * and once the entries add up to more than maxSize the least recently used ones are evicted.
+ *
+ * A closed subterm that the reduction of the whole term would have erased is still reduced on its own, which is why
+ * that is done within budget. One whose reduction runs out of budget is left as it is, and is kept without a normal
+ * form so that later calls leave it to the reduction of the whole term instead of running out of budget on it again.
+ *
+ * With a NormalFormStore, every normal form that is kept is also appended to it, and one that is not in memory is
+ * looked for there before it counts as a miss, so a cache made in a later run finds what this one reduced.
+ */
+public class NormalFormCache implements NormalFormCacheMBean {
+    public final static ReductionBudget DEFAULT_BUDGET = ReductionBudget.UNLIMITED.withInteractions(1 << 20);
+
+    private final long maxSize;
+    private final ReductionBudget budget;
+    private final NormalFormStore store; // Or null
+
+    private final LinkedHashMap<DeBruijnTerm, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long size = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long storeHits = 0;
+    private long overBudget = 0;
+    private long evictions = 0;
+
+    private ObjectName name = null;
+
+    private static class Entry {
+        final DeBruijnTerm normalForm; // Or null if the reduction of the key ran out of budget
+        final long size;
+
+        Entry(DeBruijnTerm normalForm, long size) {
+            this.normalForm = normalForm;
+            this.size = size;
+        }
+    }
+
+    public NormalFormCache(long maxSize) {
+        this(maxSize, DEFAULT_BUDGET);
+    }
+
+    // budget limits the reduction of each closed subterm on its own, but not that of the whole term
+    public NormalFormCache(long maxSize, ReductionBudget budget) {
+        this(maxSize, budget, null);
+    }
+
+    public NormalFormCache(long maxSize, ReductionBudget budget, NormalFormStore store) {
+        this.maxSize = maxSize;
+        this.budget = budget;
+        this.store = store;
+    }
+
+    public Term normalize(Term term) {
+        return normalize(DeBruijnTerm.of(term)).toTerm();
+    }
+
+    public DeBruijnTerm normalize(DeBruijnTerm term) {
+        Map<DeBruijnTerm, Info> infos = analyze(term);
+        Info info = infos.get(term);
+        if (!info.redex)
+            return term;
+        if (info.isClosed()) {
+            DeBruijnTerm known = get(term);
+            if (known != null)
+                return known;
+        }
+
+        DeBruijnTerm substituted = substitute(term, infos);
+        LambdaNet net = new LambdaNet(substituted);
+        net.reduce();
+        DeBruijnTerm normalForm = net.toDeBruijnTerm();
+        if (info.isClosed())
+            put(term, normalForm);
+        return normalForm;
+    }
+
+    // Returns the normal form of the closed Term term if it is kept, otherwise null
+    public synchronized DeBruijnTerm get(DeBruijnTerm term) {
+        Entry entry = lookup(term);
+        return (entry != null)? entry.normalForm : null;
+    }
+
+    // Returns the Entry of the closed Term term, reading it from the store if need be, or null if there is none
+    private synchronized Entry lookup(DeBruijnTerm term) {
+        Entry entry = entries.get(term);
+        if (entry != null) {
+            if (entry.normalForm == null) {
+                misses++;
+                overBudget++;
+            } else {
+                hits++;
+            }
+            return entry;
+        }
+        DeBruijnTerm stored = (store != null)? read(term) : null;
+        if (stored == null) {
+            misses++;
+            return null;
+        }
+        hits++;
+        storeHits++;
+        return keep(term, stored);
+    }
+
+    // Keeps normalForm as that of the closed Term term, and appends it to the store
+    public synchronized void put(DeBruijnTerm term, DeBruijnTerm normalForm) {
+        if (store != null) {
+            try {
+                store.put(term, normalForm);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not append to the normal form store", e);
+            }
+        }
+        keep(term, normalForm);
+    }
+
+    private DeBruijnTerm read(DeBruijnTerm term) {
+        try {
+            return store.get(term);
+        } catch (IOException e) {
+            throw new RuntimeException("Could not read the normal form store", e);
+        }
+    }
+
+    // Keeps term as one whose reduction ran out of budget, in memory only since another cache may have more budget
+    private synchronized void exceeded(DeBruijnTerm term) {
+        keep(term, null);
+    }
+
+    // Keeps normalForm in memory, unless it and term are bigger than the whole cache, and returns its Entry
+    private Entry keep(DeBruijnTerm term, DeBruijnTerm normalForm) {
+        long entrySize = size(term) + ((normalForm != null)? size(normalForm) : 0);
+        Entry entry = new Entry(normalForm, entrySize);
+        if (entrySize > maxSize)
+            return entry;
+        Entry old = entries.put(term, entry);
+        if (old != null)
+            size -= old.size;
+        size += entrySize;
+
+        Iterator<Entry> eldest = entries.values().iterator();
+        while (size > maxSize) {
+            size -= eldest.next().size;
+            eldest.remove();
+            evictions++;
+        }
+        return entry;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        size = 0;
+    }
+
+    // What analyze finds out about a subterm
+    private static class Info {
+        int reach = 0; // How many Lambdas around it its variables need, Integer.MAX_VALUE if one is free
+        boolean redex = false; // Whether it has one
+
+        boolean isClosed() {
+            return reach == 0;
+        }
+    }
+
+    // Works out an Info for each subterm, after those of the subterms inside of it
+    private static Map<DeBruijnTerm, Info> analyze(DeBruijnTerm term) {
+        Map<DeBruijnTerm, Info> infos = new IdentityHashMap<>();
+        Deque<DeBruijnTerm> pending = new ArrayDeque<>();
+        pending.push(term);
+        while (!pending.isEmpty()) {
+            DeBruijnTerm next = pending.peek();
+            if (infos.containsKey(next)) {
+                pending.pop();
+                continue;
+            }
+            if (next.type == Term.VAR) {
+                Info info = new Info();
+                info.reach = next.isFree()? Integer.MAX_VALUE : next.index + 1;
+                infos.put(pending.pop(), info);
+            } else if (!infos.containsKey(next.right)) {
+                pending.push(next.right);
+            } else if (next.type == Term.APP && !infos.containsKey(next.left)) {
+                pending.push(next.left);
+            } else {
+                Info body = infos.get(next.right);
+                Info info = new Info();
+                if (next.type == Term.LAM) {
+                    info.reach = (body.reach == Integer.MAX_VALUE)? body.reach : Math.max(body.reach - 1, 0);
+                    info.redex = body.redex;
+                } else {
+                    Info function = infos.get(next.left);
+                    info.reach = Math.max(function.reach, body.reach);
+                    info.redex = function.redex || body.redex || next.left.type == Term.LAM;
+                }
+                infos.put(pending.pop(), info);
+            }
+        }
+        return infos;
+    }
+
+    // Marks the place on the stack of substitute where a subterm is built from the ones on results
+    private static class Build {
+        final DeBruijnTerm term;
+
+        Build(DeBruijnTerm term) {
+            this.term = term;
+        }
+    }
+
+    /*
+     * Returns term with the normal form of each closed subterm with a redex in its place, where it is kept or can be
+     * reduced within budget. A subterm found in the cache is not looked into, and the others are rebuilt once the
+     * subterms inside of them are on results. term itself is left to normalize.
+     */
+    private DeBruijnTerm substitute(DeBruijnTerm term, Map<DeBruijnTerm, Info> infos) {
+        Map<DeBruijnTerm, DeBruijnTerm> done = new IdentityHashMap<>(); // For a subterm used in more than one place
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<DeBruijnTerm> results = new ArrayDeque<>();
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Build) {
+                DeBruijnTerm original = ((Build) next).term;
+                DeBruijnTerm built;
+                if (original.type == Term.LAM) {
+                    DeBruijnTerm body = results.pop();
+                    built = (body == original.right)? original : DeBruijnTerm.lam(original.hint, body);
+                } else {
+                    DeBruijnTerm argument = results.pop();
+                    DeBruijnTerm function = results.pop();
+                    built = (function == original.left && argument == original.right)? original :
+                            DeBruijnTerm.app(function, argument);
+                }
+                if (original != term && infos.get(original).isClosed())
+                    built = reduce(original, built);
+                done.put(original, built);
+                results.push(built);
+                continue;
+            }
+
+            DeBruijnTerm subterm = (DeBruijnTerm) next;
+            DeBruijnTerm known = done.get(subterm);
+            if (known != null) {
+                results.push(known);
+                continue;
+            }
+            Info info = infos.get(subterm);
+            if (!info.redex) {
+                results.push(subterm);
+                continue;
+            }
+            if (subterm != term && info.isClosed()) {
+                Entry entry = lookup(subterm);
+                if (entry != null) {
+                    // One that ran out of budget before is left to the reduction of term
+                    DeBruijnTerm normalForm = (entry.normalForm != null)? entry.normalForm : subterm;
+                    done.put(subterm, normalForm);
+                    results.push(normalForm);
+                    continue;
+                }
+            }
+            work.push(new Build(subterm));
+            work.push(subterm.right);
+            if (subterm.type == Term.APP)
+                work.push(subterm.left);
+        }
+        return results.pop();
+    }
+
+    // Reduces built, which stands for the closed Term original, and keeps its normal form if it stays within budget
+    private DeBruijnTerm reduce(DeBruijnTerm original, DeBruijnTerm built) {
+        LambdaNet net = new LambdaNet(built);
+        if (net.reduce(budget) != null) {
+            exceeded(original);
+            return built;
+        }
+        DeBruijnTerm normalForm = net.toDeBruijnTerm();
+        put(original, normalForm);
+        return normalForm;
+    }
+
+    // The number of DeBruijnTerm objects in term, counting a shared one once
+    private static long size(DeBruijnTerm term) {
+        Set<DeBruijnTerm> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+        Deque<DeBruijnTerm> pending = new ArrayDeque<>();
+        pending.push(term);
+        while (!pending.isEmpty()) {
+            DeBruijnTerm next = pending.pop();
+            if (!seen.add(next))
+                continue;
+            if (next.left != null)
+                pending.push(next.left);
+            if (next.right != null)
+                pending.push(next.right);
+        }
+        return seen.size();
+    }
+
+    @Override
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    @Override
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    // The hits that were read from the store
+    @Override
+    public synchronized long getStoreHits() {
+        return storeHits;
+    }
+
+    // The misses that found a subterm whose reduction ran out of budget before, which was not reduced on its own again
+    @Override
+    public synchronized long getOverBudget() {
+        return overBudget;
+    }
+
+    // The share of lookups that found a normal form, 0 before the first
+    @Override
+    public synchronized double getHitRatio() {
+        long lookups = hits + misses;
+        return (lookups == 0)? 0 : (double) hits / lookups;
+    }
+
+    @Override
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized int getEntries() {
+        return entries.size();
+    }
+
+    @Override
+    public synchronized long getSize() {
+        return size;
+    }
+
+    @Override
+    public long getMaxSize() {
+        return maxSize;
+    }
+
+    // Registers this cache with the platform MBeanServer under FourCombinatorImplementation:type=NormalFormCache,name=name
+    public synchronized ObjectName register(String name) {
+        try {
+            unregister();
+            ObjectName objectName = new ObjectName("FourCombinatorImplementation:type=NormalFormCache,name=" +
+                    ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register cache as " + name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (name == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new RuntimeException("Could not unregister cache " + name, e);
+        } finally {
+            name = null;
+        }
+    }
+}
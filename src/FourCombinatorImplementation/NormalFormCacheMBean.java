@@ -0,0 +1,22 @@
+package FourCombinatorImplementation;
+
+// The attributes of NormalFormCache that are exposed through JMX
+public interface NormalFormCacheMBean {
+    long getHits();
+
+    long getMisses();
+
+    long getStoreHits();
+
+    long getOverBudget();
+
+    double getHitRatio();
+
+    long getEvictions();
+
+    int getEntries();
+
+    long getSize();
+
+    long getMaxSize();
+}
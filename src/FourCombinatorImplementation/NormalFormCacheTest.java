@@ -0,0 +1,79 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NormalFormCacheTest {
+    private static String church(int n) {
+        return "(" + TestUtil.churchNumString(n, "f", "a") + ")";
+    }
+
+    private static Term reduced(String term) {
+        LambdaNet net = new LambdaNet(new Term(term));
+        net.reduce();
+        return net.toTerm();
+    }
+
+    @Test
+    public void normalizeTest() {
+        NormalFormCache cache = new NormalFormCache(1 << 20);
+        String[] terms = {"(L x . x x) (L f . L a . a f f)", "L y . (L a . L b . a b) (L x . x) (L x . y)",
+                "L q . (L s . s (L z . s z)) (q w)", "x", "L x . x", church(3) + " " + church(2)};
+        for (int i = 0; i < 2; i++) {
+            for (String term : terms) {
+                assertTrue(reduced(term).alphaEquals(cache.normalize(new Term(term))), term);
+            }
+        }
+    }
+
+    @Test
+    public void hitTest() {
+        NormalFormCache cache = new NormalFormCache(1 << 20);
+        cache.normalize(new Term(church(3) + " " + church(2)));
+        assertEquals(0, cache.getHits());
+        assertEquals(1, cache.getEntries());
+
+        // An alpha-equivalent Term, and the same closed subterm under free variables, are found
+        cache.normalize(new Term("(" + TestUtil.churchNumString(3, "g", "b") + ") " + church(2)));
+        assertEquals(1, cache.getHits());
+        Term term = cache.normalize(new Term("L y . y (" + church(3) + " " + church(2) + ") z"));
+        assertEquals(2, cache.getHits());
+        assertEquals(new Term("L y . y (" + TestUtil.churchNumString(8, "f", "a") + ") z"), term);
+        assertEquals((double) cache.getHits() / (cache.getHits() + cache.getMisses()), cache.getHitRatio());
+    }
+
+    @Test
+    public void budgetTest() {
+        // Omega is erased by the whole term, but runs out of budget on its own and has no normal form kept
+        NormalFormCache cache = new NormalFormCache(1 << 20, ReductionBudget.UNLIMITED.withInteractions(1000));
+        assertEquals(new Term("y"), cache.normalize(new Term("(L x . y) ((L x . x x) (L x . x x))")));
+        assertEquals(0, cache.getOverBudget());
+
+        // The next time it is left to the reduction of the whole term rather than reduced on its own again
+        assertEquals(new Term("z"), cache.normalize(new Term("(L x . z) ((L x . x x) (L x . x x))")));
+        assertEquals(1, cache.getOverBudget());
+        assertNull(cache.get(DeBruijnTerm.of(new Term("(L x . x x) (L x . x x)"))));
+        assertEquals(0, cache.getHits());
+    }
+
+    @Test
+    public void evictionTest() {
+        NormalFormCache cache = new NormalFormCache(100);
+        for (int i = 1; i < 10; i++) {
+            cache.normalize(new Term("(L x . x) " + church(i)));
+            assertTrue(cache.getSize() <= cache.getMaxSize());
+        }
+        assertTrue(cache.getEvictions() > 0);
+
+        // The least recently used entries are the ones evicted
+        assertNotNull(cache.get(DeBruijnTerm.of(new Term("(L y . y) " + church(9)))));
+        assertNull(cache.get(DeBruijnTerm.of(new Term("(L y . y) " + church(1)))));
+
+        // An entry bigger than the whole cache is not kept
+        cache.clear();
+        cache.normalize(new Term(church(3) + " " + church(5)));
+        assertEquals(0, cache.getEntries());
+        assertEquals(0, cache.getSize());
+    }
+}
@@ -0,0 +1,425 @@
+package FourCombinatorImplementation;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/*
+ * Normal forms of closed Terms kept in files, so that a later run can find what an earlier one reduced. Records are
+ * only ever appended, and the data file is mapped into memory to read them. The index is only read the first time
+ * the store is used.
+ *
+ * A directory holds two files:
+ *   normal-forms: MAGIC, VERSION, then records: key length, normal form length, CRC32 of both, key, normal form
+ *   normal-forms.index: INDEX_MAGIC, VERSION, then for each record: the hash of its key and its offset
+ * The hash is that of the bytes of the key, rather than DeBruijnTerm.hashCode, which depends on the ids free
+ * variables were interned with in this run.
+ *
+ * A Term is written from its subterms up: BOUND index, FREE name, LAM (with the hint in a normal form, but not in a
+ * key), APP, or SHARED and the number of a LAM or APP written before that is equal to it. Numbers are varints and
+ * names a varint length and UTF-8. Equal subterms are written once, so a key is the same bytes however it is shared,
+ * and keys are compared as bytes.
+ *
+ * put forces a record to the data file before its entry goes in the index. When the store is loaded, the records
+ * after the last one in the index whose CRC32 is right are put in the index as well, and anything after them, left
+ * by a crash in the middle of an append, is cut off.
+ *
+ * The data file is locked while the store is open, so only one NormalFormStore, in one process, appends to it.
+ */
+public class NormalFormStore implements Closeable {
+    private final static int MAGIC = 0x4e465354; // "NFST"
+    private final static int INDEX_MAGIC = 0x4e464958; // "NFIX"
+    private final static int VERSION = 1;
+    private final static int HEADER_SIZE = 2 * 4;
+    private final static int RECORD_HEADER_SIZE = 3 * 4;
+    private final static int INDEX_ENTRY_SIZE = 4 + 8;
+    private final static long MAX_SIZE = Integer.MAX_VALUE; // What one MappedByteBuffer can map
+
+    private final static byte BOUND = 0;
+    private final static byte FREE = 1;
+    private final static byte LAM = 2;
+    private final static byte APP = 3;
+    private final static byte SHARED = 4;
+
+    private final FileChannel data;
+    private final FileChannel index;
+
+    private Map<Integer, long[]> offsets = null; // Of the records by the hash of their keys, null until load
+    private int records = 0;
+    private long end = 0; // Of the last whole record in data
+    private MappedByteBuffer mapped = null; // data from 0 up to some record that is not after end
+
+    public NormalFormStore(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        data = FileChannel.open(directory.resolve("normal-forms"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve("normal-forms.index"), StandardOpenOption.CREATE,
+                StandardOpenOption.READ, StandardOpenOption.WRITE);
+        boolean locked = false;
+        try {
+            locked = data.tryLock() != null;
+        } catch (OverlappingFileLockException e) {
+            // Held by another NormalFormStore in this JVM
+        } finally {
+            if (!locked)
+                close();
+        }
+        if (!locked)
+            throw new RuntimeException("Normal form store " + directory + " is open somewhere else");
+    }
+
+    // Returns the normal form kept for the closed Term term, otherwise null
+    public synchronized DeBruijnTerm get(DeBruijnTerm term) throws IOException {
+        load();
+        byte[] key = encode(term, false);
+        long offset = find(key);
+        if (offset < 0)
+            return null;
+        ByteBuffer record = record(offset);
+        if (record == null)
+            throw new RuntimeException("Normal form store is corrupt at " + offset);
+        record.position(RECORD_HEADER_SIZE + key.length);
+        return decode(record, true);
+    }
+
+    // Appends normalForm as that of the closed Term term, unless one is kept for it already
+    public synchronized void put(DeBruijnTerm term, DeBruijnTerm normalForm) throws IOException {
+        load();
+        byte[] key = encode(term, false);
+        if (find(key) >= 0)
+            return;
+        byte[] value = encode(normalForm, true);
+        int size = RECORD_HEADER_SIZE + key.length + value.length;
+        if (end + size > MAX_SIZE)
+            throw new RuntimeException("NormalFormStore is full");
+
+        CRC32 crc = new CRC32();
+        crc.update(key);
+        crc.update(value);
+        ByteBuffer record = ByteBuffer.allocate(size);
+        record.putInt(key.length).putInt(value.length).putInt((int) crc.getValue()).put(key).put(value).flip();
+        write(data, record, end);
+        data.force(false);
+
+        int hash = Arrays.hashCode(key);
+        ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+        entry.putInt(hash).putLong(end).flip();
+        write(index, entry, HEADER_SIZE + (long) INDEX_ENTRY_SIZE * records);
+        index.force(false);
+
+        add(hash, end);
+        end += size;
+    }
+
+    // The number of normal forms kept
+    public synchronized int size() throws IOException {
+        load();
+        return records;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        unmap();
+        try {
+            data.close();
+        } finally {
+            index.close();
+        }
+    }
+
+    // Reads the index, and puts in it the whole records that a crash left out of it
+    private void load() throws IOException {
+        if (offsets != null)
+            return;
+        offsets = new HashMap<>();
+        end = header(data, MAGIC);
+        long indexSize = header(index, INDEX_MAGIC);
+        long dataSize = data.size();
+        if (dataSize > MAX_SIZE)
+            throw new RuntimeException("Normal form store is too big to map");
+
+        int entries = (int) ((index.size() - indexSize) / INDEX_ENTRY_SIZE);
+        ByteBuffer buffer = ByteBuffer.allocate(INDEX_ENTRY_SIZE * entries);
+        read(index, buffer, indexSize);
+        buffer.flip();
+        for (int i = 0; i < entries; i++) {
+            int hash = buffer.getInt();
+            long offset = buffer.getLong();
+            ByteBuffer record = (offset >= HEADER_SIZE && offset + RECORD_HEADER_SIZE <= dataSize)?
+                    header(offset, dataSize) : null;
+            if (record == null)
+                throw new RuntimeException("Normal form store index is corrupt at entry " + i);
+            add(hash, offset);
+            end = Math.max(end, offset + record.limit());
+        }
+
+        // Records appended after the last entry, up to the first that was cut short
+        while (true) {
+            ByteBuffer record = (end + RECORD_HEADER_SIZE <= dataSize)? record(end) : null;
+            if (record == null)
+                break;
+            byte[] key = new byte[record.getInt(0)];
+            record.position(RECORD_HEADER_SIZE);
+            record.get(key);
+            int hash = Arrays.hashCode(key);
+            ByteBuffer entry = ByteBuffer.allocate(INDEX_ENTRY_SIZE);
+            entry.putInt(hash).putLong(end).flip();
+            write(index, entry, HEADER_SIZE + (long) INDEX_ENTRY_SIZE * records);
+            add(hash, end);
+            end += record.limit();
+        }
+        unmap(); // It may reach past end
+        data.truncate(end);
+        index.truncate(HEADER_SIZE + (long) INDEX_ENTRY_SIZE * records);
+        data.force(false);
+        index.force(false);
+    }
+
+    // Writes the header of an empty file, or checks it, and returns where the rest of the file starts
+    private static long header(FileChannel channel, int magic) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        if (channel.size() < HEADER_SIZE) {
+            channel.truncate(0);
+            buffer.putInt(magic).putInt(VERSION).flip();
+            write(channel, buffer, 0);
+            channel.force(false);
+            return HEADER_SIZE;
+        }
+        read(channel, buffer, 0);
+        buffer.flip();
+        if (buffer.getInt() != magic)
+            throw new RuntimeException("Not a normal form store");
+        int version = buffer.getInt();
+        if (version != VERSION)
+            throw new RuntimeException("Cannot read normal form store version " + version);
+        return HEADER_SIZE;
+    }
+
+    private void add(int hash, long offset) {
+        long[] old = offsets.get(hash);
+        long[] grown = (old == null)? new long[1] : Arrays.copyOf(old, old.length + 1);
+        grown[grown.length - 1] = offset;
+        offsets.put(hash, grown);
+        records++;
+    }
+
+    // Returns the offset of the record with key, or -1
+    private long find(byte[] key) throws IOException {
+        long[] candidates = offsets.get(Arrays.hashCode(key));
+        if (candidates == null)
+            return -1;
+        for (long offset : candidates) {
+            ByteBuffer record = header(offset, end);
+            if (record == null || record.getInt(0) != key.length)
+                continue;
+            byte[] other = new byte[key.length];
+            record.position(RECORD_HEADER_SIZE);
+            record.get(other);
+            if (Arrays.equals(key, other))
+                return offset;
+        }
+        return -1;
+    }
+
+    // The record at offset, if its lengths fit before limit, without checking its CRC32
+    private ByteBuffer header(long offset, long limit) throws IOException {
+        ByteBuffer buffer = map(offset + RECORD_HEADER_SIZE);
+        int keyLength = buffer.getInt((int) offset);
+        int valueLength = buffer.getInt((int) offset + 4);
+        long size = (long) RECORD_HEADER_SIZE + keyLength + valueLength;
+        if (keyLength < 0 || valueLength < 0 || offset + size > limit)
+            return null;
+        buffer = map(offset + size);
+        buffer.position((int) offset).limit((int) (offset + size));
+        return buffer.slice();
+    }
+
+    // The record at offset, if it fits in data and its CRC32 is right, otherwise null
+    private ByteBuffer record(long offset) throws IOException {
+        ByteBuffer record = header(offset, data.size());
+        if (record == null)
+            return null;
+        CRC32 crc = new CRC32();
+        record.position(RECORD_HEADER_SIZE);
+        crc.update(record);
+        record.position(0);
+        return ((int) crc.getValue() == record.getInt(8))? record : null;
+    }
+
+    // A view of the mapped data that reaches at least up to limit, mapping the file again when it has grown
+    private ByteBuffer map(long limit) throws IOException {
+        if (mapped == null || mapped.capacity() < limit)
+            mapped = data.map(FileChannel.MapMode.READ_ONLY, 0, Math.min(data.size(), MAX_SIZE));
+        if (mapped.capacity() < limit)
+            throw new RuntimeException("Normal form store is cut short");
+        return mapped.duplicate();
+    }
+
+    private void unmap() {
+        if (mapped != null)
+            NetHeap.unmap(mapped);
+        mapped = null;
+    }
+
+    private static void write(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    private static void read(FileChannel channel, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = channel.read(buffer, position);
+            if (read < 0)
+                throw new RuntimeException("Normal form store is cut short");
+            position += read;
+        }
+    }
+
+    // Marks the place on the stack of encode where a Lambda or application is written after its subterms
+    private static class Written {
+        final DeBruijnTerm term;
+
+        Written(DeBruijnTerm term) {
+            this.term = term;
+        }
+    }
+
+    static byte[] encode(DeBruijnTerm term, boolean hints) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Map<DeBruijnTerm, Integer> numbers = new HashMap<>(); // Of the Lambdas and applications written so far
+        int written = 0; // Numbered in the order decode reads them
+        Deque<Object> work = new ArrayDeque<>();
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Written) {
+                DeBruijnTerm done = ((Written) next).term;
+                if (done.type == Term.LAM) {
+                    out.write(LAM);
+                    if (hints)
+                        writeName(out, done.hint);
+                } else {
+                    out.write(APP);
+                }
+                numbers.putIfAbsent(done, written++);
+                continue;
+            }
+
+            DeBruijnTerm subterm = (DeBruijnTerm) next;
+            if (subterm.type == Term.VAR) {
+                if (subterm.isFree()) {
+                    out.write(FREE);
+                    writeName(out, subterm.name());
+                } else {
+                    out.write(BOUND);
+                    writeVarint(out, subterm.index);
+                }
+                continue;
+            }
+            Integer number = numbers.get(subterm);
+            if (number != null) {
+                out.write(SHARED);
+                writeVarint(out, number);
+                continue;
+            }
+            work.push(new Written(subterm));
+            work.push(subterm.right);
+            if (subterm.type == Term.APP)
+                work.push(subterm.left);
+        }
+        return out.toByteArray();
+    }
+
+    // Reads the Term that fills the rest of buffer
+    static DeBruijnTerm decode(ByteBuffer buffer, boolean hints) {
+        List<DeBruijnTerm> numbered = new ArrayList<>();
+        Deque<DeBruijnTerm> results = new ArrayDeque<>();
+        while (buffer.hasRemaining()) {
+            byte tag = buffer.get();
+            switch (tag) {
+                case BOUND:
+                    results.push(DeBruijnTerm.bound(readVarint(buffer)));
+                    break;
+                case FREE:
+                    results.push(DeBruijnTerm.free(readName(buffer)));
+                    break;
+                case LAM:
+                    if (results.isEmpty())
+                        throw new RuntimeException("Normal form store is corrupt");
+                    String hint = hints? readName(buffer) : null;
+                    results.push(DeBruijnTerm.lam(hint, results.pop()));
+                    numbered.add(results.peek());
+                    break;
+                case APP:
+                    if (results.size() < 2)
+                        throw new RuntimeException("Normal form store is corrupt");
+                    DeBruijnTerm argument = results.pop();
+                    results.push(DeBruijnTerm.app(results.pop(), argument));
+                    numbered.add(results.peek());
+                    break;
+                case SHARED:
+                    int number = readVarint(buffer);
+                    if (number >= numbered.size())
+                        throw new RuntimeException("Normal form store is corrupt");
+                    results.push(numbered.get(number));
+                    break;
+                default:
+                    throw new RuntimeException("Normal form store is corrupt");
+            }
+        }
+        if (results.size() != 1)
+            throw new RuntimeException("Normal form store is corrupt");
+        return results.pop();
+    }
+
+    private static void writeVarint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+
+    private static int readVarint(ByteBuffer buffer) {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte next = buffer.get();
+            value |= (next & 0x7f) << shift;
+            if (next >= 0)
+                return value;
+        }
+        throw new RuntimeException("Normal form store is corrupt");
+    }
+
+    private static void writeName(ByteArrayOutputStream out, String name) {
+        byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+        writeVarint(out, bytes.length);
+        out.write(bytes, 0, bytes.length);
+    }
+
+    private static String readName(ByteBuffer buffer) {
+        int length = readVarint(buffer);
+        if (length > buffer.remaining())
+            throw new RuntimeException("Normal form store is corrupt");
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
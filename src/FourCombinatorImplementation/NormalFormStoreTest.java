@@ -0,0 +1,128 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NormalFormStoreTest {
+    private static String church(int n) {
+        return "(" + TestUtil.churchNumString(n, "f", "a") + ")";
+    }
+
+    private static DeBruijnTerm of(String term) {
+        return DeBruijnTerm.of(new Term(term));
+    }
+
+    private static Path directory() throws IOException {
+        Path directory = Files.createTempDirectory("normal-forms");
+        directory.toFile().deleteOnExit();
+        directory.resolve("normal-forms").toFile().deleteOnExit();
+        directory.resolve("normal-forms.index").toFile().deleteOnExit();
+        return directory;
+    }
+
+    @Test
+    public void encodeTest() {
+        // Shared subterms, equal or the same object, are written once and read back shared
+        DeBruijnTerm term = DeBruijnTerm.lam("x", DeBruijnTerm.bound(0));
+        for (int i = 0; i < 1000; i++) {
+            term = DeBruijnTerm.app(term, term);
+        }
+        byte[] bytes = NormalFormStore.encode(term, true);
+        assertTrue(bytes.length < 10000);
+        DeBruijnTerm decoded = NormalFormStore.decode(ByteBuffer.wrap(bytes), true);
+        assertEquals(term.hashCode(), decoded.hashCode());
+        for (int i = 0; i < 1000; i++) {
+            assertSame(decoded.left, decoded.right);
+            decoded = decoded.left;
+        }
+        assertEquals("L x . x", decoded.prettyPrint());
+
+        DeBruijnTerm named = of("L y . L z . z (y w) (L v . v)");
+        assertEquals("L y . L z . (z (y w)) (L v . v)",
+                NormalFormStore.decode(ByteBuffer.wrap(NormalFormStore.encode(named, true)), true).prettyPrint());
+        assertTrue(Arrays.equals(NormalFormStore.encode(named, false),
+                NormalFormStore.encode(of("L a . L b . b (a w) (L c . c)"), false)));
+    }
+
+    @Test
+    public void reopenTest() throws IOException {
+        Path directory = directory();
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            for (int i = 0; i < 10; i++) {
+                store.put(of("(L x . x) " + church(i)), of(church(i)));
+            }
+            store.put(of("(L x . x) " + church(3)), of(church(4))); // Already kept, so ignored
+            assertEquals(10, store.size());
+
+            // Only one store at a time can append to the files
+            assertThrows(RuntimeException.class, () -> new NormalFormStore(directory));
+        }
+
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            for (int i = 0; i < 10; i++) {
+                assertEquals(of(church(i)), store.get(of("(L y . y) " + church(i))));
+            }
+            assertNull(store.get(of("(L x . x x) " + church(2))));
+            assertEquals(10, store.size());
+        }
+    }
+
+    @Test
+    public void crashTest() throws IOException {
+        Path directory = directory();
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            store.put(of(church(2) + " " + church(2)), of(church(4)));
+            store.put(of(church(3) + " " + church(2)), of(church(8)));
+        }
+
+        // As if a crash came after the second record but before its index entry, and another in the middle of a third
+        Path index = directory.resolve("normal-forms.index");
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 12 + 5);
+        }
+        Path data = directory.resolve("normal-forms");
+        try (FileChannel channel = FileChannel.open(data, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            channel.write(ByteBuffer.wrap(new byte[] {0, 0, 0, 40, 0, 0, 0, 40, 1, 2, 3}));
+        }
+        long whole = Files.size(data) - 11;
+
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            assertEquals(2, store.size());
+            assertEquals(of(church(8)), store.get(of(church(3) + " " + church(2))));
+            assertEquals(whole, Files.size(data));
+            store.put(of(church(2) + " " + church(3)), of(church(9)));
+        }
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            assertEquals(of(church(9)), store.get(of(church(2) + " " + church(3))));
+            assertEquals(of(church(4)), store.get(of(church(2) + " " + church(2))));
+        }
+    }
+
+    @Test
+    public void cacheTest() throws IOException {
+        // A cache made later with the same store finds the normal form without reducing it again
+        Path directory = directory();
+        Term term = new Term(church(3) + " " + church(2));
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            NormalFormCache cache = new NormalFormCache(1 << 20, NormalFormCache.DEFAULT_BUDGET, store);
+            cache.normalize(term);
+            assertEquals(0, cache.getStoreHits());
+        }
+        try (NormalFormStore store = new NormalFormStore(directory)) {
+            NormalFormCache cache = new NormalFormCache(1 << 20, NormalFormCache.DEFAULT_BUDGET, store);
+            assertEquals(new Term(TestUtil.churchNumString(8, "f", "a")), cache.normalize(term));
+            assertEquals(1, cache.getHits());
+            assertEquals(1, cache.getStoreHits());
+            assertEquals(1, cache.getEntries());
+        }
+    }
+}
@@ -13,6 +13,8 @@ public class Port {
 
     String name; // For use when this Port represents a variable
 
+    int epoch = 0; // See Cell.epoch
+
     boolean isExtra() { return temp != null; }
 
     Port getLinkedPort() {
@@ -0,0 +1,90 @@
+package FourCombinatorImplementation;
+
+import java.util.Arrays;
+
+/*
+ * The unfinished steps of InteractionNet.reduce(), which used to be the recursion of reduce() on new InteractionNets.
+ * A frame holds the handle a step reduces below, the Cell it found there and how far it got (see InteractionNet).
+ * It is kept in the ReductionContext, so a reduction that is stopped between steps can be resumed later.
+ */
+class ReduceStack {
+    private Port[] handles = new Port[16];
+    private Cell[] tops = new Cell[16];
+    private int[] states = new int[16];
+    private int size = 0;
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Adds a frame that starts reducing below handle
+    void push(Port handle) {
+        push(handle, 0);
+    }
+
+    // The same with the state a frame starts in, which InteractionNet can give flags
+    void push(Port handle, int state) {
+        if (size == handles.length) {
+            handles = Arrays.copyOf(handles, 2 * size);
+            tops = Arrays.copyOf(tops, 2 * size);
+            states = Arrays.copyOf(states, 2 * size);
+        }
+        handles[size] = handle;
+        tops[size] = null;
+        states[size] = state;
+        size++;
+    }
+
+    // Makes the top frame start over below handle, for a step whose last action is to reduce there
+    void replace(Port handle, int state) {
+        handles[size - 1] = handle;
+        tops[size - 1] = null;
+        states[size - 1] = state;
+    }
+
+    void pop() {
+        size--;
+        handles[size] = null;
+        tops[size] = null;
+    }
+
+    Port handle() {
+        return handles[size - 1];
+    }
+
+    Cell top() {
+        return tops[size - 1];
+    }
+
+    int state() {
+        return states[size - 1];
+    }
+
+    void set(int state, Cell top) {
+        states[size - 1] = state;
+        tops[size - 1] = top;
+    }
+
+    // The frames from the bottom of the stack, for NetSnapshot
+    int size() {
+        return size;
+    }
+
+    Port handle(int i) {
+        return handles[i];
+    }
+
+    Cell top(int i) {
+        return tops[i];
+    }
+
+    int state(int i) {
+        return states[i];
+    }
+
+    void clear() {
+        Arrays.fill(handles, 0, size, null);
+        Arrays.fill(tops, 0, size, null);
+        size = 0;
+    }
+}
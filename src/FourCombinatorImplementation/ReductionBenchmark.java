@@ -0,0 +1,77 @@
+package FourCombinatorImplementation;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * JMH benchmarks of each stage of a reduction on its own: parsing a Term, encoding it as a LambdaNet, reducing the
+ * net and reading the normal form back. The workload is base^exponent on Church numerals, built the same way as in
+ * FunctionalTest. Run main() (see the README) to get throughput, average time and, from the gc profiler, the bytes
+ * allocated per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.AverageTime})
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ReductionBenchmark {
+    @Param({"2", "3", "4"})
+    public int base;
+
+    @Param({"5", "7"})
+    public int exponent;
+
+    private String text;
+    private Term term;
+    private LambdaNet net; // Encoded and not reduced yet, for reduce()
+    private LambdaNet normalForm; // Already reduced, for toTerm()
+
+    @Setup(Level.Trial)
+    public void setUpTrial() {
+        text = TestUtil.expString(base, exponent);
+        term = new Term(text);
+        normalForm = new LambdaNet(term);
+        normalForm.reduce();
+    }
+
+    // reduce() consumes its net, so every call needs a new one. Even the smallest workload takes a few hundred
+    // microseconds to reduce, which keeps the timestamps JMH takes around a per-invocation setup in the noise.
+    @Setup(Level.Invocation)
+    public void setUpInvocation() {
+        net = new LambdaNet(term);
+    }
+
+    @Benchmark
+    public Term parse() {
+        return new Term(text);
+    }
+
+    @Benchmark
+    public LambdaNet encode() {
+        return new LambdaNet(term);
+    }
+
+    @Benchmark
+    public LambdaNet reduce() {
+        net.reduce();
+        return net;
+    }
+
+    @Benchmark
+    public Term readback() {
+        return normalForm.toTerm();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder()
+                .include(ReductionBenchmark.class.getName())
+                .addProfiler(GCProfiler.class)
+                .build()).run();
+    }
+}
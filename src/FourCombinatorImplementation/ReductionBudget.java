@@ -0,0 +1,54 @@
+package FourCombinatorImplementation;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Limits on one call to InteractionNet.reduce(ReductionBudget): the number of interactions, the number of live Cells
+ * (see ReductionMetrics) and the time it may take. A term such as (L x . x x) (L x . x x) never reaches a normal
+ * form, so any reduction of a term that is not trusted needs one.
+ *
+ * A budget is immutable, and each with method returns a copy with one limit changed.
+ */
+public class ReductionBudget {
+    // What stopped a reduction before it reached a normal form
+    public enum Limit { INTERACTIONS, LIVE_CELLS, DEADLINE, CANCELLED }
+
+    public final static ReductionBudget UNLIMITED = new ReductionBudget(Long.MAX_VALUE, Long.MAX_VALUE, Long.MAX_VALUE);
+
+    final long maxInteractions;
+    final long maxLiveCells;
+    final long timeoutNanos;
+
+    private ReductionBudget(long maxInteractions, long maxLiveCells, long timeoutNanos) {
+        if (maxInteractions < 0 || maxLiveCells < 0 || timeoutNanos < 0)
+            throw new IllegalArgumentException("Limits cannot be negative");
+        this.maxInteractions = maxInteractions;
+        this.maxLiveCells = maxLiveCells;
+        this.timeoutNanos = timeoutNanos;
+    }
+
+    public ReductionBudget withInteractions(long maxInteractions) {
+        return new ReductionBudget(maxInteractions, maxLiveCells, timeoutNanos);
+    }
+
+    public ReductionBudget withLiveCells(long maxLiveCells) {
+        return new ReductionBudget(maxInteractions, maxLiveCells, timeoutNanos);
+    }
+
+    // The time is counted from the start of the reduction
+    public ReductionBudget withTimeout(long timeout, TimeUnit unit) {
+        return new ReductionBudget(maxInteractions, maxLiveCells, unit.toNanos(timeout));
+    }
+
+    // Thrown by ReductionContext.checkBudget to unwind the recursion of reduce(), and caught by reduce(ReductionBudget)
+    static class Exceeded extends RuntimeException {
+        private final static long serialVersionUID = 1L;
+
+        final Limit limit;
+
+        Exceeded(Limit limit) {
+            super(limit.toString(), null, false, false); // Never printed, so it needs no stack trace
+            this.limit = limit;
+        }
+    }
+}
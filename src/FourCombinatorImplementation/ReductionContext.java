@@ -0,0 +1,148 @@
+package FourCombinatorImplementation;
+
+import java.util.*;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/*
+ * The mutable state of one reduction: the queue of cuts, the set of DEL_PRIMEs and the free variables.
+ * Every InteractionNet encoded with the same context shares this state, and nets with different contexts
+ * can be reduced at the same time on different threads.
+ */
+public class ReductionContext {
+    final CutScheduler cuts;
+
+    // The set of DEL_PRIMEs is kept as a flag on each Cell and a count, since only its size is ever needed
+    // The count is atomic since Wire.reduce updates it from workers
+    private final AtomicInteger deltaPrimes = new AtomicInteger();
+
+    // A map from free variables to the ports representing them in the net
+    final Map<String, Port> free = new HashMap<>();
+
+    final ReductionMetrics metrics = new ReductionMetrics();
+
+    // Reused by InteractionNet.normalize so that reduction steps do not allocate collections
+    final WireBuffer batch = new WireBuffer();
+    final WireBuffer reduced = new WireBuffer();
+    final WireBuffer possibleCuts = new WireBuffer();
+    final Deque<Wire> erasing = new ArrayDeque<>();
+    final Deque<Port> unpriming = new ArrayDeque<>(); // Used by InteractionNet.removePrime
+
+    // Recycles the Cells consumed by one normalize() call into the Cells it makes
+    final CellPool cells = new CellPool();
+
+    // The steps of InteractionNet.reduce() that are not finished
+    final ReduceStack stack = new ReduceStack();
+
+    // The number of workers used by normalize(), with 1 cuts are reduced one at a time on the calling thread
+    int threads = 1;
+    private ForkJoinPool pool = null; // Made when normalize() first needs it
+
+    // The most cuts normalize() reduces between two checks of the budget, which keeps the checks out of its way
+    private final static int CHECK_INTERVAL = 1024;
+
+    // The budget of the running InteractionNet.reduce(ReductionBudget), if any
+    private ReductionBudget budget = ReductionBudget.UNLIMITED;
+    private long deadline = 0;
+    int untilCheck = Integer.MAX_VALUE; // The cuts normalize() may reduce before it calls checkBudget()
+    private volatile boolean cancelled = false;
+
+    public ReductionContext() {
+        this(CutScheduler.fifo());
+    }
+
+    // The scheduler decides the order in which the cuts of this context are reduced, and is not shared with another
+    public ReductionContext(CutScheduler cuts) {
+        this.cuts = cuts;
+    }
+
+    // Like the rest of the context, to be called from the thread that reduces in it, between reductions
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread");
+        this.threads = threads;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    ForkJoinPool pool() {
+        if (pool == null)
+            pool = new ForkJoinPool(threads);
+        return pool;
+    }
+
+    void addDeltaPrime(Cell cell) {
+        if (!cell.inDeltaPrimes) {
+            cell.inDeltaPrimes = true;
+            deltaPrimes.incrementAndGet();
+        }
+    }
+
+    void removeDeltaPrime(Cell cell) {
+        if (cell.inDeltaPrimes) {
+            cell.inDeltaPrimes = false;
+            deltaPrimes.decrementAndGet();
+        }
+    }
+
+    boolean hasDeltaPrimes() {
+        return deltaPrimes.get() > 0;
+    }
+
+    int countDeltaPrimes() {
+        return deltaPrimes.get();
+    }
+
+    // Stops the budgeted reduction running in this context, or the next one to start, with Limit.CANCELLED
+    // This is the only method of a context that can be called from another thread
+    public void cancel() {
+        cancelled = true;
+    }
+
+    void startBudget(ReductionBudget budget) {
+        this.budget = budget;
+        deadline = (budget.timeoutNanos == Long.MAX_VALUE)? Long.MAX_VALUE : System.nanoTime() + budget.timeoutNanos;
+        untilCheck = 0; // Checked before the first cut
+    }
+
+    void endBudget() {
+        budget = ReductionBudget.UNLIMITED;
+        untilCheck = Integer.MAX_VALUE;
+    }
+
+    // Throws ReductionBudget.Exceeded if a limit is reached, otherwise sets the cuts to reduce until the next check
+    void checkBudget() {
+        if (budget == ReductionBudget.UNLIMITED) { // A plain reduce() cannot be stopped
+            untilCheck = Integer.MAX_VALUE;
+            return;
+        }
+
+        long interactions = metrics.getInteractions();
+        if (cancelled)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.CANCELLED);
+        if (interactions >= budget.maxInteractions)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.INTERACTIONS);
+        if (metrics.getLiveCells() > budget.maxLiveCells)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.LIVE_CELLS);
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.DEADLINE);
+        untilCheck = (int) Math.min(CHECK_INTERVAL, budget.maxInteractions - interactions);
+    }
+
+    // Drops what is left of a reduction that was stopped, so that new nets can be encoded and reduced in this context
+    void abandon() {
+        cuts.clear();
+        deltaPrimes.set(0);
+        batch.clear();
+        reduced.clear();
+        possibleCuts.clear();
+        erasing.clear();
+        unpriming.clear();
+        stack.clear();
+        cells.recycle();
+        metrics.clearLiveCells();
+        cancelled = false;
+    }
+}
@@ -0,0 +1,190 @@
+package FourCombinatorImplementation;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+
+/*
+ * Counters describing one reduction, kept by its ReductionContext. They are only written by the thread running
+ * the reduction (workers never touch them, see InteractionNet.normalizeConcurrent), so the increments need no
+ * locking, and they are written opaquely so that any other thread, including a JMX client, can read them while it
+ * runs without slowing the reduction down.
+ */
+public class ReductionMetrics implements ReductionMetricsMBean {
+    private final static int ANNIHILATIONS = 0; // Two Cells with the same symbol, including two Epsilons
+    private final static int ERASURES = 1; // An Epsilon and another symbol, in a cut or in InteractionNet.erase
+    private final static int COMMUTATIONS = 2; // A GAM and a DEL
+    private final static int PRIME_COMMUTATIONS = 3; // A DEL_PRIME and a GAM or a DEL
+    private final static int FORCE_DUPS = 4;
+    private final static int REMOVE_PRIMES = 5;
+
+    private final static int PEAK_CUTS = 6;
+    private final static int PEAK_DELTA_PRIMES = 7;
+
+    // The Cells that are part of the net, made by encoding or by reduction and not yet consumed
+    private final static int LIVE_CELLS = 8;
+    private final static int PEAK_LIVE_CELLS = 9;
+
+    private final static VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private final long[] counts = new long[10];
+
+    private ObjectName name = null;
+
+    // Counts the interaction of a cut between Cells with these symbols
+    void interaction(Cell.Symbol symbol1, Cell.Symbol symbol2) {
+        if (symbol1 == symbol2) {
+            add(ANNIHILATIONS, 1);
+            cells(-2);
+        } else if (symbol1 == Cell.Symbol.EPS || symbol2 == Cell.Symbol.EPS) {
+            add(ERASURES, 1); // Two Epsilons replace the two Cells
+        } else if (symbol1 == Cell.Symbol.DEL_PRIME || symbol2 == Cell.Symbol.DEL_PRIME) {
+            add(PRIME_COMMUTATIONS, 1);
+            cells(2);
+        } else {
+            add(COMMUTATIONS, 1);
+            cells(2);
+        }
+    }
+
+    void erasure() {
+        add(ERASURES, 1);
+    }
+
+    void forceDup() {
+        add(FORCE_DUPS, 1);
+        cells(2);
+    }
+
+    void removePrime() {
+        add(REMOVE_PRIMES, 1);
+    }
+
+    // Adds count (which may be negative) to the number of live Cells
+    void cells(int count) {
+        long live = counts[LIVE_CELLS] + count;
+        set(LIVE_CELLS, live);
+        max(PEAK_LIVE_CELLS, live);
+    }
+
+    // The Cells of a net whose reduction was abandoned are not counted anymore
+    void clearLiveCells() {
+        set(LIVE_CELLS, 0);
+    }
+
+    void observe(int cuts, int deltaPrimes) {
+        max(PEAK_CUTS, cuts);
+        max(PEAK_DELTA_PRIMES, deltaPrimes);
+    }
+
+    // Only the thread running the reduction writes, so it can read its own counts plainly. The opaque writes are never
+    // torn and are seen by other threads without the fences of a volatile write.
+    private void set(int counter, long value) {
+        COUNTS.setOpaque(counts, counter, value);
+    }
+
+    private void add(int counter, long count) {
+        set(counter, counts[counter] + count);
+    }
+
+    private void max(int counter, long value) {
+        if (value > counts[counter])
+            set(counter, value);
+    }
+
+    private long get(int counter) {
+        return (long) COUNTS.getOpaque(counts, counter);
+    }
+
+    @Override
+    public long getAnnihilations() {
+        return get(ANNIHILATIONS);
+    }
+
+    @Override
+    public long getErasures() {
+        return get(ERASURES);
+    }
+
+    @Override
+    public long getCommutations() {
+        return get(COMMUTATIONS);
+    }
+
+    @Override
+    public long getPrimeCommutations() {
+        return get(PRIME_COMMUTATIONS);
+    }
+
+    @Override
+    public long getForceDups() {
+        return get(FORCE_DUPS);
+    }
+
+    @Override
+    public long getRemovePrimes() {
+        return get(REMOVE_PRIMES);
+    }
+
+    // The cuts reduced by every rule
+    @Override
+    public long getInteractions() {
+        return get(ANNIHILATIONS) + get(ERASURES) + get(COMMUTATIONS) + get(PRIME_COMMUTATIONS);
+    }
+
+    @Override
+    public int getPeakCuts() {
+        return (int) get(PEAK_CUTS);
+    }
+
+    @Override
+    public int getPeakDeltaPrimes() {
+        return (int) get(PEAK_DELTA_PRIMES);
+    }
+
+    @Override
+    public long getLiveCells() {
+        return get(LIVE_CELLS);
+    }
+
+    @Override
+    public long getPeakLiveCells() {
+        return get(PEAK_LIVE_CELLS);
+    }
+
+    // Registers these metrics with the platform MBeanServer under FourCombinatorImplementation:type=Reduction,name=name
+    public synchronized ObjectName register(String name) {
+        try {
+            unregister();
+            ObjectName objectName = new ObjectName("FourCombinatorImplementation:type=Reduction,name=" +
+                    ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register metrics as " + name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (name == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new RuntimeException("Could not unregister metrics " + name, e);
+        } finally {
+            name = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "annihilations=" + get(ANNIHILATIONS) + " erasures=" + get(ERASURES) +
+                " commutations=" + get(COMMUTATIONS) + " primeCommutations=" + get(PRIME_COMMUTATIONS) +
+                " forceDups=" + get(FORCE_DUPS) + " removePrimes=" + get(REMOVE_PRIMES) +
+                " peakCuts=" + get(PEAK_CUTS) + " peakDeltaPrimes=" + get(PEAK_DELTA_PRIMES) +
+                " liveCells=" + get(LIVE_CELLS) + " peakLiveCells=" + get(PEAK_LIVE_CELLS);
+    }
+}
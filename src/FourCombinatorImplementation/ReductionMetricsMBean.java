@@ -0,0 +1,26 @@
+package FourCombinatorImplementation;
+
+// The attributes of ReductionMetrics that are exposed through JMX
+public interface ReductionMetricsMBean {
+    long getAnnihilations();
+
+    long getErasures();
+
+    long getCommutations();
+
+    long getPrimeCommutations();
+
+    long getForceDups();
+
+    long getRemovePrimes();
+
+    long getInteractions();
+
+    int getPeakCuts();
+
+    int getPeakDeltaPrimes();
+
+    long getLiveCells();
+
+    long getPeakLiveCells();
+}
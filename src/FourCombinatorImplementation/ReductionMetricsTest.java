@@ -0,0 +1,54 @@
+package FourCombinatorImplementation;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReductionMetricsTest {
+    private static LambdaNet reduce(String term) {
+        LambdaNet net = new LambdaNet(new Term(term));
+        net.reduce();
+        return net;
+    }
+
+    @Test
+    public void rulesTest() {
+        LambdaNet net = reduce("(L x . y) z");
+        assertEquals(1, net.context.metrics.getAnnihilations());
+        assertEquals(1, net.context.metrics.getInteractions());
+        assertEquals(3, net.context.metrics.getPeakLiveCells());
+        assertEquals(1, net.context.metrics.getLiveCells()); // The Epsilon linked to z
+
+        net = reduce("(L f . L a . f (f a)) (L g . L b . g (g b))");
+        assertTrue(net.context.metrics.getForceDups() > 0);
+        assertTrue(net.context.metrics.getRemovePrimes() > 0);
+        assertTrue(net.context.metrics.getPeakDeltaPrimes() > 0);
+    }
+
+    @Test
+    public void erasedArgumentTest() {
+        LambdaNet net = reduce("(L x . y) ((L x . x x) (L x . x))");
+        assertTrue(net.context.metrics.getErasures() > 0);
+        assertEquals(0, net.context.metrics.getLiveCells());
+        assertEquals(9, net.context.metrics.getPeakLiveCells());
+    }
+
+    @Test
+    public void registerTest() throws Exception {
+        LambdaNet net = reduce("(L x . y) z");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = net.context.metrics.register("registerTest");
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "Annihilations"));
+            assertEquals(3L, server.getAttribute(name, "PeakLiveCells"));
+        } finally {
+            net.context.metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
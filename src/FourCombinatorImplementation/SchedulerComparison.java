@@ -0,0 +1,53 @@
+package FourCombinatorImplementation;
+
+/*
+ * Prints, for each CutScheduler, the interactions, the most cuts queued at once, the most live Cells and the time
+ * taken by reduce() on a few kinds of workload: duplication (an exponent of Church numerals), an argument that is
+ * erased after it is encoded, and a long chain of applications to free variables.
+ */
+public class SchedulerComparison {
+    private final static int RUNS = 5;
+
+    private final static String[] SCHEDULERS = {"fifo", "lifo", "outermost", "dropStale"};
+
+    private static CutScheduler scheduler(String name) {
+        switch (name) {
+            case "fifo":
+                return CutScheduler.fifo();
+            case "lifo":
+                return CutScheduler.lifo();
+            case "outermost":
+                return CutScheduler.outermost();
+            case "dropStale":
+                return CutScheduler.dropStale();
+            default:
+                throw new IllegalArgumentException("Unknown scheduler " + name);
+        }
+    }
+
+    public static void main(String[] args) {
+        String[][] workloads = {
+                {"duplication 3^7", TestUtil.expString(3, 7)},
+                {"erased argument", "(L x . L y . y) (" + TestUtil.expString(4, 4) + ")"},
+                {"chain 2^12 g z", "(" + TestUtil.expString(2, 12) + ") g z"}};
+        for (String[] workload : workloads) {
+            System.out.println(workload[0]);
+            Term term = new Term(workload[1]);
+            for (String name : SCHEDULERS) {
+                long best = Long.MAX_VALUE;
+                ReductionMetrics metrics = null;
+                for (int i = 0; i <= RUNS; i++) { // The first run is a warm up
+                    LambdaNet net = new LambdaNet(term, new ReductionContext(scheduler(name)));
+                    long start = System.nanoTime();
+                    net.reduce();
+                    long time = System.nanoTime() - start;
+                    if (i > 0)
+                        best = Math.min(best, time);
+                    metrics = net.context.metrics;
+                }
+                System.out.printf("  %-10s %9d interactions %8d peak cuts %9d peak live cells %8.2f ms%n", name,
+                        metrics.getInteractions(), metrics.getPeakCuts(), metrics.getPeakLiveCells(), best / 1e6);
+            }
+        }
+    }
+}
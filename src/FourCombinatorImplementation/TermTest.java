@@ -1,6 +1,11 @@
 package FourCombinatorImplementation;
 
 import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 public class TermTest {
@@ -41,4 +46,81 @@ public class TermTest {
                     .alphaEquals(new Term(TestUtil.churchNumString(i, "aaa", "fff"))));
         }
     }
+
+    @Test
+    public void alphaEqualsScopeTest() {
+        assertFalse(new Term("(L x . x) x").alphaEquals(new Term("(L y . y) y")));
+        assertTrue(new Term("(L x . x) z").alphaEquals(new Term("(L y . y) z")));
+        assertFalse(new Term("L x . L y . x").alphaEquals(new Term("L a . L a . a")));
+        assertTrue(new Term("L x . L x . x").alphaEquals(new Term("L a . L b . b")));
+    }
+
+    @Test
+    public void deepTermTest() {
+        // Parsing, printing and comparing do not recurse, so nesting this deep does not overflow the stack
+        String termString = TestUtil.churchNumString(100000, "f", "a");
+        Term term = new Term(termString);
+        assertEquals(termString, term.prettyPrint());
+        assertTrue(term.alphaEquals(new Term(TestUtil.churchNumString(100000, "g", "b"))));
+        assertFalse(term.alphaEquals(new Term(TestUtil.churchNumString(99999, "f", "a"))));
+    }
+
+    @Test
+    public void letBindTest() {
+        Term shared = new Term("a b");
+        Term dag = new Term(Term.LAM, Term.var("c"), new Term(Term.APP, shared, shared, null), null);
+        Term lets = dag.letBind();
+        assertEquals("L c . let d = (a b) in d d", lets.prettyPrint());
+        assertEquals("LAM(VAR(c), LET(d, APP(VAR(a), VAR(b)), APP(VAR(d), VAR(d))))", lets.toString());
+
+        // A let is compared with the Term it stands for, and with another let
+        assertEquals(new Term("L c . (a b) (a b)"), lets);
+        assertEquals(lets, new Term("L x . (a b) (a b)"));
+        assertEquals(lets, dag.letBind());
+        assertNotEquals(lets, new Term("L c . (a b) (a c)"));
+        assertNotEquals(new Term("L c . (a b) (b b)"), lets);
+    }
+
+    @Test
+    public void hashCodeTest() {
+        for (int i = 0; i < TestUtil.TEST_SIZE; i++) {
+            assertEquals(new Term(TestUtil.churchNumString(i, "f", "a")).hashCode(),
+                    new Term(TestUtil.churchNumString(i, "g", "b")).hashCode());
+        }
+        assertEquals(new Term("L x . x y").hashCode(), new Term("L z . z y").hashCode());
+        assertNotEquals(new Term("L x . x y").hashCode(), new Term("L x . x z").hashCode());
+        assertNotEquals(new Term("L x . x y").hashCode(), new Term("L x . y x").hashCode());
+        assertNotEquals(new Term("L a . L b . a").hashCode(), new Term("L a . L b . b").hashCode());
+        assertNotEquals(new Term("L a . L b . a b").hashCode(), new Term("L a . L b . b a").hashCode());
+
+        // A let hashes as the Term it stands for, and a DAG as the tree
+        Term shared = new Term("a b");
+        Term dag = new Term(Term.LAM, Term.var("c"), new Term(Term.APP, shared, shared, null), null);
+        int hash = new Term("L c . (a b) (a b)").hashCode();
+        assertEquals(hash, dag.hashCode());
+        assertEquals(hash, dag.letBind().hashCode());
+
+        // A variable of a let used under more Lambdas than the let hashes as its Term would there
+        Term let = new Term(Term.LAM, Term.var("c"),
+                new Term(Term.LET, new Term("L x . c x"), new Term("L y . d d"), "d"), null);
+        assertEquals(new Term("L c . L y . (L x . c x) (L x . c x)").hashCode(), let.hashCode());
+        assertNotEquals(new Term("L c . L y . (L x . y x) (L x . c x)").hashCode(), let.hashCode());
+
+        Set<Term> terms = new HashSet<>(List.of(new Term("L x . x"), new Term("L x . L y . x")));
+        assertTrue(terms.contains(new Term("L z . z")));
+        assertTrue(terms.contains(new Term("L a . L b . a")));
+        assertFalse(terms.contains(new Term("L a . L b . b")));
+    }
+
+    @Test
+    public void deepHashCodeTest() {
+        // A DAG that stands for a tree with 2^1000 applications is hashed without expanding it
+        Term term = Term.var("x");
+        for (int i = 0; i < 1000; i++) {
+            term = new Term(Term.APP, term, term, null);
+        }
+        assertNotEquals(term, new Term(Term.APP, term.left, Term.var("y"), null));
+        assertEquals(new Term(TestUtil.churchNumString(100000, "f", "a")).hashCode(),
+                new Term(TestUtil.churchNumString(100000, "g", "b")).hashCode());
+    }
 }
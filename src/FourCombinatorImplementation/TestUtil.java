@@ -40,4 +40,25 @@ public class TestUtil {
         }
         return builder.toString();
     }
+
+    // The application that reduces to the Church numeral base^exponent
+    public static String expString(int base, int exponent) {
+        return "(" + churchNumString(exponent, "f", "a") + ") (" + churchNumString(base, "f", "a") + ")";
+    }
+
+    // Runs task on a new thread with a stack of stackSize bytes, and fails with whatever task threw
+    public static void runWithStack(long stackSize, Runnable task) throws InterruptedException {
+        Throwable[] thrown = new Throwable[1];
+        Thread thread = new Thread(null, () -> {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                thrown[0] = t;
+            }
+        }, "small stack", stackSize);
+        thread.start();
+        thread.join();
+        if (thrown[0] != null)
+            throw new AssertionError(thrown[0]);
+    }
 }
@@ -1,145 +1,165 @@
 package FourCombinatorImplementation;
 
-import java.util.*;
-
 public class Wire {
     Port port1;
     Port port2;
 
+    // Used by fixExtra in place of Sets, both are false outside of it
+    private boolean possibleExtra = false;
+    private boolean marked = false;
+
+    int depth = 0; // How far below handle a queued cut is, see CutScheduler.outermost()
+
     // Returns the Port that is not the given Port
     Port getOther(Port port) {
         return (port == port1)? port2 : port1;
     }
 
     // Returns the first Port that is part of a cell in the direction away from the given port
-    // Also marks Wires as duplicate if they are reached
-    Port getOtherExtended(Port port, Set<Wire> marked, Set<Wire> possibleExtra) {
-        Port other = getOther(port);
-
-        if (possibleExtra.contains(this))
-            marked.add(this);
-
-        if (other.isExtra()) {
-            return other.getOther(this).getOtherExtended(other, marked, possibleExtra);
-        } else {
-            return other;
+    // Also marks Wires as duplicate if they are reached, and retires the Wires past this one, which it will bypass
+    Port getOtherExtended(Port port, CellPool cells) {
+        Wire wire = this;
+        Port other = wire.getOther(port);
+        while (true) {
+            if (wire.possibleExtra)
+                wire.marked = true;
+            if (!other.isExtra())
+                return other;
+
+            Wire next = other.getOther(wire);
+            other = next.getOther(other);
+            wire = next;
+            cells.retire(wire);
         }
     }
 
-    // Removes extra Ports and and duplicate Wires
-    static Set<Wire> fixExtra(Set<Wire> possibleExtra) {
-        Set<Wire> marked = new HashSet<>();
-        Set<Wire> possibleCuts = new HashSet<>();
-        for (Wire wire : possibleExtra) {
-            if (marked.contains(wire))
+    // Removes extra Ports and duplicate Wires from possibleExtra, adding the Wires that remain to possibleCuts
+    // The Wires that are bypassed are retired to cells
+    static void fixExtra(WireBuffer possibleExtra, WireBuffer possibleCuts, CellPool cells) {
+        for (int i = 0; i < possibleExtra.size(); i++) {
+            possibleExtra.get(i).possibleExtra = true;
+        }
+
+        for (int i = 0; i < possibleExtra.size(); i++) {
+            Wire wire = possibleExtra.get(i);
+            if (wire.marked)
                 continue;
 
-            Port newPort1 = wire.getOtherExtended(wire.port2, marked, possibleExtra);
-            Port newPort2 = wire.getOtherExtended(wire.port1, marked, possibleExtra);
+            Port newPort1 = wire.getOtherExtended(wire.port2, cells);
+            Port newPort2 = wire.getOtherExtended(wire.port1, cells);
             link(newPort1, newPort2, wire);
             possibleCuts.add(wire);
         }
-        return possibleCuts;
+
+        for (int i = 0; i < possibleExtra.size(); i++) {
+            possibleExtra.get(i).possibleExtra = false;
+            possibleExtra.get(i).marked = false;
+        }
     }
 
     boolean isCut() {
         return port1.port == Port.PRINCIPAL && port2.port == Port.PRINCIPAL;
     }
 
+    // A queued cut is stale once either of its Ports has been erased or linked elsewhere
+    boolean isStale() {
+        return port1.link != this || port2.link != this;
+    }
+
+    // Returns the principal Port of an Epsilon at either end, or null if there is none
+    Port getEpsilon() {
+        if (port1.port == Port.PRINCIPAL && port1.cell != null && port1.cell.symbol == Cell.Symbol.EPS)
+            return port1;
+        if (port2.port == Port.PRINCIPAL && port2.cell != null && port2.cell.symbol == Cell.Symbol.EPS)
+            return port2;
+        return null;
+    }
+
     // This method assumes isCut() == true
-    // Returns Wires that are possible new cuts
-    Set<Wire> reduce() {
+    // Adds to possibleCuts the Wires that are possible new cuts, which may include duplicates
+    // The new Cells are made by cells, and the two Cells of this cut are left for the caller to retire
+    void reduce(ReductionContext context, CellPool cells, WireBuffer possibleCuts) {
         Cell cell1 = port1.cell;
         Cell cell2 = port2.cell;
 
         if (cell1.symbol == cell2.symbol) {
-            if (cell1.symbol == Cell.Symbol.EPS)
-                return Set.of();
-            else {
+            if (cell1.symbol != Cell.Symbol.EPS) {
                 if (cell1.symbol == Cell.Symbol.DEL_PRIME) {
-                    InteractionNet.deltaPrimes.remove(cell1);
-                    InteractionNet.deltaPrimes.remove(cell2);
+                    context.removeDeltaPrime(cell1);
+                    context.removeDeltaPrime(cell2);
                 }
-                wipeAndLinkTemp(cell1.left, cell2.left);
-                wipeAndLinkTemp(cell1.right, cell2.right);
-                return new HashSet<>((List.of(cell1.left.link, cell1.right.link)));
+                wipeAndLinkTemp(cell1.left, cell2.left, cells);
+                wipeAndLinkTemp(cell1.right, cell2.right, cells);
+                possibleCuts.add(cell1.left.link);
+                possibleCuts.add(cell1.right.link);
             }
-        }
-
-        if (cell1.symbol == Cell.Symbol.EPS) {
-            return epsCase(cell2);
+        } else if (cell1.symbol == Cell.Symbol.EPS) {
+            epsCase(cell2, context, cells, possibleCuts);
         } else if (cell2.symbol == Cell.Symbol.EPS) {
-            return epsCase(cell1);
+            epsCase(cell1, context, cells, possibleCuts);
         } else if (cell1.symbol == Cell.Symbol.DEL && cell2.symbol == Cell.Symbol.GAM) {
-            return delGamCase(cell1, cell2);
+            delGamCase(cell1, cell2, context, cells, possibleCuts);
         } else if (cell1.symbol == Cell.Symbol.GAM && cell2.symbol == Cell.Symbol.DEL) {
-            return delGamCase(cell2, cell1);
+            delGamCase(cell2, cell1, context, cells, possibleCuts);
         } else {
-            return delPrimeCase(cell1, cell2);
+            delPrimeCase(cell1, cell2, context, cells, possibleCuts);
         }
     }
 
-    private Set<Wire> epsCase(Cell other) {
+    private void epsCase(Cell other, ReductionContext context, CellPool cells, WireBuffer possibleCuts) {
         if (other.symbol == Cell.Symbol.DEL_PRIME) {
-            InteractionNet.deltaPrimes.remove(other);
+            context.removeDeltaPrime(other);
         }
 
-        Cell epsL = Cell.makeEpsilon();
-        Cell epsR = Cell.makeEpsilon();
-
-        stealPrincipalPort(epsL, other.left);
-        stealPrincipalPort(epsR, other.right);
+        // Each new Cell steals an auxiliary Port of other to be its principal Port, see CellPool.make
+        cells.make(Cell.Symbol.EPS, other.left);
+        cells.make(Cell.Symbol.EPS, other.right);
 
-        return new HashSet<>(List.of(other.left.link, other.right.link));
+        possibleCuts.add(other.left.link);
+        possibleCuts.add(other.right.link);
     }
 
-    private Set<Wire> delGamCase(Cell del, Cell gam) {
-        Cell delL = Cell.makeDeltaPrime();
-        Cell delR = Cell.makeDeltaPrime();
-        Cell gamL = Cell.makeGamma();
-        Cell gamR = Cell.makeGamma();
+    private void delGamCase(Cell del, Cell gam, ReductionContext context, CellPool cells, WireBuffer possibleCuts) {
+        Cell delL = cells.make(Cell.Symbol.DEL_PRIME, gam.right);
+        Cell delR = cells.make(Cell.Symbol.DEL_PRIME, gam.left);
+        Cell gamL = cells.make(Cell.Symbol.GAM, del.left);
+        Cell gamR = cells.make(Cell.Symbol.GAM, del.right);
 
-        stealPrincipalPort(delL, gam.right);
-        stealPrincipalPort(delR, gam.left);
-        stealPrincipalPort(gamL, del.left);
-        stealPrincipalPort(gamR, del.right);
-
-        link(delL.left, gamL.right);
-        link(delL.right, gamR.right);
-        link(delR.left, gamL.left);
-        link(delR.right, gamR.left);
+        cells.link(delL.left, gamL.right);
+        cells.link(delL.right, gamR.right);
+        cells.link(delR.left, gamL.left);
+        cells.link(delR.right, gamR.left);
 
         gamL.left.name = gam.left.name;
         gamR.left.name = gam.left.name;
 
-        InteractionNet.deltaPrimes.add(delL);
-        InteractionNet.deltaPrimes.add(delR);
+        context.addDeltaPrime(delL);
+        context.addDeltaPrime(delR);
 
-        return new HashSet<>(List.of(del.left.link, del.right.link, gam.left.link, gam.right.link));
+        possibleCuts.add(del.left.link);
+        possibleCuts.add(del.right.link);
+        possibleCuts.add(gam.left.link);
+        possibleCuts.add(gam.right.link);
     }
 
-    private Set<Wire> delPrimeCase(Cell top, Cell bottom) {
+    private void delPrimeCase(Cell top, Cell bottom, ReductionContext context, CellPool cells,
+                              WireBuffer possibleCuts) {
         if (top.symbol == Cell.Symbol.DEL_PRIME) {
-            InteractionNet.deltaPrimes.remove(top);
+            context.removeDeltaPrime(top);
         }
         if (bottom.symbol == Cell.Symbol.DEL_PRIME) {
-            InteractionNet.deltaPrimes.remove(bottom);
+            context.removeDeltaPrime(bottom);
         }
 
-        Cell topL = Cell.makeCell(bottom.symbol);
-        Cell topR = Cell.makeCell(bottom.symbol);
-        Cell bottomL = Cell.makeCell(top.symbol);
-        Cell bottomR = Cell.makeCell(top.symbol);
-
-        stealPrincipalPort(topL, top.right);
-        stealPrincipalPort(topR, top.left);
-        stealPrincipalPort(bottomL, bottom.left);
-        stealPrincipalPort(bottomR, bottom.right);
+        Cell topL = cells.make(bottom.symbol, top.right);
+        Cell topR = cells.make(bottom.symbol, top.left);
+        Cell bottomL = cells.make(top.symbol, bottom.left);
+        Cell bottomR = cells.make(top.symbol, bottom.right);
 
-        link(topL.left, bottomL.right);
-        link(topL.right, bottomR.right);
-        link(topR.left, bottomL.left);
-        link(topR.right, bottomR.left);
+        cells.link(topL.left, bottomL.right);
+        cells.link(topL.right, bottomR.right);
+        cells.link(topR.left, bottomL.left);
+        cells.link(topR.right, bottomR.left);
 
         topL.left.name = bottom.left.name;
         topR.left.name = bottom.left.name;
@@ -147,28 +167,25 @@ public class Wire {
         bottomR.left.name = top.left.name;
 
         if (top.symbol == Cell.Symbol.DEL_PRIME) {
-            InteractionNet.deltaPrimes.add(bottomL);
-            InteractionNet.deltaPrimes.add(bottomR);
+            context.addDeltaPrime(bottomL);
+            context.addDeltaPrime(bottomR);
         }
         if (bottom.symbol == Cell.Symbol.DEL_PRIME) {
-            InteractionNet.deltaPrimes.add(topL);
-            InteractionNet.deltaPrimes.add(topR);
+            context.addDeltaPrime(topL);
+            context.addDeltaPrime(topR);
         }
 
-        return new HashSet<>(List.of(top.left.link, top.right.link, bottom.left.link, bottom.right.link));
+        possibleCuts.add(top.left.link);
+        possibleCuts.add(top.right.link);
+        possibleCuts.add(bottom.left.link);
+        possibleCuts.add(bottom.right.link);
     }
 
-    private static void stealPrincipalPort(Cell theif, Port port) {
-        theif.principal = port;
-        port.cell = theif;
-        port.port = Port.PRINCIPAL;
-    }
-
-    private static Wire wipeAndLinkTemp(Port port1, Port port2) {
+    private static Wire wipeAndLinkTemp(Port port1, Port port2, CellPool cells) {
         port1.wipe();
         port2.wipe();
 
-        Wire wire = new Wire();
+        Wire wire = cells.wire();
         wire.port1 = port1;
         port1.temp = wire;
         wire.port2 = port2;
@@ -0,0 +1,47 @@
+package FourCombinatorImplementation;
+
+import java.util.Arrays;
+
+// A growable list of Wires that is cleared and reused, so that reducing a cut does not allocate a collection
+class WireBuffer {
+    private Wire[] wires;
+    private int size = 0;
+
+    WireBuffer() {
+        this(16);
+    }
+
+    WireBuffer(int capacity) {
+        wires = new Wire[Math.max(capacity, 1)];
+    }
+
+    void add(Wire wire) {
+        if (size == wires.length)
+            wires = Arrays.copyOf(wires, 2 * wires.length);
+        wires[size++] = wire;
+    }
+
+    void addAll(WireBuffer buffer) {
+        for (int i = 0; i < buffer.size; i++) {
+            add(buffer.wires[i]);
+        }
+    }
+
+    Wire get(int index) {
+        return wires[index];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Drops the references held so that the Wires can be collected, but keeps the storage
+    void clear() {
+        Arrays.fill(wires, 0, size, null);
+        size = 0;
+    }
+}
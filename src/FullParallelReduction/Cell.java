@@ -9,8 +9,6 @@ public class Cell {
     Port left;
     Port right;
 
-    Term term = null;
-
     private Cell(Symbol symbol, boolean eps) {
         this.symbol = symbol;
 
@@ -2,6 +2,10 @@ package FullParallelReduction;
 
 import org.junit.jupiter.api.Test;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+
 import static org.junit.jupiter.api.Assertions.*;
 
 // These were just copied from the four-combinator implementation's test
@@ -11,7 +15,6 @@ public class FunctionalTest {
     }
 
     private static Term reduceTerm(String term) {
-        LambdaNet.free.clear();
         LambdaNet net = new LambdaNet(new Term(term));
         net.reduce();
         return net.toTerm();
@@ -82,6 +85,15 @@ public class FunctionalTest {
                 "(L f . L a . f (f (f a))) (L g . L b . g (g b))");
     }
 
+    @Test
+    public void nestedRegionTest() {
+        // Redexes inside the argument and the body of another redex, some of them using variables bound outside
+        assertReduces("z (L b . b) z (L b . b)",
+                "(L c . z (c c) ((L b . z) c) (L b . (L c . b) (c c))) ((L b . L b . L b . b) z z)");
+        assertReduces("L y . L x . y (y x) (L w . w)", "L y . L x . (L f . f (f x)) y ((L a . a) (L w . w))");
+        assertReduces("L y . y y", "L y . (L a . L b . b) (y (L x . x)) (y y)");
+    }
+
     @Test
     public void expTest() {
         for (int i = 1; i <= 4; i++) {
@@ -90,4 +102,82 @@ public class FunctionalTest {
             }
         }
     }
+
+    @Test
+    public void parallelExpTest() {
+        for (int i = 1; i <= 4; i++) {
+            for (int j = 1; j <= 5; j++) {
+                ReductionContext context = new ReductionContext();
+                context.setThreads(4);
+                LambdaNet net = new LambdaNet(new Term(exp(i, j)), context);
+                net.reduce();
+                assertEquals(new Term(churchNum((int)Math.pow(i, j))), net.toTerm());
+            }
+        }
+    }
+
+    @Test
+    public void parallelRoundsTest() {
+        // 2^10 has rounds of about a thousand cuts, enough to share among the workers
+        ReductionContext serial = new ReductionContext();
+        serial.setThreads(1);
+        LambdaNet expected = new LambdaNet(new Term(exp(2, 10)), serial);
+        expected.reduce();
+        assertEquals(0, serial.metrics.getParallelRounds());
+
+        ReductionContext context = new ReductionContext();
+        context.setThreads(4);
+        LambdaNet net = new LambdaNet(new Term(exp(2, 10)), context);
+        net.reduce();
+        assertTrue(context.metrics.getParallelRounds() > 0);
+        assertEquals(serial.metrics.getRounds(), context.metrics.getRounds());
+        assertEquals(serial.metrics.getInteractions(), context.metrics.getInteractions());
+        assertEquals(expected.toTerm(), net.toTerm());
+    }
+
+    @Test
+    public void independentReductionsTest() throws Exception {
+        // Each reduction has its own ReductionContext, so they can run on separate threads at once
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Term>> results = new ArrayList<>();
+            for (int i = 1; i <= 4; i++) {
+                String term = exp(i, 4);
+                results.add(executor.submit(() -> reduceTerm(term)));
+            }
+            for (int i = 1; i <= 4; i++) {
+                assertEquals(new Term(churchNum((int)Math.pow(i, 4))), results.get(i - 1).get());
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void deepEncodingTest() {
+        // Encoding does not recurse, so an argument nested this deep can be encoded and erased
+        assertReduces("L y . y", "(L x . L y . y) (" + churchNum(100000) + ")");
+    }
+
+    @Test
+    public void deepReadbackTest() {
+        // Reading back does not recurse either, so a normal form nested this deep can be decoded
+        assertReduces(churchNum(100000), "(L x . x) (" + churchNum(100000) + ")");
+    }
+
+    @Test
+    public void captureTest() {
+        // A Lambda whose variable would capture a free variable (or another Lambda's variable) is renamed
+        assertEquals("L x' . x", reduceTerm("(L y . L x . y) x").prettyPrint());
+        assertEquals("L x' . L x'' . x x'", reduceTerm("(L y . L x . L x' . y x) x").prettyPrint());
+    }
+
+    @Test
+    public void sharedReadbackTest() {
+        // Rebuilding a region encodes its Term as a tree, so here letBind only finds what the last round shares
+        Term shared = reduceTerm("(L d . d (d (d w))) (L x . p x x)").letBind();
+        assertEquals(new Term("p (p (p w w) (p w w)) (p (p w w) (p w w))"), shared);
+        assertEquals(reduceTerm("(L d . d (d (d w))) (L x . p x x)").letBind(), shared);
+        assertEquals(new Term("L z . z (y y) (y y)"), reduceTerm("(L x . L z . z x x) (y y)").letBind());
+    }
 }
@@ -0,0 +1,326 @@
+package FullParallelReduction;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static FullParallelReduction.NetHeap.*;
+
+/*
+ * A LambdaNet stored in a NetHeap. Encoding, the interaction rules of Wire, the rounds of LambdaNet.reduce
+ * and decoding all work the same way here, but on int addresses instead of objects.
+ */
+public class HeapLambdaNet {
+    final NetHeap heap;
+    int handle;
+
+    private final IntQueue cuts = new IntQueue();
+    private final Set<String> free = new HashSet<>(); // The names of the free variables
+
+    public HeapLambdaNet(Term term) {
+        this(term, new NetHeap());
+    }
+
+    public HeapLambdaNet(Term term, NetHeap heap) {
+        this.heap = heap;
+        encode(term);
+    }
+
+    private void encode(Term term) {
+        handle = address(heap.allocate(ROOT), Port.PRINCIPAL);
+        link(handle, encode(term, new HashMap<>()));
+    }
+
+    /*
+     * Returns the address of the port that the parent of term should be linked to. As in LambdaNet.encode, the Terms
+     * still to encode are kept on a stack, and below them the cells (as Integers) that their ports are linked to once
+     * those are on roots.
+     */
+    private int encode(Term term, Map<String, Integer> bound) {
+        Deque<Object> work = new ArrayDeque<>();
+        IntQueue roots = new IntQueue(); // Used as a stack
+        List<Integer> shadowed = new ArrayList<>(); // What the name of each open Lambda was bound to, or null
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Integer) {
+                int cell = (Integer) next;
+                if (heap.name(cell) != NONE) { // A Lambda
+                    link(address(cell, Port.RIGHT), roots.pollLast());
+                    String name = heap.nameOf(heap.name(cell));
+                    Integer outer = shadowed.remove(shadowed.size() - 1);
+                    if (outer != null)
+                        bound.put(name, outer);
+                    else
+                        bound.remove(name);
+                    fixEnd(address(cell, Port.LEFT));
+                    roots.add(address(cell, Port.PRINCIPAL));
+                } else {
+                    int arg = roots.pollLast();
+                    int fun = roots.pollLast();
+                    link(address(cell, Port.PRINCIPAL), fun);
+                    link(address(cell, Port.LEFT), arg);
+                    roots.add(address(cell, Port.RIGHT));
+                }
+                continue;
+            }
+
+            term = (Term) next;
+            switch (term.type) {
+                case Term.VAR:
+                    roots.add(encodeVariable(term.name, bound));
+                    break;
+                case Term.LAM:
+                    int lam = heap.allocate(GAM);
+                    heap.setName(lam, heap.intern(term.left.name));
+                    shadowed.add(bound.get(term.left.name));
+                    bound.put(term.left.name, address(lam, Port.LEFT));
+                    work.push(lam);
+                    work.push(term.right);
+                    break;
+                case Term.APP:
+                    int app = heap.allocate(GAM);
+                    work.push(app);
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+                case Term.LET: // A let is encoded as the application of a Lambda, which shares the Term it binds
+                    work.push(term.redex());
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return roots.pollLast();
+    }
+
+    private int encodeVariable(String name, Map<String, Integer> bound) {
+        if (bound.containsKey(name)) {
+            int delta = heap.allocate(DEL);
+            link(address(delta, Port.PRINCIPAL), bound.get(name));
+            bound.put(name, address(delta, Port.RIGHT));
+            return address(delta, Port.LEFT);
+        } else {
+            int var = heap.allocate(FREE);
+            heap.setName(var, heap.intern(name));
+            free.add(name);
+            return address(var, Port.PRINCIPAL);
+        }
+    }
+
+    private void fixEnd(int port) {
+        while (true) {
+            int linked = heap.get(port);
+            if (linked == NONE) {
+                link(port, address(heap.allocate(EPS), Port.PRINCIPAL));
+                return;
+            }
+
+            int delta = cellOf(linked);
+            if (heap.get(address(delta, Port.RIGHT)) == NONE) {
+                link(port, heap.get(address(delta, Port.LEFT)));
+                kill(delta);
+                return;
+            }
+            port = address(delta, Port.RIGHT);
+        }
+    }
+
+    private void link(int address1, int address2) {
+        heap.link(address1, address2);
+        if (isCut(address1))
+            cuts.add(address1);
+    }
+
+    private boolean isCut(int address) {
+        if (address == NONE || portOf(address) != Port.PRINCIPAL || !interacts(heap.symbol(cellOf(address))))
+            return false;
+        int other = heap.get(address);
+        return other != NONE && portOf(other) == Port.PRINCIPAL && interacts(heap.symbol(cellOf(other)));
+    }
+
+    // Follows the addresses left behind by consumed cells to where their ports are now
+    private int resolve(int address) {
+        while (address != NONE && heap.symbol(cellOf(address)) == DEAD) {
+            int next = heap.get(address);
+            if (next == NONE)
+                return address;
+            address = next;
+        }
+        return address;
+    }
+
+    private void kill(int cell) {
+        kill(cell, NONE, NONE);
+    }
+
+    private void kill(int cell, int left, int right) {
+        heap.setSymbol(cell, DEAD);
+        heap.set(address(cell, Port.PRINCIPAL), NONE);
+        heap.set(address(cell, Port.LEFT), left);
+        heap.set(address(cell, Port.RIGHT), right);
+    }
+
+    // The equivalent of Wire.reduce
+    private void interact(int cell1, int cell2) {
+        int symbol1 = heap.symbol(cell1);
+        int symbol2 = heap.symbol(cell2);
+
+        if (symbol1 == symbol2) {
+            if (symbol1 == EPS) {
+                kill(cell1);
+                kill(cell2);
+            } else {
+                annihilate(cell1, cell2);
+            }
+        } else if (symbol1 == EPS) {
+            erase(cell2, cell1);
+        } else if (symbol2 == EPS) {
+            erase(cell1, cell2);
+        } else if (symbol1 == GAM) {
+            commute(cell1, cell2);
+        } else {
+            commute(cell2, cell1);
+        }
+    }
+
+    private void annihilate(int cell1, int cell2) {
+        // Each target is read after the previous link so that ports linked to each other are handled
+        link(heap.get(address(cell1, Port.LEFT)), heap.get(address(cell2, Port.LEFT)));
+        link(heap.get(address(cell1, Port.RIGHT)), heap.get(address(cell2, Port.RIGHT)));
+        kill(cell1);
+        kill(cell2);
+    }
+
+    private void erase(int other, int eps) {
+        int left = heap.get(address(other, Port.LEFT));
+        int right = heap.get(address(other, Port.RIGHT));
+        int epsL = address(heap.allocate(EPS), Port.PRINCIPAL);
+        int epsR = address(heap.allocate(EPS), Port.PRINCIPAL);
+
+        kill(eps);
+        kill(other, epsL, epsR);
+
+        link(epsL, resolve(left));
+        link(epsR, resolve(right));
+    }
+
+    // See Wire.gamDelCase
+    private void commute(int gam, int del) {
+        int gamLeft = heap.get(address(gam, Port.LEFT));
+        int gamRight = heap.get(address(gam, Port.RIGHT));
+        int delLeft = heap.get(address(del, Port.LEFT));
+        int delRight = heap.get(address(del, Port.RIGHT));
+
+        int delL = heap.allocate(DEL);
+        int delR = heap.allocate(DEL);
+        int gamL = heap.allocate(GAM);
+        int gamR = heap.allocate(GAM);
+
+        if (heap.name(gam) != NONE) {
+            heap.setName(gamL, heap.name(gam));
+            heap.setName(gamR, heap.name(gam));
+        }
+
+        kill(gam, address(delR, Port.PRINCIPAL), address(delL, Port.PRINCIPAL));
+        kill(del, address(gamL, Port.PRINCIPAL), address(gamR, Port.PRINCIPAL));
+
+        link(address(delL, Port.LEFT), address(gamL, Port.RIGHT));
+        link(address(delL, Port.RIGHT), address(gamR, Port.RIGHT));
+        link(address(delR, Port.LEFT), address(gamL, Port.LEFT));
+        link(address(delR, Port.RIGHT), address(gamR, Port.LEFT));
+
+        link(address(delL, Port.PRINCIPAL), resolve(gamRight));
+        link(address(delR, Port.PRINCIPAL), resolve(gamLeft));
+        link(address(gamL, Port.PRINCIPAL), resolve(delLeft));
+        link(address(gamR, Port.PRINCIPAL), resolve(delRight));
+    }
+
+    // See LambdaNet.reduce, the net is decoded and encoded again into the same heap after each round
+    public void reduce() {
+        while (!cuts.isEmpty()) {
+            for (int cut : cuts.toArray()) {
+                if (isCut(cut))
+                    interact(cellOf(cut), cellOf(heap.get(cut)));
+            }
+            Term term = toTerm();
+            cuts.clear();
+            heap.clear();
+            encode(term);
+        }
+    }
+
+    // Decodes NetHeaps into Terms
+    public Term toTerm() {
+        return toTerm(handle, new NameScope(free), new HashMap<>());
+    }
+
+    /*
+     * The Map shared holds the Term of each Delta decoded, which every use of it shares (see Term.letBind).
+     * Instead of recursing, the addresses of the ports still to decode are kept on a stack, and below them the
+     * complement (~) of the address a Lambda, application or Delta was reached at, whose Term is built once the Terms
+     * of its ports are on results.
+     */
+    private Term toTerm(int root, NameScope names, Map<Integer, Term> shared) {
+        IntQueue work = new IntQueue();
+        Deque<Term> results = new ArrayDeque<>();
+        work.add(root);
+        while (!work.isEmpty()) {
+            int next = work.pollLast();
+            if (next < 0) {
+                build(~next, names, shared, results);
+                continue;
+            }
+
+            int linked = heap.get(next);
+            int cell = cellOf(linked);
+            int symbol = heap.symbol(cell);
+
+            if (symbol == FREE) {
+                results.push(Term.var(heap.nameOf(heap.name(cell))));
+            } else if (symbol == DEL) {
+                Term term = shared.get(cell);
+                if (term != null) {
+                    results.push(term);
+                } else {
+                    work.add(~linked);
+                    work.add(address(cell, Port.PRINCIPAL));
+                }
+            } else if (portOf(linked) == Port.PRINCIPAL) { // Lambda
+                String name = names.fresh(heap.nameOf(heap.name(cell)));
+                heap.setName(cell, heap.intern(name));
+                names.add(name);
+                work.add(~linked);
+                work.add(address(cell, Port.RIGHT));
+            } else if (portOf(linked) == Port.RIGHT) { // Application
+                work.add(~linked);
+                work.add(address(cell, Port.LEFT));
+                work.add(address(cell, Port.PRINCIPAL)); // The function is decoded first
+            } else { // Variable
+                results.push(Term.var(heap.nameOf(heap.name(cell))));
+            }
+        }
+        return results.pop();
+    }
+
+    // Replaces the Terms on top of results with the Term of the cell reached at linked
+    private void build(int linked, NameScope names, Map<Integer, Term> shared, Deque<Term> results) {
+        int cell = cellOf(linked);
+        int symbol = heap.symbol(cell);
+        if (symbol == DEL) { // The Term stays on results for this use, and is kept for the other
+            shared.put(cell, results.peek());
+        } else if (portOf(linked) == Port.PRINCIPAL) {
+            String name = heap.nameOf(heap.name(cell));
+            results.push(new Term(Term.LAM, Term.var(name), results.pop(), null));
+            names.remove(name);
+        } else {
+            Term argument = results.pop();
+            results.push(new Term(Term.APP, results.pop(), argument, null));
+        }
+    }
+}
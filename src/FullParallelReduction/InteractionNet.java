@@ -1,28 +1,85 @@
 package FullParallelReduction;
 
-import java.util.LinkedList;
 import java.util.Queue;
-import java.util.Set;
 
 public class InteractionNet {
     Port handle;
-    static Queue<Wire> cuts = new LinkedList<>();
+    final ReductionContext context;
+
+    InteractionNet(ReductionContext context) {
+        this.context = context;
+    }
 
     void linkToNet(Port port, InteractionNet net) {
         Wire.link(port, net.handle.getLinkedPort());
     }
 
+    /*
+     * Reduces like reduce(), but stops once any limit of budget is reached or the context is cancelled, and returns the
+     * limit that stopped it, or null if the net was fully reduced. The limits are checked at least every 1024 cuts,
+     * and only between rounds in LambdaNet, so a reduction can go a little past them.
+     *
+     * A stopped net is left half reduced and should be dropped, along with every other net of its context.
+     * The context is cleared so that new nets can be encoded with it.
+     */
+    public ReductionBudget.Limit reduce(ReductionBudget budget) {
+        context.startBudget(budget);
+        try {
+            reduce();
+            return null;
+        } catch (ReductionBudget.Exceeded e) {
+            context.abandon();
+            return e.limit;
+        } finally {
+            context.endBudget();
+        }
+    }
+
+    /*
+     * Reduces with at most n more interactions, or a few more as in reduce(ReductionBudget), and returns null if
+     * the net is now fully reduced. Otherwise it returns Limit.INTERACTIONS, and the cuts stay in the context for the
+     * next call to reduceSlice() or reduce() to carry on from, so that one thread can take turns between many
+     * reductions. A context reduces one net at a time.
+     *
+     * If the context is cancelled, the reduction is dropped as in reduce(ReductionBudget) and this returns
+     * Limit.CANCELLED.
+     */
+    public ReductionBudget.Limit reduceSlice(long n) {
+        long interactions = context.metrics.getInteractions();
+        context.startBudget(ReductionBudget.UNLIMITED.withInteractions(
+                (n >= Long.MAX_VALUE - interactions)? Long.MAX_VALUE : interactions + n));
+        try {
+            reduce();
+            return null;
+        } catch (ReductionBudget.Exceeded e) {
+            if (e.limit != ReductionBudget.Limit.INTERACTIONS)
+                context.abandon();
+            return e.limit;
+        } finally {
+            context.endBudget();
+        }
+    }
+
     void reduce() { // This gets overriden
+        Queue<Wire> cuts = context.cuts;
+        WireBuffer reduced = context.reduced;
+        WireBuffer possibleCuts = context.possibleCuts;
         while (!cuts.isEmpty()) {
-            Set<Wire> possibleCuts = cuts.poll().reduce();
+            if (--context.untilCheck <= 0)
+                context.checkBudget();
+            Wire cut = cuts.poll();
+            cut.reduce(reduced);
+            context.metrics.interaction(cut.port1.cell.symbol, cut.port2.cell.symbol);
 
-            possibleCuts = Wire.fixExtra(possibleCuts);
+            Wire.fixExtra(reduced, possibleCuts);
+            reduced.clear();
 
-            for (Wire wire: possibleCuts) {
-                if (wire.isCut()) {
-                    cuts.add(wire);
+            for (int i = 0; i < possibleCuts.size(); i++) {
+                if (possibleCuts.get(i).isCut()) {
+                    cuts.add(possibleCuts.get(i));
                 }
             }
+            possibleCuts.clear();
         }
     }
 }
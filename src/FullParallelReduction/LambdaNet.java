@@ -1,115 +1,366 @@
 package FullParallelReduction;
 
-import java.util.HashMap;
-import java.util.HashSet;
-import java.util.Map;
-import java.util.Set;
+import java.util.*;
+import java.util.concurrent.*;
 
 public class LambdaNet extends InteractionNet {
-    static Map<String, Port> free = new HashMap<>();
+    // The fewest cuts a worker is given of a round, so a round with fewer than twice as many is reduced on the calling
+    // thread. Wire.reduce takes about 250 ns a cut, and handing a share to a worker of the pool and joining it again
+    // 5 to 25 microseconds, so a smaller share costs more to hand over than to reduce.
+    private final static int PARALLEL_THRESHOLD = 128;
 
     public LambdaNet(Term term) {
-        this(term, new HashMap<>());
+        this(term, new ReductionContext());
     }
 
-    public LambdaNet(Term term, Map<String, Port> bound) {
+    public LambdaNet(Term term, ReductionContext context) {
+        this(term, new HashMap<>(), context);
+    }
+
+    public LambdaNet(Term term, Map<String, Port> bound, ReductionContext context) {
+        super(context);
         handle = new Port();
+        link(encode(term, bound));
+    }
+
+    public LambdaNet(DeBruijnTerm term) {
+        this(term, new ReductionContext());
+    }
+
+    public LambdaNet(DeBruijnTerm term, ReductionContext context) {
+        super(context);
+        handle = new Port();
+        link(encode(term));
+    }
+
+    private void link(Port root) {
+        Wire.link(handle, root);
+        if (root.cell == null) // A free variable, whose Port is left unlinked as in encodeFree
+            root.link = null;
+    }
+
+    /*
+     * Returns the Port that the parent of term should be linked to. Instead of recursing, the Terms still to encode
+     * are kept on a stack, and below them the Cells of the Lambdas and applications whose subterms they are, which are
+     * linked to the Ports of their subterms once those are on roots.
+     */
+    private Port encode(Term term, Map<String, Port> bound) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Port> roots = new ArrayDeque<>();
+        List<Port> shadowed = new ArrayList<>(); // What the name of each open Lambda was bound to outside of it, or null
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                if (cell.left.name != null) { // A Lambda
+                    Wire.link(cell.right, roots.pop());
 
-        switch (term.type) {
-            case Term.VAR:
-                if (bound.containsKey(term.name)) {
-                    Cell delta = Cell.makeDelta();
-                    Wire.link(delta.principal, bound.get(term.name));
-                    bound.put(term.name, delta.right);
-                    Wire.link(handle, delta.left);
-                } else if (free.containsKey(term.name)) {
-                    Wire.link(handle, free.get(term.name));
-                    free.get(term.name).link = null;
+                    // The name is put back in the scope it had outside the Lambda
+                    Port outer = shadowed.remove(shadowed.size() - 1);
+                    if (outer != null)
+                        bound.put(cell.left.name, outer);
+                    else
+                        bound.remove(cell.left.name);
+
+                    fixEnd(cell.left);
+                    roots.push(cell.principal);
                 } else {
-                    Port var = new Port();
-                    var.name = term.name;
-                    Wire.link(handle, var);
-                    var.link = null;
-                    free.put(var.name, var);
+                    linkApplication(cell, roots);
                 }
-                break;
-            case Term.LAM:
-                Cell lam = Cell.makeGamma();
-                lam.left.name = term.left.name;
-                Wire.link(handle, lam.principal);
-                Port shadowed = bound.getOrDefault(term.left.name, null);
-                bound.put(term.left.name, lam.left);
-                linkToNet(lam.right, new LambdaNet(term.right, bound));
-                if (shadowed != null) {
-                    bound.put(term.left.name, shadowed);
+                continue;
+            }
+
+            term = (Term) next;
+            switch (term.type) {
+                case Term.VAR:
+                    roots.push(encodeVariable(term.name, bound));
+                    break;
+                case Term.LAM:
+                    Cell lam = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    lam.left.name = term.left.name;
+                    shadowed.add(bound.get(term.left.name));
+                    bound.put(term.left.name, lam.left);
+                    work.push(lam);
+                    work.push(term.right);
+                    break;
+                case Term.APP:
+                    Cell app = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    work.push(app);
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+                case Term.LET: // A let is encoded as the application of a Lambda, which shares the Term it binds
+                    work.push(term.redex());
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return roots.pop();
+    }
+
+    // As encode(Term, bound), but a variable is bound to the Lambda that its index counts out to on binders
+    private Port encode(DeBruijnTerm term) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Port> roots = new ArrayDeque<>();
+        List<Port> binders = new ArrayList<>(); // Where the next use of the variable of each open Lambda is linked
+        work.push(term);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                if (cell.left.name != null) { // A Lambda
+                    Wire.link(cell.right, roots.pop());
+                    binders.remove(binders.size() - 1);
+                    fixEnd(cell.left);
+                    roots.push(cell.principal);
+                } else {
+                    linkApplication(cell, roots);
                 }
-                fixEnd(lam.left);
-                break;
-            case Term.APP:
-                Cell app = Cell.makeGamma();
-                Wire.link(handle, app.right);
-                linkToNet(app.principal, new LambdaNet(term.left, bound));
-                linkToNet(app.left, new LambdaNet(term.right, bound));
-                if (app.principal.link.isCut())
-                    cuts.add(app.principal.link);
-                break;
-            default:
-                throw new RuntimeException("Illegal term type");
+                continue;
+            }
+
+            DeBruijnTerm subterm = (DeBruijnTerm) next;
+            switch (subterm.type) {
+                case Term.VAR:
+                    if (subterm.isFree()) {
+                        roots.push(encodeFree(subterm.name()));
+                    } else if (subterm.index < binders.size()) {
+                        int binder = binders.size() - 1 - subterm.index;
+                        Cell delta = share(binders.get(binder));
+                        binders.set(binder, delta.right);
+                        roots.push(delta.left);
+                    } else {
+                        throw new RuntimeException("Index " + subterm.index + " is not bound");
+                    }
+                    break;
+                case Term.LAM:
+                    Cell lam = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    lam.left.name = subterm.hint;
+                    binders.add(lam.left);
+                    work.push(lam);
+                    work.push(subterm.right);
+                    break;
+                case Term.APP:
+                    Cell app = Cell.makeGamma();
+                    context.metrics.cells(1);
+                    work.push(app);
+                    work.push(subterm.right);
+                    work.push(subterm.left);
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        return roots.pop();
+    }
+
+    private void linkApplication(Cell cell, Deque<Port> roots) {
+        Port argument = roots.pop();
+        Wire.link(cell.principal, roots.pop());
+        Wire.link(cell.left, argument);
+        if (cell.principal.link.isCut())
+            context.cuts.add(cell.principal.link);
+        roots.push(cell.right);
+    }
+
+    private Port encodeVariable(String name, Map<String, Port> bound) {
+        if (bound.containsKey(name)) {
+            Cell delta = share(bound.get(name));
+            bound.put(name, delta.right);
+            return delta.left;
+        }
+        return encodeFree(name);
+    }
+
+    private Cell share(Port end) {
+        Cell delta = Cell.makeDelta();
+        context.metrics.cells(1);
+        Wire.link(delta.principal, end);
+        return delta;
+    }
+
+    private Port encodeFree(String name) {
+        Map<String, Port> free = context.free;
+        if (free.containsKey(name)) {
+            Port var = free.get(name);
+            var.link = null;
+            return var;
+        } else {
+            Port var = new Port();
+            var.name = name;
+            free.put(var.name, var);
+            return var;
         }
     }
 
     private void fixEnd(Port port) {
+        while (port.link != null && port.getLinkedPort().cell.right.link != null) {
+            port = port.getLinkedPort().cell.right;
+        }
+
         if (port.link == null) {
             Cell eps = Cell.makeEpsilon();
+            context.metrics.cells(1);
             Wire.link(port, eps.principal);
-        } else if (port.getLinkedPort().cell.right.link == null) {
-            Wire.link(port, port.getLinkedPort().cell.left.getLinkedPort());
         } else {
-            fixEnd(port.getLinkedPort().cell.right);
+            Wire.link(port, port.getLinkedPort().cell.left.getLinkedPort());
+            context.metrics.cells(-1);
         }
     }
 
     public Term toTerm() {
-        return toTerm(handle, new HashSet<>(free.keySet()));
+        // Free variables are found by the identity of their Ports, instead of searching context.free for each one
+        Map<Port, String> free = new IdentityHashMap<>();
+        for (Map.Entry<String, Port> entry : context.free.entrySet()) {
+            free.put(entry.getValue(), entry.getKey());
+        }
+        return toTerm(handle, free, new NameScope(context.free.keySet()));
     }
 
-    private Term toTerm(Port root, Set<String> names) {
-        for (Map.Entry<String, Port> entry : free.entrySet()) {
-            if (entry.getValue() == root.getLinkedPort())
-                return Term.var(entry.getKey());
+    public DeBruijnTerm toDeBruijnTerm() {
+        Map<Port, DeBruijnTerm> free = new IdentityHashMap<>();
+        for (Map.Entry<String, Port> entry : context.free.entrySet()) {
+            free.put(entry.getValue(), DeBruijnTerm.free(entry.getKey()));
         }
+        return toDeBruijnTerm(handle, free);
+    }
 
+    // Marks the place on the stack of toTerm where an application is built from the two Terms on top of results
+    private final static Object APPLY = new Object();
 
-        if (root.getLinkedPort().cell.symbol == Cell.Symbol.DEL) {
-            Cell del = root.getLinkedPort().cell;
-            if (del.term == null) {
-                del.term = toTerm(del.principal, names);
-                return del.term;
-            } else {
-                Term result = del.term;
-                del.term = null;
-                return result;
+    // Like regionToTerm, this keeps a stack of the Ports still to decode and below them the Cells (or APPLY) whose
+    // Terms are built once the Terms of those Ports are on results. Every use of a Delta gets the same Term object,
+    // so the result is a DAG as big as the net (see Term.letBind).
+    private Term toTerm(Port root, Map<Port, String> free, NameScope names) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Term> results = new ArrayDeque<>();
+        Map<Cell, Term> shared = new HashMap<>();
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                Term argument = results.pop();
+                results.push(new Term(Term.APP, results.pop(), argument, null));
+                continue;
+            }
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                if (cell.symbol == Cell.Symbol.DEL) {
+                    shared.put(cell, results.peek());
+                } else {
+                    results.push(new Term(Term.LAM, Term.var(cell.left.name), results.pop(), null));
+                    names.remove(cell.left.name);
+                }
+                continue;
             }
-        }
 
-        if (root.getLinkedPort().port == Port.PRINCIPAL) {
-            fixName(root.getLinkedPort().cell.left, names);
-            names.add(root.getLinkedPort().cell.left.name);
-            Term term =  new Term(Term.LAM, Term.var(root.getLinkedPort().cell.left.name), toTerm(root.getLinkedPort().cell.right, names), null);
-            names.remove(root.getLinkedPort().cell.left.name);
-            return term;
-        } else if (root.getLinkedPort().port == Port.RIGHT) {
-            return new Term(Term.APP, toTerm(root.getLinkedPort().cell.principal, names), toTerm(root.getLinkedPort().cell.left, names), null);
-        } else {
-            return Term.var(root.getLinkedPort().name);
+            Port linked = ((Port) next).getLinkedPort();
+            String name = free.get(linked);
+            if (name != null) {
+                results.push(Term.var(name));
+                continue;
+            }
+
+            if (linked.cell.symbol == Cell.Symbol.DEL) {
+                Term term = shared.get(linked.cell);
+                if (term == null) {
+                    work.push(linked.cell);
+                    work.push(linked.cell.principal);
+                } else {
+                    results.push(term);
+                }
+                continue;
+            }
+
+            if (linked.port == Port.PRINCIPAL) {
+                linked.cell.left.name = names.fresh(linked.cell.left.name);
+                names.add(linked.cell.left.name);
+                work.push(linked.cell);
+                work.push(linked.cell.right);
+            } else if (linked.port == Port.RIGHT) {
+                work.push(APPLY);
+                work.push(linked.cell.left);
+                work.push(linked.cell.principal);
+            } else {
+                results.push(Term.var(linked.name));
+            }
         }
+        return results.pop();
     }
 
-    private static void fixName(Port port, Set<String> names) {
-        if (names.contains(port.name)) {
-            port.name = port.name + "'";
-            fixName(port, names);
+    // As toTerm, but a variable is the number of Lambdas between it and its binder, whose depth is kept in levels. The
+    // Term of a Delta is only shared if no variable in it is bound outside of it (its reach on reaches is 0), since
+    // the indices of those depend on where each use is.
+    private DeBruijnTerm toDeBruijnTerm(Port root, Map<Port, DeBruijnTerm> free) {
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<DeBruijnTerm> results = new ArrayDeque<>();
+        Deque<Integer> reaches = new ArrayDeque<>(); // The reach of each Term on results
+        Map<Cell, Integer> levels = new HashMap<>();
+        Map<Cell, DeBruijnTerm> shared = new HashMap<>();
+        int depth = 0;
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                DeBruijnTerm argument = results.pop();
+                results.push(DeBruijnTerm.app(results.pop(), argument));
+                reaches.push(Math.max(reaches.pop(), reaches.pop()));
+                continue;
+            }
+            if (next instanceof Cell) {
+                Cell cell = (Cell) next;
+                if (cell.symbol == Cell.Symbol.DEL) {
+                    if (reaches.peek() == 0)
+                        shared.put(cell, results.peek());
+                } else {
+                    depth--;
+                    results.push(DeBruijnTerm.lam(cell.left.name, results.pop()));
+                    reaches.push(Math.max(reaches.pop() - 1, 0));
+                }
+                continue;
+            }
+
+            Port linked = ((Port) next).getLinkedPort();
+            DeBruijnTerm var = free.get(linked);
+            if (var != null) {
+                results.push(var);
+                reaches.push(0);
+                continue;
+            }
+
+            if (linked.cell.symbol == Cell.Symbol.DEL) {
+                DeBruijnTerm term = shared.get(linked.cell);
+                if (term == null) {
+                    work.push(linked.cell);
+                    work.push(linked.cell.principal);
+                } else {
+                    results.push(term);
+                    reaches.push(0);
+                }
+                continue;
+            }
+
+            if (linked.port == Port.PRINCIPAL) {
+                levels.put(linked.cell, depth);
+                depth++;
+                work.push(linked.cell);
+                work.push(linked.cell.right);
+            } else if (linked.port == Port.RIGHT) {
+                work.push(APPLY);
+                work.push(linked.cell.left);
+                work.push(linked.cell.principal);
+            } else {
+                int index = depth - 1 - levels.get(linked.cell);
+                results.push(DeBruijnTerm.bound(index));
+                reaches.push(index + 1);
+            }
         }
+        return results.pop();
     }
 
     public static void test(Term term) {
@@ -119,9 +370,9 @@ public class LambdaNet extends InteractionNet {
         net.reduce();
         long stop = System.currentTimeMillis();
         System.out.println(stop-start);
+        System.out.println(net.context.metrics);
         System.out.println(net.toTerm().prettyPrint());
         System.out.println();
-        LambdaNet.free.clear();
     }
 
     public static void main(String[] args) {
@@ -157,17 +408,459 @@ public class LambdaNet extends InteractionNet {
         test(new Term("(L f . L a . f (f (f a))) (L g . L b . g (g b))"));
     }
 
+    /*
+     * Each round reduces every cut (all of which are beta-redexes), after which the Deltas of a substituted variable
+     * share the argument instead of a bound variable. Rather than decoding and encoding the whole net, only the result
+     * of each outermost redex is decoded and encoded again in place, with its variables bound outside linked back
+     * into the Deltas of their binders. Everything outside of these regions is left as it is.
+     */
     @Override
     void reduce() {
+        Queue<Wire> cuts = context.cuts;
         while (!cuts.isEmpty()) {
-            Set<Wire> possibleCuts = new HashSet<>();
-            while (!cuts.isEmpty()) { // This loop can be made concurrent
-                possibleCuts.addAll(cuts.poll().reduce());
+            context.untilCheck -= cuts.size();
+            if (context.untilCheck <= 0)
+                context.checkBudget();
+
+            List<Wire> round = new ArrayList<>();
+            for (Wire cut : cuts) {
+                if (!cut.isStale())
+                    round.add(cut);
             }
-            Wire.fixExtra(possibleCuts);
+            cuts.clear();
+            reduceRound(round);
+        }
+    }
+
+    /*
+     * Reduces only as far as the weak head normal form, where the net is a Lambda or a variable applied to arguments:
+     * each round is the one cut on the way from handle through the functions of applications, and the cuts in the
+     * body of the Lambda or in the arguments are left queued. A body that is then erased or never read costs nothing.
+     *
+     * The net can be read by toTerm() or finished by reduce() at any time. A queued cut can be decoded along with a
+     * region before it is reduced, which leaves it stale (see decode), and reduce() skips it.
+     */
+    public void reduceWeakHead() {
+        while (true) {
+            Wire cut = weakHeadCut();
+            if (cut == null)
+                return;
+            if (--context.untilCheck <= 0)
+                context.checkBudget();
+            List<Wire> round = new ArrayList<>();
+            round.add(cut);
+            reduceRound(round);
+        }
+    }
+
+    // Returns the cut that the weak head normal form waits for, or null if the net is in weak head normal form
+    private Wire weakHeadCut() {
+        Port port = handle;
+        while (true) {
+            Port linked = port.getLinkedPort();
+            Cell cell = linked.cell;
+            if (cell == null) // A free variable
+                return null;
+            if (linked.port == Port.PRINCIPAL) // A Lambda, which is a cut if port is the function of an application
+                return (port.port == Port.PRINCIPAL)? port.link : null;
+            if ((cell.symbol == Cell.Symbol.GAM && linked.port == Port.RIGHT) || cell.symbol == Cell.Symbol.DEL)
+                port = cell.principal; // An application, or a Delta sharing a variable or an argument
+            else // A bound variable
+                return null;
+        }
+    }
+
+    private void reduceRound(List<Wire> round) {
+        context.metrics.round(round.size());
+
+        // Before reducing, remember where the result of each redex goes and which arguments are erased
+        List<Port> roots = new ArrayList<>();
+        List<Cell> erased = new ArrayList<>();
+        for (Wire cut : round) {
+            Cell app = (cut.port1.cell.left.name == null)? cut.port1.cell : cut.port2.cell;
+            Cell lam = (app == cut.port1.cell)? cut.port2.cell : cut.port1.cell;
+            roots.add(app.right.getLinkedPort());
+            Cell eps = lam.left.getLinkedPort().cell;
+            erased.add((eps != null && eps.symbol == Cell.Symbol.EPS)? eps : null);
+            context.metrics.interaction(app.symbol, lam.symbol);
+        }
+
+        reduceAll(round, context.reduced);
+        // Chains of extra Ports can cross the cuts of different workers, so they are bypassed after all have joined
+        Wire.fixExtra(context.reduced, context.possibleCuts);
+        context.reduced.clear();
+        context.possibleCuts.clear(); // The new cuts are found when the regions are encoded again
+        for (Wire cut : round) { // So that a cut still queued by reduceWeakHead is stale
+            cut.port1.link = null;
+            cut.port2.link = null;
+        }
+
+        if (!rebuildRegions(roots, erased)) {
+            context.metrics.reencode();
             Term term = this.toTerm();
-            //System.out.println(term.prettyPrint());
-            handle = new LambdaNet(term).handle;
+            context.cuts.clear(); // Any cuts still queued by reduceWeakHead are queued again by the encoding
+            handle = new LambdaNet(term, context).handle;
+        }
+    }
+
+    // Returns false if the regions could not be rebuilt in place, in which case the whole net must be
+    private boolean rebuildRegions(List<Port> roots, List<Cell> erased) {
+        Set<Port> rootSet = new HashSet<>(roots);
+        List<Integer> outermost = new ArrayList<>();
+        List<Set<String>> outerNames = new ArrayList<>();
+
+        // Find the regions that are not inside another region or inside an erased argument, without changing the net
+        for (int i = 0; i < roots.size(); i++) {
+            Set<String> names = new HashSet<>(context.free.keySet());
+            int position = locate(roots.get(i), rootSet, names);
+            if (position == UNKNOWN)
+                return false;
+            if (position == OUTERMOST) {
+                outermost.add(i);
+                outerNames.add(names);
+            }
+        }
+
+        // Every erased argument is removed, also one inside another region that would otherwise stay linked to the
+        // Deltas of the variables it uses, and it is done first so that no region is decoded with such a use in it
+        eraseRegions(erased);
+
+        for (int k = 0; k < outermost.size(); k++) {
+            if (!rebuildRegion(roots.get(outermost.get(k)), outerNames.get(k)))
+                return false;
+            context.metrics.regionRebuilt();
+        }
+        return true;
+    }
+
+    private final static int OUTERMOST = 0;
+    private final static int NESTED = 1; // Inside another region, or inside an erased argument
+    private final static int UNKNOWN = 2;
+
+    // Walks from root up to handle, adding the names of the Lambdas on the way to names
+    private int locate(Port root, Set<Port> roots, Set<String> names) {
+        if (root.isExtra()) // The Cell of root was itself part of a redex
+            return NESTED;
+
+        Port slot = root;
+        while (true) {
+            if (slot != root && roots.contains(slot))
+                return NESTED;
+            if (slot == handle)
+                return OUTERMOST;
+
+            Cell cell = slot.cell;
+            if (cell == null)
+                return UNKNOWN;
+
+            Port up;
+            if (cell.symbol == Cell.Symbol.EPS) {
+                return NESTED;
+            } else if (cell.symbol == Cell.Symbol.DEL && slot == cell.principal) {
+                up = cell.left; // This is a shared argument, continue from one of the places it is used
+            } else if (cell.symbol == Cell.Symbol.GAM && cell.left.name != null && slot == cell.right) {
+                names.add(cell.left.name);
+                up = cell.principal;
+            } else if (cell.symbol == Cell.Symbol.GAM && cell.left.name == null && slot != cell.right) {
+                up = cell.right;
+            } else {
+                return UNKNOWN;
+            }
+            slot = up.getLinkedPort();
+        }
+    }
+
+    // Decodes the region below root and encodes it again in its place
+    private boolean rebuildRegion(Port root, Set<String> names) {
+        Map<Cell, List<Port>> dangling = new LinkedHashMap<>();
+        Term term = regionToTerm(root, new NameScope(names), new HashSet<>(), new HashMap<>(), new HashMap<>(), dangling,
+                null);
+
+        // Variables bound outside the region are encoded by name, so two different binders must not share one
+        Set<String> boundNames = new HashSet<>();
+        for (Cell binder : dangling.keySet()) {
+            if (!boundNames.add(binder.left.name))
+                return false;
+        }
+
+        Map<String, Port> bound = new HashMap<>();
+        Map<Port, Cell> splices = new HashMap<>();
+        for (Map.Entry<Cell, List<Port>> entry : dangling.entrySet()) {
+            Port binderPort = entry.getKey().left;
+            detach(entry.getValue(), new ArrayList<>());
+
+            Port attach;
+            if (binderPort.link == null) { // Every use of the variable was in the region
+                attach = binderPort;
+            } else { // Otherwise, add a Delta below the binder for the uses in the new region
+                Cell splice = Cell.makeDelta();
+                context.metrics.cells(1);
+                Port used = binderPort.getLinkedPort();
+                Wire.link(splice.principal, binderPort);
+                Wire.link(splice.left, used);
+                attach = splice.right;
+                splices.put(attach, splice);
+            }
+            bound.put(binderPort.name, attach);
+        }
+
+        Map<String, Port> attached = new HashMap<>(bound);
+        linkToNet(root, new LambdaNet(term, bound, context));
+        if (root.link.isCut())
+            context.cuts.add(root.link);
+
+        for (Port attach : attached.values()) {
+            Cell splice = splices.get(attach);
+            if (attach.link == null && splice != null) {
+                Wire.link(splice.principal.getLinkedPort(), splice.left.getLinkedPort());
+                context.metrics.cells(-1);
+            } else {
+                fixEnd(attach);
+            }
+        }
+        return true;
+    }
+
+    /*
+     * Removes the arguments that were erased (the Epsilons they are linked to, or null), unlinking them from the
+     * variables bound outside them and from the arguments they share with other uses. An argument that is then used
+     * by nothing else is removed as well.
+     *
+     * One erased argument can be inside another, so the binders and shared Deltas decoded by one are kept for the
+     * others, and neither decodes the same Cell twice.
+     */
+    private void eraseRegions(List<Cell> erased) {
+        Deque<Cell> pending = new ArrayDeque<>();
+        for (Cell eps : erased) {
+            if (eps != null)
+                pending.push(eps);
+        }
+        Set<Cell> scope = new HashSet<>();
+        Map<Cell, Term> shared = new HashMap<>();
+        while (!pending.isEmpty()) {
+            Port root = pending.pop().principal;
+            if (root.link == null) // The Epsilon was decoded along with its binder
+                continue;
+            context.metrics.cells(-1); // The Epsilon at root
+            Map<Cell, List<Port>> dangling = new LinkedHashMap<>();
+            List<Port> sharedUses = new ArrayList<>();
+            regionToTerm(root, new NameScope(), scope, shared, new HashMap<>(), dangling, sharedUses);
+
+            List<Port> unused = new ArrayList<>();
+            for (List<Port> uses : dangling.values()) {
+                detach(uses, unused);
+            }
+            detach(sharedUses, unused);
+
+            for (Port port : unused) {
+                if (port.cell == null) // A free variable
+                    continue;
+                if (port.port == Port.LEFT) { // A binder
+                    fixEnd(port);
+                } else { // A shared argument
+                    Cell next = Cell.makeEpsilon();
+                    context.metrics.cells(1);
+                    Wire.link(next.principal, port);
+                    pending.push(next);
+                }
+            }
+        }
+    }
+
+    // Unlinks the given uses of a variable or shared argument, and removes the Deltas that are left with nothing to
+    // share. The binders, free variables and shared arguments that are left unlinked are added to unused.
+    private void detach(List<Port> ports, List<Port> unused) {
+        for (Port port : ports) {
+            port.link = null;
+        }
+        Set<Cell> removed = new HashSet<>();
+        for (Port port : ports) {
+            collapse(port, removed, unused);
+        }
+    }
+
+    private void collapse(Port port, Set<Cell> removed, List<Port> unused) {
+        while (true) {
+            Cell del = port.cell;
+            if (del == null || del.symbol != Cell.Symbol.DEL) {
+                unused.add(port);
+                return;
+            }
+            if (!removed.add(del))
+                return;
+            context.metrics.cells(-1);
+
+            Port other = (port == del.left)? del.right : del.left;
+            if (other.link != null) {
+                Wire.link(del.principal.getLinkedPort(), other.getLinkedPort());
+                return;
+            }
+            port = del.principal.getLinkedPort(); // The Delta above is left with nothing to share through port
+            port.link = null;
+        }
+    }
+
+    /*
+     * Like toTerm, but removes the Term of a Delta from shared once both of its uses have it, and adds to dangling
+     * the Ports (of a binder or of its Deltas) through which the region uses a variable bound outside of it.
+     * If sharedUses is not null the region is being erased, and the Ports of Deltas through which it uses a shared
+     * argument are added to it instead of decoding the argument, which may have other uses.
+     * The Cells decoded are left behind, so they are no longer counted as live.
+     *
+     * Regions can be as deep as the term, so instead of recursing this keeps a stack of work: the Ports still to
+     * decode, and below them the Cells whose Terms are built once the Terms of those Ports are on results.
+     */
+    private Term regionToTerm(Port root, NameScope names, Set<Cell> scope, Map<Cell, Term> shared,
+                              Map<Cell, Cell> binders, Map<Cell, List<Port>> dangling, List<Port> sharedUses) {
+        Deque<Object> work = new ArrayDeque<>();
+        List<Term> results = new ArrayList<>(); // Not a Deque, since an erased shared argument has a null Term
+        work.push(root);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next instanceof Port)
+                decode((Port) next, names, scope, shared, binders, dangling, sharedUses, work, results);
+            else
+                build((Cell) next, names, scope, shared, sharedUses, results);
+        }
+        return results.get(0);
+    }
+
+    // Adds the Term of the region below root to results, or the work to build it to work
+    private void decode(Port root, NameScope names, Set<Cell> scope, Map<Cell, Term> shared,
+                        Map<Cell, Cell> binders, Map<Cell, List<Port>> dangling, List<Port> sharedUses,
+                        Deque<Object> work, List<Term> results) {
+        Port linked = root.getLinkedPort();
+        Cell cell = linked.cell;
+        if (cell == null) { // A free variable
+            results.add(Term.var(linked.name));
+            return;
+        }
+
+        if (cell.symbol == Cell.Symbol.DEL) {
+            Cell binder = binderOf(cell, binders);
+            if (binder != null && !scope.contains(binder)) {
+                dangling.computeIfAbsent(binder, key -> new ArrayList<>()).add(linked);
+                results.add(Term.var(binder.left.name));
+            } else if (binder == null && sharedUses != null) {
+                sharedUses.add(linked);
+                results.add(null);
+            } else {
+                Term term = shared.remove(cell);
+                if (term != null) {
+                    results.add(term);
+                } else {
+                    context.metrics.cells(-1);
+                    work.push(cell);
+                    work.push(cell.principal);
+                }
+            }
+            return;
+        }
+
+        if (linked.port == Port.PRINCIPAL) {
+            context.metrics.cells(-1);
+            if (root.port == Port.PRINCIPAL) // A cut decoded with its region, whose Wire is left stale in the queue
+                linked.link = null;
+            if (cell.left.link != null && cell.left.getLinkedPort().cell.symbol == Cell.Symbol.EPS) {
+                // An unused variable has an Epsilon, which is unlinked so that it is not also erased by eraseRegions
+                context.metrics.cells(-1);
+                cell.left.getLinkedPort().link = null;
+                cell.left.link = null;
+            }
+            cell.left.name = names.fresh(cell.left.name);
+            names.add(cell.left.name);
+            scope.add(cell);
+            work.push(cell);
+            work.push(cell.right);
+        } else if (linked.port == Port.RIGHT) {
+            context.metrics.cells(-1);
+            work.push(cell);
+            work.push(cell.left);
+            work.push(cell.principal); // The function is decoded first
+        } else {
+            if (!scope.contains(cell))
+                dangling.computeIfAbsent(cell, key -> new ArrayList<>()).add(linked);
+            results.add(Term.var(cell.left.name));
+        }
+    }
+
+    // Replaces the Terms on top of results with the Term of cell, once decode has put them there
+    private void build(Cell cell, NameScope names, Set<Cell> scope, Map<Cell, Term> shared, List<Port> sharedUses,
+                       List<Term> results) {
+        int last = results.size() - 1;
+        if (cell.symbol == Cell.Symbol.DEL) { // The Term stays on results for this use, and is kept for the other
+            shared.put(cell, results.get(last));
+        } else if (cell.left.name != null) {
+            results.set(last, new Term(Term.LAM, Term.var(cell.left.name), results.get(last), null));
+            if (sharedUses == null) // Binders that were erased stay in scope for the shared arguments erased later
+                scope.remove(cell);
+            names.remove(cell.left.name);
+        } else {
+            Term argument = results.remove(last);
+            results.set(last - 1, new Term(Term.APP, results.get(last - 1), argument, null));
+        }
+    }
+
+    // Returns the Lambda binding the variable that del shares, or null if del shares an argument
+    private static Cell binderOf(Cell del, Map<Cell, Cell> binders) {
+        List<Cell> path = new ArrayList<>();
+        Cell binder = null;
+        Cell current = del;
+        while (true) {
+            if (binders.containsKey(current)) {
+                binder = binders.get(current);
+                break;
+            }
+            path.add(current);
+            Port up = current.principal.getLinkedPort();
+            if (up.cell != null && up.cell.symbol == Cell.Symbol.DEL) {
+                current = up.cell;
+            } else {
+                if (up.cell != null && up.port == Port.LEFT)
+                    binder = up.cell;
+                break;
+            }
+        }
+        for (Cell cell : path) {
+            binders.put(cell, binder);
+        }
+        return binder;
+    }
+
+    // The cuts of a round are disjoint and Wire.reduce only relinks the Ports of its own two Cells,
+    // so each worker reduces its share of the round without locking
+    private void reduceAll(List<Wire> round, WireBuffer possibleCuts) {
+        int workers = Math.min(context.threads, round.size() / PARALLEL_THRESHOLD);
+        if (workers <= 1) {
+            for (Wire cut : round) {
+                cut.reduce(possibleCuts);
+            }
+            return;
+        }
+
+        context.metrics.parallelRound();
+        List<Callable<WireBuffer>> tasks = new ArrayList<>();
+        int chunk = (round.size() + workers - 1) / workers;
+        for (int start = 0; start < round.size(); start += chunk) {
+            List<Wire> share = round.subList(start, Math.min(start + chunk, round.size()));
+            tasks.add(() -> {
+                WireBuffer result = new WireBuffer(4 * share.size());
+                for (Wire cut : share) {
+                    cut.reduce(result);
+                }
+                return result;
+            });
+        }
+
+        try {
+            for (Future<WireBuffer> result : context.pool().invokeAll(tasks)) {
+                possibleCuts.addAll(result.get());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("Interrupted while reducing", e);
+        } catch (ExecutionException e) {
+            throw new RuntimeException("Reduction failed", e.getCause());
         }
     }
-}
\ No newline at end of file
+}
@@ -0,0 +1,36 @@
+package FullParallelReduction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class NameScopeTest {
+    @Test
+    public void freshTest() {
+        NameScope names = new NameScope(Arrays.asList("x", "y"));
+        assertEquals("z", names.fresh("z"));
+        assertEquals("x'", names.fresh("x"));
+
+        names.add("x'");
+        assertEquals("x''", names.fresh("x"));
+        assertEquals("x''", names.fresh("x'"));
+
+        names.remove("x");
+        assertEquals("x", names.fresh("x"));
+        assertEquals("x''", names.fresh("x'"));
+    }
+
+    @Test
+    public void manyNamesTest() {
+        NameScope names = new NameScope();
+        String name = "x";
+        for (int i = 0; i < TestUtil.TEST_SIZE; i++) {
+            name = names.fresh("x");
+            assertFalse(names.contains(name));
+            names.add(name);
+        }
+        assertEquals(TestUtil.TEST_SIZE, name.length());
+    }
+}
@@ -0,0 +1,264 @@
+package FullParallelReduction;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/*
+ * Stores an interaction net as a struct-of-arrays instead of Cell/Port/Wire objects.
+ *
+ * Each cell takes four consecutive ints of a single array: a tag followed by the slots of its
+ * principal, left and right ports. The tag packs the symbol with the name of the left port (for Lambdas),
+ * and each slot holds the address of the port it is linked to, where an address packs the index of a cell
+ * with a port number (Port.PRINCIPAL, Port.LEFT or Port.RIGHT). This makes a cell 16 bytes.
+ *
+ * The ints are kept in an int[], or in pages of a file mapped into memory for a NetHeap made by mapped(file), so that
+ * a net can be bigger than the Java heap and the OS pages out the cells that are not being used. Either way an
+ * address is an int, which allows up to MAX_CELLS cells.
+ */
+public class NetHeap implements Closeable {
+    // The first three symbols are those of Cell.Symbol, and they are the only ones that interact
+    final static int GAM = 0;
+    final static int EPS = 1;
+    final static int DEL = 2;
+    final static int FREE = 3; // A free variable, the name is that of the variable and only principal is used
+    final static int ROOT = 4; // The handle of a net, only principal is used
+    final static int DEAD = 5; // A consumed cell, its slots are NONE or the address its port was moved to
+
+    final static int NONE = -1; // The value of a slot that is not linked
+
+    private final static int CELL_SIZE = 4;
+    private final static int SYMBOL_BITS = 3;
+    private final static int SYMBOL_MASK = (1 << SYMBOL_BITS) - 1;
+
+    final static int MAX_CELLS = 1 << 29; // The most cells whose addresses fit in an int
+    final static int MAX_LENGTH = (Integer.MAX_VALUE - 8) & -CELL_SIZE; // Of the longest int[] a JVM can make
+
+    private int[] data; // null in a Mapped
+    long capacity; // The number of ints that can be stored before grow() is needed
+    private int size = 0;
+
+
+    // Names are interned so that the tag only has to hold an int
+    private final List<String> names = new ArrayList<>();
+    private final Map<String, Integer> nameIds = new HashMap<>();
+
+    public NetHeap() {
+        this(1024);
+    }
+
+    public NetHeap(int capacity) {
+        data = new int[CELL_SIZE * Math.max(capacity, 1)];
+        this.capacity = data.length;
+    }
+
+    private NetHeap(int[] data) {
+        this.data = data;
+    }
+
+    // A NetHeap that keeps its cells in file, which is overwritten, and deleted by close()
+    public static NetHeap mapped(Path file) throws IOException {
+        return new Mapped(file);
+    }
+
+    static int address(int cell, int port) {
+        return (cell << 2) | port;
+    }
+
+    static int cellOf(int address) {
+        return address >> 2;
+    }
+
+    static int portOf(int address) {
+        return address & 3;
+    }
+
+    static boolean interacts(int symbol) {
+        return symbol <= DEL;
+    }
+
+    // Returns the index of a new cell with all slots unlinked
+    int allocate(int symbol) {
+        if ((long) CELL_SIZE * size == capacity)
+            grow();
+
+        int cell = size++;
+        int base = cell * CELL_SIZE;
+        write(base, symbol);
+        write(base + 1, NONE);
+        write(base + 2, NONE);
+        write(base + 3, NONE);
+        return cell;
+    }
+
+    // Makes room for more cells, here by doubling data
+    void grow() {
+        data = Arrays.copyOf(data, grownLength(data.length));
+        capacity = data.length;
+    }
+
+    // Twice length, as long as an int[] can be that long
+    static int grownLength(int length) {
+        if (length >= MAX_LENGTH)
+            throw new RuntimeException("NetHeap is full");
+        return (int) Math.min(2L * length, MAX_LENGTH);
+    }
+
+    int read(int index) {
+        return data[index];
+    }
+
+    void write(int index, int value) {
+        data[index] = value;
+    }
+
+    int symbol(int cell) {
+        return read(cell * CELL_SIZE) & SYMBOL_MASK;
+    }
+
+    void setSymbol(int cell, int symbol) {
+        write(cell * CELL_SIZE, (read(cell * CELL_SIZE) & ~SYMBOL_MASK) | symbol);
+    }
+
+    // Returns the id of the name of cell, or NONE if it has no name
+    int name(int cell) {
+        return (read(cell * CELL_SIZE) >>> SYMBOL_BITS) - 1;
+    }
+
+    void setName(int cell, int name) {
+        write(cell * CELL_SIZE, ((name + 1) << SYMBOL_BITS) | symbol(cell));
+    }
+
+    // Returns the address linked to the port at address
+    int get(int address) {
+        return read(address + 1);
+    }
+
+    void set(int address, int target) {
+        write(address + 1, target);
+    }
+
+    void link(int address1, int address2) {
+        set(address1, address2);
+        set(address2, address1);
+    }
+
+    int intern(String name) {
+        Integer id = nameIds.get(name);
+        if (id == null) {
+            id = names.size();
+            names.add(name);
+            nameIds.put(name, id);
+        }
+        return id;
+    }
+
+    String nameOf(int id) {
+        return names.get(id);
+    }
+
+    // The number of cells allocated so far, including DEAD ones
+    public int size() {
+        return size;
+    }
+
+    // The number of bytes used to store cells, in the file if there is one
+    public long bytes() {
+        return 4L * capacity;
+    }
+
+    // Forgets every cell, keeping the storage and the interned names
+    void clear() {
+        size = 0;
+    }
+
+    // Unmaps and deletes the file of a NetHeap made by mapped(file), after which it can not be used
+    @Override
+    public void close() throws IOException {
+    }
+
+    /*
+     * Unmaps buffer now rather than once it is collected, so that its file can be truncated or deleted, even on
+     * Windows. Nothing may read or write buffer, or a view of it, afterwards.
+     */
+    static void unmap(MappedByteBuffer buffer) {
+        try {
+            Field field = Class.forName("sun.misc.Unsafe").getDeclaredField("theUnsafe");
+            field.setAccessible(true);
+            Object unsafe = field.get(null);
+            unsafe.getClass().getMethod("invokeCleaner", ByteBuffer.class).invoke(unsafe, buffer);
+        } catch (ReflectiveOperationException e) {
+            throw new RuntimeException("Could not unmap a file", e);
+        }
+    }
+
+    // Stores the ints in pages of a file mapped into memory, mapping one more page whenever it grows
+    private static class Mapped extends NetHeap {
+        private final static int PAGE_BITS = 24; // Each page holds 2^24 ints, which is 64 MB
+        private final static int PAGE_MASK = (1 << PAGE_BITS) - 1;
+
+        private final Path file;
+        private final FileChannel channel;
+        private MappedByteBuffer[] maps = new MappedByteBuffer[0];
+        private IntBuffer[] pages = new IntBuffer[0]; // Views of maps
+
+        Mapped(Path file) throws IOException {
+            super(null);
+            this.file = file;
+            channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+            grow();
+        }
+
+        @Override
+        void grow() {
+            if (capacity == (long) CELL_SIZE * MAX_CELLS)
+                throw new RuntimeException("NetHeap is full");
+            MappedByteBuffer map;
+            try {
+                map = channel.map(FileChannel.MapMode.READ_WRITE, 4L * capacity, 4L << PAGE_BITS);
+            } catch (IOException e) {
+                throw new RuntimeException("Could not map the file of the NetHeap", e);
+            }
+            maps = Arrays.copyOf(maps, maps.length + 1);
+            maps[maps.length - 1] = map;
+            pages = Arrays.copyOf(pages, pages.length + 1);
+            pages[pages.length - 1] = map.order(ByteOrder.nativeOrder()).asIntBuffer();
+            capacity += 1 << PAGE_BITS;
+        }
+
+        @Override
+        int read(int index) {
+            return pages[index >>> PAGE_BITS].get(index & PAGE_MASK);
+        }
+
+        @Override
+        void write(int index, int value) {
+            pages[index >>> PAGE_BITS].put(index & PAGE_MASK, value);
+        }
+
+        @Override
+        public void close() throws IOException {
+            pages = null;
+            for (MappedByteBuffer map : maps) {
+                unmap(map);
+            }
+            maps = null;
+            channel.close();
+            Files.delete(file);
+        }
+    }
+}
@@ -0,0 +1,105 @@
+package FullParallelReduction;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReductionBudgetTest {
+    private final static String OMEGA = "(L x . x x) (L x . x x)";
+    private final static String GROWING = "(L x . x x x) (L x . x x x)";
+
+    @Test
+    public void normalFormTest() {
+        LambdaNet net = new LambdaNet(new Term("(L f . L a . f (f a)) (L g . L b . g (g b))"));
+        assertNull(net.reduce(ReductionBudget.UNLIMITED.withInteractions(1000)));
+        assertEquals(new Term("L a . L b . a (a (a (a b)))"), net.toTerm());
+    }
+
+    @Test
+    public void interactionsTest() {
+        LambdaNet net = new LambdaNet(new Term(OMEGA));
+        assertEquals(ReductionBudget.Limit.INTERACTIONS, net.reduce(ReductionBudget.UNLIMITED.withInteractions(10000)));
+        assertTrue(net.context.metrics.getInteractions() >= 10000);
+        assertTrue(net.context.metrics.getInteractions() < 11000);
+    }
+
+    @Test
+    public void liveCellsTest() {
+        LambdaNet net = new LambdaNet(new Term(GROWING));
+        assertEquals(ReductionBudget.Limit.LIVE_CELLS, net.reduce(ReductionBudget.UNLIMITED.withLiveCells(10000)));
+        assertTrue(net.context.metrics.getPeakLiveCells() > 10000);
+        assertEquals(0, net.context.metrics.getLiveCells());
+    }
+
+    @Test
+    public void deadlineTest() {
+        LambdaNet net = new LambdaNet(new Term(OMEGA));
+        long start = System.nanoTime();
+        assertEquals(ReductionBudget.Limit.DEADLINE,
+                net.reduce(ReductionBudget.UNLIMITED.withTimeout(50, TimeUnit.MILLISECONDS)));
+        assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+    }
+
+    @Test
+    public void cancelTest() throws Exception {
+        ReductionContext context = new ReductionContext();
+        LambdaNet net = new LambdaNet(new Term(OMEGA), context);
+        Thread canceller = new Thread(() -> {
+            try {
+                Thread.sleep(50);
+            } catch (InterruptedException e) {
+                return;
+            }
+            context.cancel();
+        });
+        canceller.start();
+        assertEquals(ReductionBudget.Limit.CANCELLED, net.reduce(ReductionBudget.UNLIMITED.withInteractions(1L << 40)));
+        canceller.join();
+    }
+
+    @Test
+    public void sliceTest() {
+        // Two reductions take turns on one thread, and each ends where reduce() would
+        LambdaNet first = new LambdaNet(new Term("(L f . L a . f (f (f a))) (L g . L b . g (g b))"));
+        LambdaNet second = new LambdaNet(new Term("(L x . x x) (L f . L a . f (f a))"));
+        int slices = 0;
+        boolean firstDone = false;
+        boolean secondDone = false;
+        while (!firstDone || !secondDone) {
+            if (!firstDone)
+                firstDone = first.reduceSlice(1) == null;
+            if (!secondDone)
+                secondDone = second.reduceSlice(1) == null;
+            slices++;
+        }
+        assertTrue(slices > 2);
+        assertEquals(new Term("L a . L b . a (a (a (a (a (a (a (a b)))))))"), first.toTerm());
+        assertEquals(new Term("L a . L b . a (a (a (a b)))"), second.toTerm());
+    }
+
+    @Test
+    public void endlessSliceTest() {
+        LambdaNet net = new LambdaNet(new Term(OMEGA));
+        for (int i = 1; i <= 10; i++) {
+            assertEquals(ReductionBudget.Limit.INTERACTIONS, net.reduceSlice(100));
+            assertTrue(net.context.metrics.getInteractions() >= 100 * i);
+        }
+
+        net.context.cancel();
+        assertEquals(ReductionBudget.Limit.CANCELLED, net.reduceSlice(100));
+    }
+
+    @Test
+    public void reuseTest() {
+        // A stopped reduction leaves nothing behind in its context
+        ReductionContext context = new ReductionContext();
+        LambdaNet net = new LambdaNet(new Term(GROWING), context);
+        assertEquals(ReductionBudget.Limit.INTERACTIONS, net.reduce(ReductionBudget.UNLIMITED.withInteractions(500)));
+
+        net = new LambdaNet(new Term("(L x . x x) (L f . L a . f (f a))"), context);
+        assertNull(net.reduce(ReductionBudget.UNLIMITED.withLiveCells(1000)));
+        assertEquals(new Term("L a . L b . a (a (a (a b)))"), net.toTerm());
+    }
+}
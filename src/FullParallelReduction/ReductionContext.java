@@ -0,0 +1,106 @@
+package FullParallelReduction;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * The mutable state of one reduction: the queue of cuts and the free variables.
+ * Every InteractionNet encoded with the same context shares this state, and nets with different contexts
+ * can be reduced at the same time on different threads.
+ */
+public class ReductionContext {
+    final Queue<Wire> cuts = new ArrayDeque<>();
+    final Map<String, Port> free = new HashMap<>();
+    final ReductionMetrics metrics = new ReductionMetrics();
+
+    // Reused by the reduction so that reducing a cut does not allocate collections
+    final WireBuffer reduced = new WireBuffer();
+    final WireBuffer possibleCuts = new WireBuffer();
+
+    // The number of workers that reduce the cuts of a round, and the pool they run in, made when it is first needed
+    int threads = Runtime.getRuntime().availableProcessors();
+    private ExecutorService pool = null;
+
+    // The most cuts reduced between two checks of the budget, which keeps the checks out of the way of reduce()
+    private final static int CHECK_INTERVAL = 1024;
+
+    // The budget of the running InteractionNet.reduce(ReductionBudget), if any
+    private ReductionBudget budget = ReductionBudget.UNLIMITED;
+    private long deadline = 0;
+    int untilCheck = Integer.MAX_VALUE; // The cuts reduce() may reduce before it calls checkBudget()
+    private volatile boolean cancelled = false;
+
+    // Like the rest of the context, to be called from the thread that reduces in it, between reductions
+    public void setThreads(int threads) {
+        if (threads < 1)
+            throw new IllegalArgumentException("Need at least one thread");
+        this.threads = threads;
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
+    // The workers stop once they are idle, so a context that is dropped does not keep threads alive
+    ExecutorService pool() {
+        if (pool == null) {
+            ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 1, TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<>(), runnable -> {
+                        Thread thread = new Thread(runnable, "LambdaNet-reduce");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+            executor.allowCoreThreadTimeOut(true);
+            pool = executor;
+        }
+        return pool;
+    }
+
+    // Stops the budgeted reduction running in this context, or the next one to start, with Limit.CANCELLED
+    // This is the only method of a context that can be called from another thread
+    public void cancel() {
+        cancelled = true;
+    }
+
+    void startBudget(ReductionBudget budget) {
+        this.budget = budget;
+        deadline = (budget.timeoutNanos == Long.MAX_VALUE)? Long.MAX_VALUE : System.nanoTime() + budget.timeoutNanos;
+        untilCheck = 0; // Checked before the first cut
+    }
+
+    void endBudget() {
+        budget = ReductionBudget.UNLIMITED;
+        untilCheck = Integer.MAX_VALUE;
+    }
+
+    // Throws ReductionBudget.Exceeded if a limit is reached, otherwise sets the cuts to reduce until the next check
+    void checkBudget() {
+        if (budget == ReductionBudget.UNLIMITED) { // A plain reduce() cannot be stopped
+            untilCheck = Integer.MAX_VALUE;
+            return;
+        }
+
+        long interactions = metrics.getInteractions();
+        if (cancelled)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.CANCELLED);
+        if (interactions >= budget.maxInteractions)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.INTERACTIONS);
+        if (metrics.getLiveCells() > budget.maxLiveCells)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.LIVE_CELLS);
+        if (deadline != Long.MAX_VALUE && System.nanoTime() - deadline >= 0)
+            throw new ReductionBudget.Exceeded(ReductionBudget.Limit.DEADLINE);
+        untilCheck = (int) Math.min(CHECK_INTERVAL, budget.maxInteractions - interactions);
+    }
+
+    // Drops what is left of a reduction that was stopped, so that new nets can be encoded and reduced in this context
+    void abandon() {
+        cuts.clear();
+        reduced.clear();
+        possibleCuts.clear();
+        metrics.clearLiveCells();
+        cancelled = false;
+    }
+}
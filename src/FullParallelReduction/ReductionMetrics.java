@@ -0,0 +1,190 @@
+package FullParallelReduction;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.lang.management.ManagementFactory;
+
+/*
+ * Counters describing one reduction, kept by its ReductionContext. They are only written by the thread running
+ * the reduction and never by the workers of a round, so the increments need no locking, and they are written
+ * opaquely so that any other thread, including a JMX client, can read them while it runs without slowing the
+ * reduction down.
+ */
+public class ReductionMetrics implements ReductionMetricsMBean {
+    private final static int ANNIHILATIONS = 0; // Two Cells with the same symbol, which includes every beta-reduction
+    private final static int ERASURES = 1; // An Epsilon and another symbol
+    private final static int COMMUTATIONS = 2; // A GAM and a DEL
+
+    private final static int ROUNDS = 3;
+    private final static int REGIONS_REBUILT = 4; // The regions decoded and encoded again in place after a round
+    private final static int REENCODES = 5; // The rounds after which the whole net had to be decoded and encoded again
+
+    private final static int PEAK_CUTS = 6; // The most cuts in a round
+
+    // The Cells that are part of the net, made by encoding or by reduction and not yet consumed or decoded
+    private final static int LIVE_CELLS = 7;
+    private final static int PEAK_LIVE_CELLS = 8;
+
+    private final static int PARALLEL_ROUNDS = 9; // The rounds whose cuts were shared out among the workers
+
+    private final static VarHandle COUNTS = MethodHandles.arrayElementVarHandle(long[].class);
+    private final long[] counts = new long[10];
+
+    private ObjectName name = null;
+
+    // Counts the interaction of a cut between Cells with these symbols
+    void interaction(Cell.Symbol symbol1, Cell.Symbol symbol2) {
+        if (symbol1 == symbol2) {
+            add(ANNIHILATIONS, 1);
+            cells(-2);
+        } else if (symbol1 == Cell.Symbol.EPS || symbol2 == Cell.Symbol.EPS) {
+            add(ERASURES, 1); // Two Epsilons replace the two Cells
+        } else {
+            add(COMMUTATIONS, 1);
+            cells(2);
+        }
+    }
+
+    void round(int cuts) {
+        add(ROUNDS, 1);
+        max(PEAK_CUTS, cuts);
+    }
+
+    void parallelRound() {
+        add(PARALLEL_ROUNDS, 1);
+    }
+
+    // Adds count (which may be negative) to the number of live Cells
+    void cells(int count) {
+        long live = counts[LIVE_CELLS] + count;
+        set(LIVE_CELLS, live);
+        max(PEAK_LIVE_CELLS, live);
+    }
+
+    // The Cells of a net whose reduction was abandoned are not counted anymore
+    void clearLiveCells() {
+        set(LIVE_CELLS, 0);
+    }
+
+    void regionRebuilt() {
+        add(REGIONS_REBUILT, 1);
+    }
+
+    // The whole net is decoded, and the Cells counted again as it is encoded
+    void reencode() {
+        add(REENCODES, 1);
+        set(LIVE_CELLS, 0);
+    }
+
+    // Only the thread running the reduction writes, so it can read its own counts plainly. The opaque writes are never
+    // torn and are seen by other threads without the fences of a volatile write.
+    private void set(int counter, long value) {
+        COUNTS.setOpaque(counts, counter, value);
+    }
+
+    private void add(int counter, long count) {
+        set(counter, counts[counter] + count);
+    }
+
+    private void max(int counter, long value) {
+        if (value > counts[counter])
+            set(counter, value);
+    }
+
+    private long get(int counter) {
+        return (long) COUNTS.getOpaque(counts, counter);
+    }
+
+    @Override
+    public long getAnnihilations() {
+        return get(ANNIHILATIONS);
+    }
+
+    @Override
+    public long getErasures() {
+        return get(ERASURES);
+    }
+
+    @Override
+    public long getCommutations() {
+        return get(COMMUTATIONS);
+    }
+
+    // The cuts reduced by every rule
+    @Override
+    public long getInteractions() {
+        return get(ANNIHILATIONS) + get(ERASURES) + get(COMMUTATIONS);
+    }
+
+    @Override
+    public long getRounds() {
+        return get(ROUNDS);
+    }
+
+    @Override
+    public long getParallelRounds() {
+        return get(PARALLEL_ROUNDS);
+    }
+
+    @Override
+    public long getRegionsRebuilt() {
+        return get(REGIONS_REBUILT);
+    }
+
+    @Override
+    public long getReencodes() {
+        return get(REENCODES);
+    }
+
+    @Override
+    public int getPeakCuts() {
+        return (int) get(PEAK_CUTS);
+    }
+
+    @Override
+    public long getLiveCells() {
+        return get(LIVE_CELLS);
+    }
+
+    @Override
+    public long getPeakLiveCells() {
+        return get(PEAK_LIVE_CELLS);
+    }
+
+    // Registers these metrics with the platform MBeanServer under FullParallelReduction:type=Reduction,name=name
+    public synchronized ObjectName register(String name) {
+        try {
+            unregister();
+            ObjectName objectName = new ObjectName("FullParallelReduction:type=Reduction,name=" +
+                    ObjectName.quote(name));
+            ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+            this.name = objectName;
+            return objectName;
+        } catch (JMException e) {
+            throw new RuntimeException("Could not register metrics as " + name, e);
+        }
+    }
+
+    public synchronized void unregister() {
+        if (name == null)
+            return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        } catch (JMException e) {
+            throw new RuntimeException("Could not unregister metrics " + name, e);
+        } finally {
+            name = null;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "annihilations=" + get(ANNIHILATIONS) + " erasures=" + get(ERASURES) +
+                " commutations=" + get(COMMUTATIONS) + " rounds=" + get(ROUNDS) +
+                " parallelRounds=" + get(PARALLEL_ROUNDS) + " regionsRebuilt=" + get(REGIONS_REBUILT) + " reencodes=" + get(REENCODES) +
+                " peakCuts=" + get(PEAK_CUTS) + " liveCells=" + get(LIVE_CELLS) +
+                " peakLiveCells=" + get(PEAK_LIVE_CELLS);
+    }
+}
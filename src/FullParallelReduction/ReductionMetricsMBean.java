@@ -0,0 +1,26 @@
+package FullParallelReduction;
+
+// The attributes of ReductionMetrics that are exposed through JMX
+public interface ReductionMetricsMBean {
+    long getAnnihilations();
+
+    long getErasures();
+
+    long getCommutations();
+
+    long getInteractions();
+
+    long getRounds();
+
+    long getParallelRounds();
+
+    long getRegionsRebuilt();
+
+    long getReencodes();
+
+    int getPeakCuts();
+
+    long getLiveCells();
+
+    long getPeakLiveCells();
+}
@@ -0,0 +1,59 @@
+package FullParallelReduction;
+
+import org.junit.jupiter.api.Test;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ReductionMetricsTest {
+    private static LambdaNet reduce(String term) {
+        LambdaNet net = new LambdaNet(new Term(term));
+        net.reduce();
+        return net;
+    }
+
+    @Test
+    public void rulesTest() {
+        LambdaNet net = reduce("(L x . y) z");
+        assertEquals(1, net.context.metrics.getAnnihilations());
+        assertEquals(1, net.context.metrics.getRounds());
+        assertEquals(3, net.context.metrics.getPeakLiveCells());
+        assertEquals(0, net.context.metrics.getLiveCells());
+
+        net = reduce("(L x . x x) (L y . y)");
+        assertEquals(2, net.context.metrics.getRounds());
+        assertEquals(2, net.context.metrics.getRegionsRebuilt());
+        assertEquals(0, net.context.metrics.getReencodes());
+    }
+
+    @Test
+    public void erasedArgumentTest() {
+        // The redex inside the erased argument is reduced in the same round, and nothing of it is left
+        LambdaNet net = reduce("(L x . y) ((L x . x x) (L x . x))");
+        assertEquals(2, net.context.metrics.getPeakCuts());
+        assertEquals(0, net.context.metrics.getLiveCells());
+
+        // The argument shared by the uses of x is only used by the erased argument
+        net = reduce("(L x . (L y . w) (x x)) (L a . a)");
+        assertEquals(new Term("w"), net.toTerm());
+        assertEquals(0, net.context.metrics.getLiveCells());
+    }
+
+    @Test
+    public void registerTest() throws Exception {
+        LambdaNet net = reduce("(L x . y) z");
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName name = net.context.metrics.register("registerTest");
+        try {
+            assertTrue(server.isRegistered(name));
+            assertEquals(1L, server.getAttribute(name, "Annihilations"));
+            assertEquals(3L, server.getAttribute(name, "PeakLiveCells"));
+        } finally {
+            net.context.metrics.unregister();
+        }
+        assertFalse(server.isRegistered(name));
+    }
+}
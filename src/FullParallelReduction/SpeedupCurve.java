@@ -0,0 +1,41 @@
+package FullParallelReduction;
+
+// Prints the time taken by reduce() for each number of workers from 1 to the number of processors,
+// and how many of its rounds were big enough to be shared out among the workers
+public class SpeedupCurve {
+    private final static int RUNS = 5;
+
+    private static long time(Term term, int threads, ReductionMetrics[] metrics) {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < RUNS; i++) {
+            ReductionContext context = new ReductionContext();
+            context.setThreads(threads);
+            LambdaNet net = new LambdaNet(term, context);
+            if (threads > 1)
+                context.pool(); // Started before the clock
+            long start = System.nanoTime();
+            net.reduce();
+            best = Math.min(best, System.nanoTime() - start);
+            metrics[0] = context.metrics;
+            context.setThreads(1); // Shuts its pool down
+        }
+        return best;
+    }
+
+    public static void main(String[] args) {
+        int base = (args.length > 0)? Integer.parseInt(args[0]) : 3;
+        int exponent = (args.length > 1)? Integer.parseInt(args[1]) : 7;
+        Term term = new Term(TestUtil.expString(base, exponent));
+
+        ReductionMetrics[] metrics = new ReductionMetrics[1];
+        time(term, 1, metrics); // Warm up
+        long serial = 0;
+        for (int threads = 1; threads <= Runtime.getRuntime().availableProcessors(); threads++) {
+            long nanos = time(term, threads, metrics);
+            if (threads == 1)
+                serial = nanos;
+            System.out.printf("%d threads: %.2f ms, speedup %.2f, %d of %d rounds parallel%n", threads, nanos / 1e6,
+                    (double) serial / nanos, metrics[0].getParallelRounds(), metrics[0].getRounds());
+        }
+    }
+}
@@ -2,13 +2,23 @@ package FullParallelReduction;
 
 import Regex.Lexer;
 
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 public class Term {
     public final static int VAR = 0;
     public final static int LAM = 1;
     public final static int APP = 2;
+    public final static int LET = 3; // Made by letBind, name is bound to left in right
 
     public final static String LAMBDA_SYMBOL = "L";
 
@@ -23,10 +33,14 @@ public class Term {
     Term right;
     String name;
 
-    public Term(String term) {
-        lexer.init(term);
+    private int hash = 0; // Computed by hashCode, 0 until then
 
-        Term thisTerm = matchTerm();
+    public Term(String term) {
+        Term thisTerm;
+        synchronized (lexer) { // The lexer is shared, so only one Term can be parsed at a time
+            lexer.init(term);
+            thisTerm = matchTerm();
+        }
         this.type = thisTerm.type;
         this.left = thisTerm.left;
         this.right = thisTerm.right;
@@ -44,129 +58,568 @@ public class Term {
         return new Term(VAR, null, null, name);
     }
 
+    // Stands on the stack of matchTerm for an Open whose Term is being matched
+    private final static Term GROUP = var("(");
+
+    /*
+     * Matches the next Term. Instead of recursing into the body of a Lambda, the argument in parentheses of an
+     * application or a Term in parentheses, matchTerm keeps what is waiting for it on a stack: a Lambda whose body is
+     * being matched, an application whose argument is being matched, or GROUP.
+     * A Close ends the innermost application, and with it every Lambda around it up to the last Open.
+     */
     private Term matchTerm() {
-        Lexer.Token token = lexer.nextToken();
-        switch (token.type) {
-            case "Lambda":
-                Lexer.Token nextToken = lexer.nextToken();
-                if (!"Name".equals(nextToken.type)) {
-                    throw new RuntimeException("Illegal name at: " + token.value + " " + nextToken.value);
+        Deque<Term> waiting = new ArrayDeque<>();
+        Term current = null; // The application being matched, or null at the start of a Term
+        while (true) {
+            if (current == null) {
+                Lexer.Token token = lexer.nextToken();
+                switch (token.type) {
+                    case "Lambda":
+                        Lexer.Token nextToken = lexer.nextToken();
+                        if (!"Name".equals(nextToken.type)) {
+                            throw new RuntimeException("Illegal name at: " + token.value + " " + nextToken.value);
+                        }
+                        String name = nextToken.value;
+                        nextToken = lexer.nextToken();
+                        if(!"Dot".equals(nextToken.type)) {
+                            throw new RuntimeException("Expected punctuation at: " + token.value + " " + name);
+                        }
+                        waiting.push(new Term(LAM, new Term(VAR, null, null, name), null, null));
+                        break;
+                    case "Name":
+                        current = new Term(VAR, null, null, token.value);
+                        break;
+                    case "Dot":
+                        throw new RuntimeException("Unexpected Punctuation");
+                    case "Open":
+                        waiting.push(GROUP);
+                        break;
+                    case "Close":
+                        throw new RuntimeException("Unexpected ')'");
+                    default:
+                        throw new RuntimeException("Illegal token at: " + token.value);
                 }
-                String name = nextToken.value;
-                nextToken = lexer.nextToken();
-                if(!"Dot".equals(nextToken.type)) {
-                    throw new RuntimeException("Expected punctuation at: " + token.value + " " + name);
+                continue;
+            }
+
+            Lexer.Token token = lexer.hasNext()? lexer.nextToken() : null;
+            if (token != null && !"Close".equals(token.type)) {
+                switch (token.type) {
+                    case "Name":
+                        current = new Term(APP, current, new Term(VAR, null, null, token.value), null);
+                        break;
+                    case "Open":
+                        waiting.push(new Term(APP, current, null, null));
+                        current = null;
+                        break;
+                    default:
+                        throw new RuntimeException("Unexpected token: " + token.value);
                 }
-                return new Term(LAM, new Term(VAR, null, null, name), matchTerm(), null);
-            case "Name":
-                Term var = new Term(VAR, null, null, token.value);
-                return matchAppTerm(var);
-            case "Dot":
-                throw new RuntimeException("Unexpected Punctuation");
-            case "Open":
-                return matchAppTerm(matchTerm());
-            case "Close":
-                throw new RuntimeException("Unexpected ')'");
-            default:
-                throw new RuntimeException("Illegal token at: " + token.value);
+                continue;
+            }
+
+            // current is the whole application, and the body of each Lambda waiting for it
+            while (!waiting.isEmpty() && waiting.peek().type == LAM) {
+                Term lambda = waiting.pop();
+                lambda.right = current;
+                current = lambda;
+            }
+            if (waiting.isEmpty())
+                return current;
+            Term next = waiting.pop();
+            if (next != GROUP) { // An application, with current as its argument
+                next.right = current;
+                current = next;
+            }
         }
     }
 
-    private Term matchNext(Lexer.Token currentToken) {
-        Lexer.Token token = currentToken;
-        if (currentToken == null) {
-            token = lexer.nextToken();
+    /*
+     * Returns this Term with each subterm it shares (the same Term object in more than one place, as in the Terms of
+     * LambdaNet.toTerm) bound once by a let, so that it is as big as the DAG and not the tree the DAG stands for.
+     * The let of a shared Term is put at the immediate dominator of that Term, the last one that every path from the
+     * top goes through on the way to it: around it if it is an application, or around its body if it is a Lambda.
+     * Every Lambda binding a variable of the shared Term is above that place. The names of the lets are not used
+     * anywhere else in the Term.
+     *
+     * Instead of recursing, the Terms of the DAG are numbered in postorder, and the dominators are found and the
+     * result is built by going through them in order (as in "A Simple, Fast Dominance Algorithm" by Cooper, Harvey
+     * and Kennedy, where a DAG only needs one pass).
+     */
+    public Term letBind() {
+        List<Term> terms = new ArrayList<>(); // In postorder, so that a Term comes after every Term it contains
+        Map<Term, Integer> numbers = new IdentityHashMap<>();
+        Set<Term> expanded = Collections.newSetFromMap(new IdentityHashMap<>());
+        NameScope names = new NameScope();
+        Deque<Term> pending = new ArrayDeque<>();
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Term term = pending.pop();
+            if (numbers.containsKey(term))
+                continue;
+            if (expanded.add(term)) { // Number it once the Terms it contains are numbered
+                if (term.type == LET)
+                    throw new RuntimeException("Term already has lets");
+                if (term.type != APP)
+                    names.add((term.type == LAM)? term.left.name : term.name);
+                pending.push(term);
+                for (Term child : term.children()) {
+                    if (!numbers.containsKey(child))
+                        pending.push(child);
+                }
+            } else {
+                numbers.put(term, terms.size());
+                terms.add(term);
+            }
         }
-        switch (token.type) {
-            case "Name":
-                return new Term(VAR, null, null, token.value);
-            case "Open":
-                return matchTerm();
-            default:
-                throw new RuntimeException("matchNext() should not have been called");
+
+        // The parents of a Term all come after it, so they have all been seen once it is reached
+        int size = terms.size();
+        int[] parents = new int[size];
+        int[] dominators = new int[size];
+        Arrays.fill(dominators, -1);
+        dominators[size - 1] = size - 1;
+        for (int i = size - 1; i >= 0; i--) {
+            for (Term child : terms.get(i).children()) {
+                int number = numbers.get(child);
+                parents[number]++;
+                dominators[number] = (dominators[number] < 0)? i : intersect(dominators, i, dominators[number]);
+            }
         }
-    }
 
-    private Term matchAppTerm(Term current) {
-        if (!lexer.hasNext()) {
-            return current;
+        // The lets at each place, in postorder so that a let comes before those whose Terms use it
+        String[] letNames = new String[size];
+        Map<Integer, List<Integer>> places = new HashMap<>();
+        int nameCount = 0;
+        for (int i = 0; i < size; i++) {
+            if (parents[i] < 2 || terms.get(i).type == VAR)
+                continue;
+            String name;
+            do {
+                name = letName(nameCount++);
+            } while (names.contains(name));
+            letNames[i] = name;
+            places.computeIfAbsent(dominators[i], key -> new ArrayList<>()).add(i);
         }
 
-        while (lexer.hasNext()) {
-            Lexer.Token nextToken = lexer.nextToken();
-            if ("Close".equals(nextToken.type)) {
-                return current;
+        Term[] results = new Term[size];
+        for (int i = 0; i < size; i++) {
+            Term term = terms.get(i);
+            switch (term.type) {
+                case VAR:
+                    results[i] = var(term.name);
+                    break;
+                case LAM:
+                    Term body = wrap(places.get(i), result(term.right, numbers, letNames, results), letNames, results);
+                    results[i] = new Term(LAM, var(term.left.name), body, null);
+                    break;
+                case APP:
+                    Term app = new Term(APP, result(term.left, numbers, letNames, results),
+                            result(term.right, numbers, letNames, results), null);
+                    results[i] = wrap(places.get(i), app, letNames, results);
+                    break;
             }
-            current = new Term(APP, current, matchNext(nextToken), null);
         }
-        return current;
+        return results[size - 1];
     }
 
-    public String prettyPrint() { // TODO: Get rid of unnecessary parentheses in applications
+    private List<Term> children() {
         switch (type) {
-            case VAR:
-                return name;
             case LAM:
-                return "L " + left.prettyPrint() + " . " + right.prettyPrint();
+                return List.of(right);
             case APP:
-                String fun = left.prettyPrint();
-                String arg = right.prettyPrint();
-                if (left.type != VAR)
-                    fun = "(" + fun + ")";
-                if (right.type != VAR)
-                    arg = "(" + arg + ")";
-                return fun + " " + arg;
+                return List.of(left, right);
+            default:
+                return List.of();
         }
-        return "";
+    }
+
+    // Returns the nearest common dominator of the Terms numbered first and second
+    private static int intersect(int[] dominators, int first, int second) {
+        while (first != second) {
+            while (first < second)
+                first = dominators[first];
+            while (second < first)
+                second = dominators[second];
+        }
+        return first;
+    }
+
+    // The part of letBind standing for the Term term, which is the variable of its let if it has one
+    private static Term result(Term term, Map<Term, Integer> numbers, String[] letNames, Term[] results) {
+        int number = numbers.get(term);
+        return (letNames[number] != null)? var(letNames[number]) : results[number];
+    }
+
+    // Puts the lets of the Terms numbered in lets around body
+    private static Term wrap(List<Integer> lets, Term body, String[] letNames, Term[] results) {
+        if (lets == null)
+            return body;
+        for (int i = lets.size() - 1; i >= 0; i--) {
+            body = new Term(LET, results[lets.get(i)], body, letNames[lets.get(i)]);
+        }
+        return body;
+    }
+
+    // The names a, b, ..., z, aa, ab, ... in turn, which only have letters so that the lexer accepts them
+    private static String letName(int count) {
+        StringBuilder builder = new StringBuilder();
+        for (count++; count > 0; count = (count - 1) / 26) {
+            builder.append((char) ('a' + (count - 1) % 26));
+        }
+        return builder.reverse().toString();
+    }
+
+    // The application of a Lambda that a let stands for, which is how LambdaNet encodes it
+    Term redex() {
+        return new Term(APP, new Term(LAM, var(name), right, null), left, null);
+    }
+
+    public String prettyPrint() { // TODO: Get rid of unnecessary parentheses in applications
+        StringBuilder builder = new StringBuilder();
+        Deque<Object> pending = new ArrayDeque<>(); // The Terms still to print, and the Strings between them
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof String) {
+                builder.append((String) next);
+                continue;
+            }
+            Term term = (Term) next;
+            switch (term.type) {
+                case VAR:
+                    builder.append(term.name);
+                    break;
+                case LAM:
+                    builder.append("L ").append(term.left.name).append(" . ");
+                    pending.push(term.right);
+                    break;
+                case LET:
+                    builder.append("let ").append(term.name).append(" = ");
+                    pending.push(term.right);
+                    pending.push((term.left.type != VAR)? ") in " : " in ");
+                    pending.push(term.left);
+                    if (term.left.type != VAR)
+                        builder.append("(");
+                    break;
+                case APP:
+                    if (term.right.type != VAR)
+                        pending.push(")");
+                    pending.push(term.right);
+                    pending.push((term.right.type != VAR)? " (" : " ");
+                    if (term.left.type != VAR) {
+                        pending.push(")");
+                        builder.append("(");
+                    }
+                    pending.push(term.left);
+                    break;
+            }
+        }
+        return builder.toString();
     }
 
     public String toString() {
-        switch (type) {
-            case VAR:
-                return "VAR(" + name + ")";
-            case LAM:
-                return "LAM(" + left + ", " + right + ")";
-            case APP:
-                return "APP(" + left + ", " + right + ")";
+        StringBuilder builder = new StringBuilder();
+        Deque<Object> pending = new ArrayDeque<>(); // As in prettyPrint
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            Object next = pending.pop();
+            if (next instanceof String) {
+                builder.append((String) next);
+                continue;
+            }
+            Term term = (Term) next;
+            switch (term.type) {
+                case VAR:
+                    builder.append("VAR(").append(term.name).append(")");
+                    break;
+                case LAM:
+                case APP:
+                    builder.append((term.type == LAM)? "LAM(" : "APP(");
+                    pending.push(")");
+                    pending.push(term.right);
+                    pending.push(", ");
+                    pending.push(term.left);
+                    break;
+                case LET:
+                    builder.append("LET(").append(term.name).append(", ");
+                    pending.push(")");
+                    pending.push(term.right);
+                    pending.push(", ");
+                    pending.push(term.left);
+                    break;
+            }
         }
-        return "";
+        return builder.toString();
     }
 
+    // Terms with different hashes are not compared any further
     public boolean equals(Object other) {
-        return (other instanceof Term) && alphaEquals((Term) other);
+        return (other instanceof Term) && hashCode() == other.hashCode() && alphaEquals((Term) other);
+    }
+
+    private final static Object APPLY = new Object();
+
+    /*
+     * The same for Terms that are alphaEquals: a variable bound by a Lambda hashes by its de Bruijn index, the number
+     * of Lambdas between it and its binder, a free variable hashes by its name, and a variable bound by a let hashes as
+     * the Term of the let would where the variable is. A Term object that the DAG of this one has is hashed once for
+     * each depth it is found at, assuming, as alphaEquals does and as LambdaNet.toTerm and letBind make sure of, that
+     * a shared Term, or the Term of a let, has its variables bound by the same Lambdas everywhere it is used.
+     * As in alphaEquals, Lambdas and lets are kept on the stack of work along with what their names were bound to
+     * outside of them.
+     */
+    public int hashCode() {
+        if (hash != 0)
+            return hash;
+        Map<Placed, Integer> hashes = new HashMap<>();
+        Map<String, Integer> binders = new HashMap<>(); // The depth of the Lambda binding each name around the next Term
+        Map<String, Term> lets = new HashMap<>(); // The Term of each let around the next Term
+        Deque<Object> work = new ArrayDeque<>();
+        Deque<Integer> results = new ArrayDeque<>();
+        int depth = 0; // The Lambdas around the next Term
+        work.push(this);
+        while (!work.isEmpty()) {
+            Object next = work.pop();
+            if (next == APPLY) {
+                int argument = results.pop();
+                results.push(combine(APP, results.pop(), argument));
+                continue;
+            }
+            if (next instanceof HashScope) {
+                HashScope scope = (HashScope) next;
+                if (scope.term.type == LAM) {
+                    depth--;
+                    if (scope.shadowed != null)
+                        binders.put(scope.term.left.name, scope.shadowed);
+                    else
+                        binders.remove(scope.term.left.name);
+                    results.push(combine(LAM, 0, results.pop()));
+                } else if (scope.term.type == LET) {
+                    if (scope.shadowedLet != null)
+                        lets.put(scope.term.name, scope.shadowedLet);
+                    else
+                        lets.remove(scope.term.name);
+                }
+                hashes.put(new Placed(scope.term, depth), results.peek());
+                continue;
+            }
+
+            Term term = (Term) next;
+            Integer known = hashes.get(new Placed(term, depth));
+            if (known != null) {
+                results.push(known);
+                continue;
+            }
+            switch (term.type) {
+                case VAR:
+                    Integer binder = binders.get(term.name);
+                    if (binder != null)
+                        results.push(combine(VAR, 0, depth - binder));
+                    else if (lets.containsKey(term.name))
+                        work.push(lets.get(term.name));
+                    else
+                        results.push(combine(VAR, term.name.hashCode(), 0));
+                    break;
+                case LAM:
+                    HashScope lam = new HashScope(term);
+                    lam.shadowed = binders.put(term.left.name, depth);
+                    depth++;
+                    work.push(lam);
+                    work.push(term.right);
+                    break;
+                case APP:
+                    work.push(new HashScope(term));
+                    work.push(APPLY);
+                    work.push(term.right);
+                    work.push(term.left);
+                    break;
+                case LET:
+                    HashScope let = new HashScope(term);
+                    let.shadowedLet = lets.put(term.name, term.left);
+                    work.push(let);
+                    work.push(term.right);
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
+            }
+        }
+        int result = results.pop();
+        hash = (result != 0)? result : 1;
+        return hash;
+    }
+
+    private static int combine(int type, int left, int right) {
+        return (31 * type + left) * 31 + right;
+    }
+
+    // A Term whose hash is being computed, and what the name of a Lambda or let was bound to outside of it
+    private static class HashScope {
+        final Term term;
+        Integer shadowed;
+        Term shadowedLet;
+
+        HashScope(Term term) {
+            this.term = term;
+        }
+    }
+
+    // A Term object at a depth, which hashCode only hashes once
+    private static class Placed {
+        final Term term;
+        final int depth;
+
+        Placed(Term term, int depth) {
+            this.term = term;
+            this.depth = depth;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return (other instanceof Placed) && ((Placed) other).term == term && ((Placed) other).depth == depth;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(term) * 31 + depth;
+        }
     }
 
     public boolean alphaEquals(Term other) {
         return alphaEquals(other, new HashMap<>());
     }
 
+    /*
+     * Each name in scope is mapped to the depth of the Lambda binding it, and a bound variable matches the variable of
+     * the other Term that is bound at the same depth. The names in boundMap are bound outside of both Terms.
+     * Instead of recursing, the pairs of subterms still to compare are kept on a stack, along with the Lambdas
+     * around them and what their names were bound to outside of them.
+     *
+     * A let is passed over, and a variable it binds stands for the Term it is bound to. When both sides have such a
+     * variable, the two Terms they are bound to are only compared the first time, so two Terms of letBind that share
+     * in the same places are compared without expanding them. This assumes, as letBind makes sure of, that the names
+     * of lets are not used for anything else and that no Lambda between a let and its variable rebinds a name the
+     * Term of the let uses.
+     */
     public boolean alphaEquals(Term other, Map<String, String> boundMap) {
-        if (this.type != other.type)
-            return false;
+        Map<String, Integer> depths = new HashMap<>();
+        Map<String, Integer> otherDepths = new HashMap<>();
+        int outside = 0;
+        for (Map.Entry<String, String> entry : boundMap.entrySet()) {
+            outside--;
+            depths.put(entry.getKey(), outside);
+            otherDepths.put(entry.getValue(), outside);
+        }
 
-        if (this.type == VAR) {
-            if (boundMap.containsKey(this.name)) {
-                return boundMap.get(this.name).equals(other.name);
-            } else if (boundMap.containsValue(other.name)){
+        Deque<Term> pending = new ArrayDeque<>(); // Pairs of Terms, with the one of this Term on top
+        Deque<Scope> scopes = new ArrayDeque<>();
+        Map<String, Let> lets = new HashMap<>();
+        Map<String, Let> otherLets = new HashMap<>();
+        pending.push(other);
+        pending.push(this);
+        while (!pending.isEmpty()) {
+            while (!scopes.isEmpty() && scopes.peek().pending == pending.size()) { // The body has been compared
+                scopes.pop().restore(depths, otherDepths);
+            }
+
+            Term term = pending.pop();
+            Term match = pending.pop();
+            if (term.type == LET || match.type == LET) {
+                if (term.type == LET) {
+                    lets.put(term.name, new Let(term.left));
+                    term = term.right;
+                } else {
+                    otherLets.put(match.name, new Let(match.left));
+                    match = match.right;
+                }
+                pending.push(match);
+                pending.push(term);
+                continue;
+            }
+
+            Let let = Let.of(term, depths, lets);
+            Let otherLet = Let.of(match, otherDepths, otherLets);
+            if (let != null || otherLet != null) {
+                if (let != null && otherLet != null && !let.matched.add(otherLet))
+                    continue; // Already compared
+                pending.push((otherLet != null)? otherLet.term : match);
+                pending.push((let != null)? let.term : term);
+                continue;
+            }
+
+            if (term.type != match.type)
                 return false;
-            } else {
-                return this.name.equals(other.name);
+
+            switch (term.type) {
+                case VAR:
+                    Integer depth = depths.get(term.name);
+                    Integer otherDepth = otherDepths.get(match.name);
+                    if (depth == null && otherDepth == null) {
+                        if (!term.name.equals(match.name))
+                            return false;
+                    } else if (depth == null || !depth.equals(otherDepth)) {
+                        return false;
+                    }
+                    break;
+                case APP:
+                    pending.push(match.right);
+                    pending.push(term.right);
+                    pending.push(match.left);
+                    pending.push(term.left);
+                    break;
+                case LAM:
+                    Scope scope = new Scope();
+                    scope.pending = pending.size();
+                    scope.name = term.left.name;
+                    scope.otherName = match.left.name;
+                    scope.shadowed = depths.put(scope.name, scopes.size());
+                    scope.otherShadowed = otherDepths.put(scope.otherName, scopes.size());
+                    scopes.push(scope);
+                    pending.push(match.right);
+                    pending.push(term.right);
+                    break;
+                default:
+                    throw new RuntimeException("Illegal term type");
             }
         }
+        return true;
+    }
+
+    // A let that alphaEquals has passed over, and the lets of the other Term whose Terms have been compared to its
+    private static class Let {
+        final Term term;
+        final Set<Let> matched = new HashSet<>();
+
+        Let(Term term) {
+            this.term = term;
+        }
 
-        if (this.type == APP) {
-            return this.left.alphaEquals(other.left, boundMap) && this.right.alphaEquals(other.right, boundMap);
+        // Returns the let that binds term if it is a variable bound by one, otherwise null
+        static Let of(Term term, Map<String, Integer> depths, Map<String, Let> lets) {
+            if (term.type != VAR || depths.containsKey(term.name))
+                return null;
+            return lets.get(term.name);
         }
+    }
 
-        if (this.type == LAM) {
-            String shadowed = boundMap.getOrDefault(this.left.name, null);
-            boundMap.put(this.left.name, other.left.name);
-            boolean equal = this.right.alphaEquals(other.right, boundMap);
-            if (shadowed != null)
-                boundMap.put(this.left.name, shadowed);
-            return equal;
+    // A pair of Lambdas being compared by alphaEquals, which ends once pending is back to the size it had at the start
+    private static class Scope {
+        int pending;
+        String name;
+        String otherName;
+        Integer shadowed;
+        Integer otherShadowed;
+
+        void restore(Map<String, Integer> depths, Map<String, Integer> otherDepths) {
+            restore(depths, name, shadowed);
+            restore(otherDepths, otherName, otherShadowed);
         }
 
-        throw new RuntimeException("Illegal term type");
+        private static void restore(Map<String, Integer> depths, String name, Integer shadowed) {
+            if (shadowed == null)
+                depths.remove(name);
+            else
+                depths.put(name, shadowed);
+        }
     }
 }
@@ -40,4 +40,9 @@ public class TestUtil {
         }
         return builder.toString();
     }
+
+    // The application that reduces to the Church numeral base^exponent
+    public static String expString(int base, int exponent) {
+        return "(" + churchNumString(exponent, "f", "a") + ") (" + churchNumString(base, "f", "a") + ")";
+    }
 }
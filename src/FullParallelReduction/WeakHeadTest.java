@@ -0,0 +1,66 @@
+package FullParallelReduction;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class WeakHeadTest {
+    private static Term reduceTerm(String term) {
+        LambdaNet net = new LambdaNet(new Term(term));
+        net.reduce();
+        return net.toTerm();
+    }
+
+    private static Term weakHeadTerm(String term) {
+        LambdaNet net = new LambdaNet(new Term(term));
+        net.reduceWeakHead();
+        return net.toTerm();
+    }
+
+    @Test
+    public void weakHeadTest() {
+        assertEquals(new Term("L y . w ((L z . z) y)"), weakHeadTerm("(L x . L y . x ((L z . z) y)) w"));
+        assertEquals(new Term("w ((L y . y) z)"), weakHeadTerm("(L x . x ((L y . y) z)) w"));
+        assertEquals(new Term("L x . (L y . y) x"), weakHeadTerm("L x . (L y . y) x"));
+        assertEquals(new Term("x"), weakHeadTerm("x"));
+    }
+
+    @Test
+    public void bodyNotReducedTest() {
+        // The body has no normal form, but it is never reduced
+        assertEquals(new Term("L y . (L z . z z) (L z . z z)"),
+                weakHeadTerm("(L x . x) (L y . (L z . z z) (L z . z z))"));
+    }
+
+    @Test
+    public void fewerInteractionsTest() {
+        String term = "(L x . x) (L y . " + TestUtil.expString(2, 3) + " y)";
+        LambdaNet weak = new LambdaNet(new Term(term));
+        weak.reduceWeakHead();
+        assertEquals(1, weak.context.metrics.getInteractions());
+
+        LambdaNet full = new LambdaNet(new Term(term));
+        full.reduce();
+        assertTrue(full.context.metrics.getInteractions() > 1);
+    }
+
+    @Test
+    public void reduceAfterTest() {
+        String[] terms = {"(L x . x x) (L f . L a . a f f)", "L y . (L a . L b . a b) (L x . x) (L x . y)",
+                "(L b . (L a . b) b) (L b . b)", TestUtil.expString(3, 4)};
+        for (String term : terms) {
+            LambdaNet net = new LambdaNet(new Term(term));
+            net.reduceWeakHead();
+            net.reduce();
+            assertTrue(reduceTerm(term).alphaEquals(net.toTerm()), term);
+        }
+    }
+
+    @Test
+    public void sharedLambdaTest() {
+        // The shared Lambda is copied when the region around it is encoded again, so the net can always be read
+        assertEquals(new Term("L b . b"), weakHeadTerm("(L b . (L a . b) b) (L b . b)"));
+        String term = "((L c . ((L d . c) (c zb))) (L d . (((((d zb) (d d)) (d (L a . a))) d) d)))";
+        assertTrue(reduceTerm(term).alphaEquals(weakHeadTerm(term)));
+    }
+}
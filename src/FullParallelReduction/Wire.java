@@ -1,82 +1,98 @@
 package FullParallelReduction;
 
-import java.util.*;
-
 public class Wire {
     Port port1;
     Port port2;
 
+    // Used by fixExtra in place of Sets, both are false outside of it
+    private boolean possibleExtra = false;
+    private boolean marked = false;
+
     Port getOther(Port port) {
         return (port == port1)? port2 : port1;
     }
 
-    Port getOtherExtended(Port port, Set<Wire> marked, Set<Wire> possibleExtra) {
-        Port other = getOther(port);
-
-        if (possibleExtra.contains(this))
-            marked.add(this);
-
-        if (other.isExtra()) {
-            return other.getOther(this).getOtherExtended(other, marked, possibleExtra);
-        } else {
-            return other;
+    Port getOtherExtended(Port port) {
+        Wire wire = this;
+        Port other = wire.getOther(port);
+        while (true) {
+            if (wire.possibleExtra)
+                wire.marked = true;
+            if (!other.isExtra())
+                return other;
+
+            Wire next = other.getOther(wire);
+            other = next.getOther(other);
+            wire = next;
         }
     }
 
-    static Set<Wire> fixExtra(Set<Wire> possibleExtra) {
-        Set<Wire> marked = new HashSet<>();
-        Set<Wire> possibleCuts = new HashSet<>();
-        for (Wire wire : possibleExtra) {
-            if (marked.contains(wire))
+    // Not safe to run concurrently with reduce() or with itself, since a chain of extra Ports can span many cuts
+    static void fixExtra(WireBuffer possibleExtra, WireBuffer possibleCuts) {
+        for (int i = 0; i < possibleExtra.size(); i++) {
+            possibleExtra.get(i).possibleExtra = true;
+        }
+
+        for (int i = 0; i < possibleExtra.size(); i++) {
+            Wire wire = possibleExtra.get(i);
+            if (wire.marked)
                 continue;
 
-            Port newPort1 = wire.getOtherExtended(wire.port2, marked, possibleExtra);
-            Port newPort2 = wire.getOtherExtended(wire.port1, marked, possibleExtra);
+            Port newPort1 = wire.getOtherExtended(wire.port2);
+            Port newPort2 = wire.getOtherExtended(wire.port1);
             link(newPort1, newPort2, wire);
             possibleCuts.add(wire);
         }
-        return possibleCuts;
+
+        for (int i = 0; i < possibleExtra.size(); i++) {
+            possibleExtra.get(i).possibleExtra = false;
+            possibleExtra.get(i).marked = false;
+        }
     }
 
     boolean isCut() {
         return port1.port == Port.PRINCIPAL && port2.port == Port.PRINCIPAL;
     }
 
-    Set<Wire> reduce() {
+    // A queued cut whose Cells were already reduced or decoded (see LambdaNet.reduceWeakHead)
+    boolean isStale() {
+        return port1.link != this || port2.link != this;
+    }
+
+    // Adds to possibleCuts the Wires that are possible new cuts, which may include duplicates
+    void reduce(WireBuffer possibleCuts) {
         Cell cell1 = port1.cell;
         Cell cell2 = port2.cell;
         if (cell1.symbol == cell2.symbol) {
-            if (cell1.symbol == Cell.Symbol.EPS)
-                return Set.of();
-            else {
+            if (cell1.symbol != Cell.Symbol.EPS) {
                 wipeAndLinkTemp(cell1.left, cell2.left);
                 wipeAndLinkTemp(cell1.right, cell2.right);
-                return new HashSet<>((List.of(cell1.left.link, cell1.right.link)));
+                possibleCuts.add(cell1.left.link);
+                possibleCuts.add(cell1.right.link);
             }
-        }
-
-        if (cell1.symbol == Cell.Symbol.EPS) {
-            return epsCase(cell2);
+        } else if (cell1.symbol == Cell.Symbol.EPS) {
+            epsCase(cell2, possibleCuts);
         } else if (cell2.symbol == Cell.Symbol.EPS) {
-            return epsCase(cell1);
+            epsCase(cell1, possibleCuts);
         } else if (cell1.symbol == Cell.Symbol.GAM){
-            return gamDelCase(cell1, cell2);
+            gamDelCase(cell1, cell2, possibleCuts);
         } else {
-            return gamDelCase(cell2, cell1);
+            gamDelCase(cell2, cell1, possibleCuts);
         }
     }
 
-    private Set<Wire> epsCase(Cell other) {
+    private void epsCase(Cell other, WireBuffer possibleCuts) {
         Cell epsL = Cell.makeEpsilon();
         Cell epsR = Cell.makeEpsilon();
 
         stealPrincipalPort(epsL, other.left);
         stealPrincipalPort(epsR, other.right);
 
-        return Set.of(other.left.link, other.right.link);
+        possibleCuts.add(other.left.link);
+        possibleCuts.add(other.right.link);
     }
 
-    private Set<Wire> gamDelCase(Cell gam, Cell del) {
+    private void gamDelCase(Cell gam, Cell del, WireBuffer possibleCuts) {
         Cell delL = Cell.makeDelta();
         Cell delR = Cell.makeDelta();
         Cell gamL = Cell.makeGamma();
@@ -95,9 +111,14 @@ public class Wire {
         gamL.left.name = gam.left.name;
         gamR.left.name = gam.left.name;
 
-        return new HashSet<>(List.of(del.left.link, del.right.link, gam.left.link, gam.right.link));
+        possibleCuts.add(del.left.link);
+        possibleCuts.add(del.right.link);
+        possibleCuts.add(gam.left.link);
+        possibleCuts.add(gam.right.link);
     }
 
+    // This and link only write to the Ports given, which belong to the Cells of a single cut,
+    // so that disjoint cuts can be reduced concurrently (see LambdaNet.reduceAll)
     private static void stealPrincipalPort(Cell theif, Port port) {
         theif.principal = port;
         port.cell = theif;